@@ -5,11 +5,20 @@ import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
 import android.support.test.InstrumentationRegistry;
 import android.support.test.runner.AndroidJUnit4;
-import android.util.Xml;
+import android.util.Log;
 
+import com.gpetuhov.android.rssreader.core.data.FeedInfo;
+import com.gpetuhov.android.rssreader.core.data.FeedPost;
+import com.gpetuhov.android.rssreader.core.data.FeedStore;
+import com.gpetuhov.android.rssreader.core.data.FeedUpdateSummary;
+import com.gpetuhov.android.rssreader.core.data.RetentionPolicy;
 import com.gpetuhov.android.rssreader.data.DataStorage;
 import com.gpetuhov.android.rssreader.data.RSSFeed;
 import com.gpetuhov.android.rssreader.data.RSSPost;
+import com.gpetuhov.android.rssreader.data.RSSPostBody;
+import com.gpetuhov.android.rssreader.data.RSSTerm;
+import com.gpetuhov.android.rssreader.data.TimelineCursor;
+import com.gpetuhov.android.rssreader.data.TimelinePage;
 import com.gpetuhov.android.rssreader.events.OpenFeedEvent;
 import com.gpetuhov.android.rssreader.utils.UtilsPrefs;
 
@@ -18,22 +27,24 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
-import org.xmlpull.v1.XmlPullParser;
-import org.xmlpull.v1.XmlPullParserException;
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.InputStream;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import io.realm.Realm;
 import io.realm.RealmConfiguration;
 import io.realm.RealmResults;
-import okhttp3.OkHttpClient;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 @RunWith(AndroidJUnit4.class)
@@ -44,6 +55,9 @@ public class RSSReaderInstrumentedTest {
     public static final String FEED_TITLE = "Feed title";
     public static final String FEED_LINK = "Feed link";
 
+    // Search over 100k posts must answer within this time
+    public static final long SEARCH_LATENCY_LIMIT_MILLIS = 50;
+
     private Context mContext;
     private SharedPreferences mSharedPreferences;
     private UtilsPrefs mUtilsPrefs;
@@ -57,8 +71,6 @@ public class RSSReaderInstrumentedTest {
     // Realm instance for test Realm file
     private Realm mTestRealm;
 
-    private XmlPullParser mXmlPullParser;
-
     @Before
     public void initTest() {
         // Get context of the app under test
@@ -115,8 +127,11 @@ public class RSSReaderInstrumentedTest {
     @Test
     public void checkDataStorageReadWrite() {
 
-        DataStorage dataStorage = new DataStorage(mContext, mUtilsPrefs);
+        DataStorage dataStorage = new DataStorage(mContext, mUtilsPrefs, mEventBus);
+
+        // Main thread instance is opened, when storage is initialized in background
         Realm realm = dataStorage.getRealm();
+        assertTrue(dataStorage.isReady());
 
         // Check if DataStorage set first run flag to false
         assertEquals(false, mUtilsPrefs.isFirstRun());
@@ -126,11 +141,11 @@ public class RSSReaderInstrumentedTest {
         // Create post
         RSSPost rssPost = realm.createObject(RSSPost.class);
         rssPost.setTitle(POST_TITLE);
-        rssPost.setDescription(POST_DESCRIPTION);
+        rssPost.setBody(realm.createObject(RSSPostBody.class));
+        rssPost.getBody().setDescription(POST_DESCRIPTION);
         // Create feed and add created post to it
-        RSSFeed rssFeed = realm.createObject(RSSFeed.class);
+        RSSFeed rssFeed = realm.createObject(RSSFeed.class, FEED_LINK);
         rssFeed.setTitle(FEED_TITLE);
-        rssFeed.setLink(FEED_LINK);
         rssFeed.getRSSPostList().add(rssPost);
         realm.commitTransaction();
 
@@ -234,11 +249,11 @@ public class RSSReaderInstrumentedTest {
         // Create post
         RSSPost rssPost = mTestRealm.createObject(RSSPost.class);
         rssPost.setTitle(POST_TITLE);
-        rssPost.setDescription(POST_DESCRIPTION);
+        rssPost.setBody(mTestRealm.createObject(RSSPostBody.class));
+        rssPost.getBody().setDescription(POST_DESCRIPTION);
         // Create feed
-        RSSFeed rssFeed = mTestRealm.createObject(RSSFeed.class);
+        RSSFeed rssFeed = mTestRealm.createObject(RSSFeed.class, FEED_LINK);
         rssFeed.setTitle(FEED_TITLE);
-        rssFeed.setLink(FEED_LINK);
         // Add post to feed
         rssFeed.getRSSPostList().add(rssPost);
         mTestRealm.commitTransaction();
@@ -258,101 +273,6 @@ public class RSSReaderInstrumentedTest {
         assertEquals(POST_DESCRIPTION, rssPostList.get(0).getDescription());
     }
 
-    @Test
-    public void checkExtractFeedTitleFromXML() {
-
-        String expectedFeedTitle = "Awesome feed title";
-
-        // Sample XML response
-        String xmlString =
-                "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
-                "<rss version=\"2.0\" xmlns:dc=\"http://purl.org/dc/elements/1.1/\"  >\n" +
-                "<channel>\n" +
-                "\t<title>" + expectedFeedTitle + "</title>\n" +
-                "\t<link>https://server.com/</link>\n" +
-                "</channel>\n" +
-                "</rss>";
-
-        // Create InputStream from String
-        InputStream inputStream = new ByteArrayInputStream(xmlString.getBytes());
-
-        try {
-            createParser(inputStream);
-
-            // Create DataStorage instance and set Realm for it
-            DataStorage dataStorage = new DataStorage(mContext, mUtilsPrefs, mTestRealm);
-
-            // Extract feed title from sample XML
-            String feedTitle =
-                    new FeedFetcher(new OkHttpClient(), dataStorage, mEventBus).extractFeedTitle(mXmlPullParser);
-
-            // Check if extracted title is the same as in sample XML
-            assertEquals(expectedFeedTitle, feedTitle);
-
-        } catch (XmlPullParserException e) {
-        } catch (IOException e) {
-        }
-    }
-
-    // Create XML parser for provided input stream
-    private void createParser(InputStream input) throws XmlPullParserException {
-        // Create new XML parser (ExpatPullParser is used)
-        mXmlPullParser = Xml.newPullParser();
-
-        // Do not process namespaces
-        mXmlPullParser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
-
-        // Set input for the parser
-        mXmlPullParser.setInput(input, null);
-    }
-
-    @Test
-    public void checkExtractFeedPostsFromXML() {
-        // Sample XML response
-        String xmlString = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
-                "<rss version=\"2.0\" xmlns:dc=\"http://purl.org/dc/elements/1.1/\"  >\n" +
-                "<channel>\n" +
-                "\t<title>Feed title</title>\n" +
-                "\t<link>https://server.com/</link>\n" +
-                "\t<item>\n" +
-                "\t\t<title>Post title 0</title>\n" +
-                "\t\t<link>Post link 0</link>\n" +
-                "\t\t<description>Post description 0</description>   \n" +
-                "\t\t<pubDate>Tue, 21 Mar 2017 11:17:55 GMT</pubDate>\n" +
-                "\t</item>\n" +
-                "\t<item>\n" +
-                "\t\t<title>Post title 1</title>\n" +
-                "\t\t<link>Post link 1</link>\n" +
-                "\t\t<description>Post description 1</description>   \n" +
-                "\t\t<pubDate>Tue, 21 Mar 2017 11:17:57 GMT</pubDate>\n" +
-                "\t</item>\n" +
-                "</channel>\n" +
-                "</rss>";
-
-        // Create InputStream from String
-        InputStream inputStream = new ByteArrayInputStream(xmlString.getBytes());
-
-        try {
-            createParser(inputStream);
-
-            // Create DataStorage instance and set Realm for it
-            DataStorage dataStorage = new DataStorage(mContext, mUtilsPrefs, mTestRealm);
-
-            // Extract feed posts from sample XML
-            List<RSSPost> rssPosts =
-                    new FeedFetcher(new OkHttpClient(), dataStorage, mEventBus).extractFeedPosts(mXmlPullParser);
-
-            // Check if extracted are the same as in sample XML
-            for (int i = 0; i < 2; i++) {
-                RSSPost rssPost = rssPosts.get(i);
-                assertEquals("Post title " + i, rssPost.getTitle());
-                assertEquals("Post description " + i, rssPost.getDescription());
-            }
-        } catch (XmlPullParserException e) {
-        } catch (IOException e) {
-        }
-    }
-
     @Test
     public void checkUpdateFeed() {
 
@@ -360,10 +280,10 @@ public class RSSReaderInstrumentedTest {
         String feedTitle = "Another feed title";
         String feedLink = "Another feed link";
 
-        List<RSSPost> rssPosts = new ArrayList<>();
+        List<FeedPost> rssPosts = new ArrayList<>();
 
         for (int i = 0; i < 5; i++) {
-            RSSPost rssPost = new RSSPost();
+            FeedPost rssPost = new FeedPost();
             rssPost.setTitle("Title " + i);
             rssPost.setDescription("Description " + i);
             rssPosts.add(rssPost);
@@ -397,8 +317,8 @@ public class RSSReaderInstrumentedTest {
         String feedTitle2 = "Another feed title 2";
         String postTitle2 = "Post title 2";
         String postDescription2 = "Post description 2";
-        List<RSSPost> rssPosts2 = new ArrayList<>();
-        RSSPost rssPost = new RSSPost();
+        List<FeedPost> rssPosts2 = new ArrayList<>();
+        FeedPost rssPost = new FeedPost();
         rssPost.setTitle(postTitle2);
         rssPost.setDescription(postDescription2);
         rssPosts2.add(rssPost);
@@ -417,6 +337,522 @@ public class RSSReaderInstrumentedTest {
         assertEquals(postDescription2, resultRssFeed.getRSSPostList().get(0).getDescription());
     }
 
+    @Test
+    public void checkUpdateFeedUpsertsPosts() {
+
+        String feedLink = "Upserted feed link";
+
+        List<FeedPost> rssPosts = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            FeedPost rssPost = new FeedPost();
+            rssPost.setTitle("Title " + i);
+            rssPost.setDescription("Description " + i);
+            rssPost.setGuid("Guid " + i);
+            rssPosts.add(rssPost);
+        }
+
+        // Create DataStorage instance and set Realm for it
+        DataStorage dataStorage = new DataStorage(mContext, mUtilsPrefs, mTestRealm);
+
+        dataStorage.updateFeed(feedLink, FEED_TITLE, rssPosts);
+        RSSPost storedPost = dataStorage.getPostList(feedLink).get(1);
+
+        // Next fetch: one new post on top, one changed post, one unchanged post
+        List<FeedPost> newRssPosts = new ArrayList<>();
+        FeedPost newPost = new FeedPost();
+        newPost.setTitle("New title");
+        newPost.setDescription("New description");
+        newPost.setGuid("New guid");
+        newRssPosts.add(newPost);
+        rssPosts.get(0).setTitle("Changed title");
+        newRssPosts.add(rssPosts.get(0));
+        newRssPosts.add(rssPosts.get(1));
+
+        FeedUpdateSummary summary = dataStorage.updateFeed(feedLink, FEED_TITLE, newRssPosts);
+
+        // Summary must count only real changes
+        assertFalse(summary.isFeedChanged());
+        assertEquals(1, summary.getNewPostCount());
+        assertEquals(1, summary.getUpdatedPostCount());
+        assertEquals(0, summary.getRemovedPostCount());
+
+        List<RSSPost> resultRssPosts = dataStorage.getPostList(feedLink);
+
+        // Only the new post is inserted, posts missing from the feed are kept
+        assertEquals(4, resultRssPosts.size());
+        assertEquals("New title", resultRssPosts.get(0).getTitle());
+        assertEquals("Changed title", resultRssPosts.get(1).getTitle());
+        assertEquals("Title 1", resultRssPosts.get(2).getTitle());
+        assertEquals("Title 2", resultRssPosts.get(3).getTitle());
+
+        // Unchanged post is the same Realm object
+        assertTrue(storedPost.isValid());
+        assertEquals("Guid 1", storedPost.getGuid());
+        assertEquals(1, mTestRealm.where(RSSPost.class).equalTo("mGuid", "Guid 1").count());
+    }
+
+    @Test
+    public void checkUpdateFeedNormalizesLink() {
+
+        List<FeedPost> rssPosts = new ArrayList<>();
+        FeedPost rssPost = new FeedPost();
+        rssPost.setTitle(POST_TITLE);
+        rssPost.setDescription(POST_DESCRIPTION);
+        rssPosts.add(rssPost);
+
+        // Create DataStorage instance and set Realm for it
+        DataStorage dataStorage = new DataStorage(mContext, mUtilsPrefs, mTestRealm);
+
+        // The same feed written differently
+        dataStorage.updateFeed("HTTPS://Server.com:443/rss/", FEED_TITLE, rssPosts);
+        dataStorage.updateFeed("https://server.com/rss/", FEED_TITLE, rssPosts);
+
+        // Feed must be stored only once with normalized link
+        assertEquals(1, mTestRealm.where(RSSFeed.class).count());
+        assertNotNull(dataStorage.getFeed("https://SERVER.com/rss/"));
+        assertEquals("https://server.com/rss/", dataStorage.getFeed("https://server.com/rss/").getLink());
+        assertEquals(1, dataStorage.getPostList("https://server.com/rss/").size());
+    }
+
+    @Test
+    public void checkUpdateFeedKeepsValidators() {
+
+        String feedLink = "Validated feed link";
+        String eTag = "\"abc123\"";
+        String lastModified = "Tue, 21 Mar 2017 11:17:55 GMT";
+
+        List<FeedPost> rssPosts = new ArrayList<>();
+        FeedPost rssPost = new FeedPost();
+        rssPost.setTitle(POST_TITLE);
+        rssPost.setDescription(POST_DESCRIPTION);
+        rssPosts.add(rssPost);
+
+        // Create DataStorage instance and set Realm for it
+        DataStorage dataStorage = new DataStorage(mContext, mUtilsPrefs, mTestRealm);
+
+        // Update/create feed with validators of the response
+        dataStorage.updateFeed(feedLink, FEED_TITLE, rssPosts, eTag, lastModified, 0);
+
+        // Validators must be returned in detached copy of the feed
+        RSSFeed feedCopy = dataStorage.getFeedCopy(feedLink);
+        assertNotNull(feedCopy);
+        assertEquals(eTag, feedCopy.getETag());
+        assertEquals(lastModified, feedCopy.getLastModified());
+
+        // The same validators are provided to the fetch pipeline
+        FeedInfo feedInfo = dataStorage.getFeedInfo(feedLink);
+        assertNotNull(feedInfo);
+        assertEquals(eTag, feedInfo.getETag());
+        assertEquals(lastModified, feedInfo.getLastModified());
+        assertTrue(dataStorage.getFeedLinks().contains(feedLink));
+
+        // Feed without validators in response must not keep old ones
+        dataStorage.updateFeed(feedLink, FEED_TITLE, rssPosts, null, null, 0);
+        feedCopy = dataStorage.getFeedCopy(feedLink);
+        assertNull(feedCopy.getETag());
+        assertNull(feedCopy.getLastModified());
+    }
+
+    @Test
+    public void checkUpdateFeedEvictsOldestPosts() {
+
+        String feedLink = "Limited feed link";
+
+        List<FeedPost> rssPosts = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            FeedPost rssPost = new FeedPost();
+            rssPost.setTitle(POST_TITLE + i);
+            rssPost.setGuid("Guid " + i);
+            rssPosts.add(rssPost);
+        }
+
+        // Create DataStorage instance and set Realm for it
+        DataStorage dataStorage = new DataStorage(mContext, mUtilsPrefs, mTestRealm);
+        dataStorage.setRetentionPolicy(new RetentionPolicy(2, 0, 0));
+
+        try {
+            dataStorage.updateFeed(feedLink, FEED_TITLE, rssPosts.subList(2, 4), null, null, 0);
+            FeedUpdateSummary summary =
+                    dataStorage.updateFeed(feedLink, FEED_TITLE, rssPosts.subList(0, 2), null, null, 0);
+
+            // Evicted posts are changes of the feed
+            assertEquals(2, summary.getRemovedPostCount());
+
+            // Search index entries of evicted posts are deleted with them
+            for (RSSTerm rssTerm : mTestRealm.where(RSSTerm.class).findAll()) {
+                assertFalse(rssTerm.getPosts().isEmpty());
+            }
+
+            // Posts, that left the document, are evicted from the oldest one
+            List<RSSPost> resultPosts = dataStorage.getPostListCopy(feedLink);
+            assertEquals(2, resultPosts.size());
+            assertEquals(POST_TITLE + 0, resultPosts.get(0).getTitle());
+            assertEquals(POST_TITLE + 1, resultPosts.get(1).getTitle());
+
+            // Write of one feed in its own transaction enforces the limit too
+            summary = dataStorage.updateFeed(feedLink, FEED_TITLE, rssPosts.subList(0, 1), null, null, 0);
+            assertEquals(1, summary.getRemovedPostCount());
+            refreshTestRealm();
+            assertEquals(1, dataStorage.getPostListCopy(feedLink).size());
+        } finally {
+            // Policy is kept in SharedPreferences of the app
+            dataStorage.setRetentionPolicy(new RetentionPolicy());
+        }
+    }
+
+    @Test
+    public void checkTotalLimitKeepsLatestDocument() throws Exception {
+
+        String feedLink = "Total limited feed link";
+
+        List<FeedPost> rssPosts = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            FeedPost rssPost = new FeedPost();
+            rssPost.setTitle(POST_TITLE + i);
+            rssPost.setGuid("Guid " + i);
+            rssPosts.add(rssPost);
+        }
+
+        // Create DataStorage instance and set Realm for it
+        DataStorage dataStorage = new DataStorage(mContext, mUtilsPrefs, mTestRealm);
+        dataStorage.setRetentionPolicy(new RetentionPolicy(0, 0, 1));
+
+        try {
+            // All posts are in the latest document, so none of them is evicted
+            FeedUpdateSummary summary = dataStorage.updateFeed(feedLink, FEED_TITLE, rssPosts, null, null, 0);
+            assertEquals(0, summary.getRemovedPostCount());
+
+            // Posts, that left the document, are evicted by group commit, posts of the document are kept
+            summary = updateFeedAndWait(dataStorage, feedLink, rssPosts.subList(0, 2));
+            assertNotNull(summary);
+            assertEquals(2, summary.getRemovedPostCount());
+            assertTrue(summary.hasChanges());
+
+            List<RSSPost> resultPosts = dataStorage.getPostListCopy(feedLink);
+            assertEquals(2, resultPosts.size());
+            assertEquals(POST_TITLE + 0, resultPosts.get(0).getTitle());
+            assertEquals(POST_TITLE + 1, resultPosts.get(1).getTitle());
+
+            // Write of one feed in its own transaction enforces the limit too
+            summary = dataStorage.updateFeed(feedLink, FEED_TITLE, rssPosts.subList(0, 1), null, null, 0);
+            assertEquals(1, summary.getRemovedPostCount());
+            refreshTestRealm();
+            assertEquals(1, dataStorage.getPostListCopy(feedLink).size());
+        } finally {
+            // Policy is kept in SharedPreferences of the app
+            dataStorage.setRetentionPolicy(new RetentionPolicy());
+        }
+    }
+
+    // Update feed in the writer thread and return summary of the update
+    private FeedUpdateSummary updateFeedAndWait(DataStorage dataStorage, String feedLink,
+                                                List<FeedPost> rssPosts) throws Exception {
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final FeedUpdateSummary[] result = new FeedUpdateSummary[1];
+
+        dataStorage.updateFeedAsync(feedLink, FEED_TITLE, rssPosts, null, null, 0,
+                new FeedStore.OnFeedUpdateListener() {
+                    @Override
+                    public void onFeedUpdated(String feedLink, FeedUpdateSummary summary) {
+                        result[0] = summary;
+                        latch.countDown();
+                    }
+                });
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        refreshTestRealm();
+
+        return result[0];
+    }
+
+    @Test
+    public void checkSearchPosts() {
+
+        String feedLink = "Searched feed link";
+
+        String[] titles = {"Realm released", "Retrofit released", "Retrofit tutorial"};
+        String[] pubDates = {"2017-03-20T10:00:00Z", "2017-03-21T10:00:00Z", "2017-03-22T10:00:00Z"};
+
+        List<FeedPost> rssPosts = new ArrayList<>();
+        for (int i = 0; i < titles.length; i++) {
+            FeedPost rssPost = new FeedPost();
+            rssPost.setTitle(titles[i]);
+            rssPost.setDescription("<p>" + POST_DESCRIPTION + "</p>");
+            rssPost.setGuid(titles[i]);
+            rssPost.setPubDate(pubDates[i]);
+            rssPosts.add(rssPost);
+        }
+
+        // Create DataStorage instance and set Realm for it
+        DataStorage dataStorage = new DataStorage(mContext, mUtilsPrefs, mTestRealm);
+        dataStorage.updateFeed(feedLink, FEED_TITLE, rssPosts, null, null, 0);
+
+        // All terms must match, the last one may be incomplete.
+        // The latest published posts go first.
+        List<RSSPost> resultPosts = dataStorage.searchPosts("released", 10);
+        assertEquals(2, resultPosts.size());
+        assertEquals("Retrofit released", resultPosts.get(0).getTitle());
+        assertEquals("Realm released", resultPosts.get(1).getTitle());
+        assertEquals(1, dataStorage.searchPosts("released", 1).size());
+        assertEquals(1, dataStorage.searchPosts("RETROFIT released", 10).size());
+        assertEquals(2, dataStorage.searchPosts("retro", 10).size());
+        assertEquals(0, dataStorage.searchPosts("retro ", 10).size());
+        assertEquals(1, dataStorage.searchPosts("released retro", 10).size());
+
+        // Too short prefix is searched as a complete term
+        assertEquals(0, dataStorage.searchPosts("re", 10).size());
+
+        // Changed post is found by its new content only
+        rssPosts.get(2).setTitle("Retrofit guide");
+        dataStorage.updateFeed(feedLink, FEED_TITLE, rssPosts, null, null, 0);
+        assertEquals(0, dataStorage.searchPosts("tutorial", 10).size());
+        assertEquals(1, dataStorage.searchPosts("guide", 10).size());
+    }
+
+    @Test
+    public void checkSearchLatency() {
+
+        // 100 feeds with 1000 posts in each, published one minute apart
+        int feedCount = 100;
+        int postsPerFeed = 1000;
+
+        // Every post has the common term, every 1000th post has the same word term,
+        // and every post has its own unique term
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        long now = System.currentTimeMillis();
+
+        DataStorage dataStorage = new DataStorage(mContext, mUtilsPrefs, mTestRealm);
+        dataStorage.setRetentionPolicy(new RetentionPolicy(0, 0, 0));
+
+        try {
+            for (int feed = 0; feed < feedCount; feed++) {
+                List<FeedPost> rssPosts = new ArrayList<>();
+
+                for (int i = 0; i < postsPerFeed; i++) {
+                    int post = feed * postsPerFeed + i;
+
+                    FeedPost rssPost = new FeedPost();
+                    rssPost.setTitle("Common word" + (post % 1000) + " unique" + post);
+                    rssPost.setDescription("<p>" + POST_DESCRIPTION + "</p>");
+                    rssPost.setGuid("Guid " + post);
+                    rssPost.setPubDate(dateFormat.format(new Date(now - post * 60 * 1000L)));
+                    rssPosts.add(rssPost);
+                }
+
+                dataStorage.updateFeed("Feed link " + feed, FEED_TITLE, rssPosts, null, null, 0);
+            }
+
+            String[] queries = {"common", "word7 ", "common word7 ", "unique99999 common",
+                    "wor", "common wor", "description post"};
+
+            for (String query : queries) {
+                // The first search warms up Realm
+                List<RSSPost> resultPosts = dataStorage.searchPosts(query, 50);
+                assertFalse(resultPosts.isEmpty());
+
+                long maxNanos = 0;
+                for (int i = 0; i < 5; i++) {
+                    long startTimeNanos = System.nanoTime();
+                    dataStorage.searchPosts(query, 50);
+                    maxNanos = Math.max(maxNanos, System.nanoTime() - startTimeNanos);
+                }
+
+                Log.i("SearchLatency", "\"" + query + "\": " + maxNanos / 1000 + " us");
+                assertTrue(query + ": " + maxNanos / 1000000 + " ms",
+                        maxNanos < SEARCH_LATENCY_LIMIT_MILLIS * 1000000);
+            }
+
+            // Matches are the latest published
+            List<RSSPost> resultPosts = dataStorage.searchPosts("word7 ", 2);
+            assertEquals("Common word7 unique7", resultPosts.get(0).getTitle());
+            assertEquals("Common word7 unique1007", resultPosts.get(1).getTitle());
+        } finally {
+            // Policy is kept in SharedPreferences of the app
+            dataStorage.setRetentionPolicy(new RetentionPolicy());
+        }
+    }
+
+    @Test
+    public void checkGetPostDescription() {
+
+        String feedLink = "Described feed link";
+
+        List<FeedPost> rssPosts = new ArrayList<>();
+        FeedPost rssPost = new FeedPost();
+        rssPost.setTitle(POST_TITLE);
+        rssPost.setDescription(POST_DESCRIPTION);
+        rssPost.setGuid("Guid");
+        rssPosts.add(rssPost);
+
+        // Create DataStorage instance and set Realm for it
+        DataStorage dataStorage = new DataStorage(mContext, mUtilsPrefs, mTestRealm);
+        FeedUpdateSummary summary = dataStorage.updateFeed(feedLink, FEED_TITLE, rssPosts, null, null, 0);
+
+        // Sizes of the body are recorded before and after compression
+        RSSPostBody rssPostBody = mTestRealm.where(RSSPostBody.class).findFirst();
+        assertEquals(POST_DESCRIPTION.length(), rssPostBody.getRawSize());
+        assertEquals(summary.getPostBodyRawBytes(), rssPostBody.getRawSize());
+        assertEquals(summary.getPostBodyStoredBytes(), rssPostBody.getStoredSize());
+
+        // Copies for the list don't contain bodies
+        RSSPost postCopy = dataStorage.getPostListCopy(feedLink).get(0);
+        assertEquals(POST_TITLE, postCopy.getTitle());
+        assertNull(postCopy.getBody());
+
+        // Description is read by identity of the post
+        assertEquals(POST_DESCRIPTION,
+                dataStorage.getPostDescription(feedLink, postCopy.getKey()));
+        assertNull(dataStorage.getPostDescription(feedLink, "Missing key"));
+
+        // Body is deleted together with its post
+        dataStorage.setRetentionPolicy(new RetentionPolicy(1, 0, 0));
+
+        try {
+            FeedPost newPost = new FeedPost();
+            newPost.setTitle(POST_TITLE);
+            newPost.setDescription(POST_DESCRIPTION);
+            newPost.setGuid("New guid");
+            rssPosts.set(0, newPost);
+            dataStorage.updateFeed(feedLink, FEED_TITLE, rssPosts, null, null, 0);
+
+            assertEquals(1, mTestRealm.where(RSSPost.class).count());
+            assertEquals(1, mTestRealm.where(RSSPostBody.class).count());
+        } finally {
+            // Policy is kept in SharedPreferences of the app
+            dataStorage.setRetentionPolicy(new RetentionPolicy());
+        }
+    }
+
+    @Test
+    public void checkTimelinePages() {
+
+        // Posts of two feeds published one hour apart (two of them at the same time)
+        String[] pubDates = {
+                "Tue, 21 Mar 2017 15:00:00 GMT",
+                "Tue, 21 Mar 2017 13:00:00 GMT",
+                "Tue, 21 Mar 2017 12:00:00 GMT",
+                "2017-03-21T14:00:00Z",
+                "2017-03-21T12:00:00Z",
+                "2017-03-21T11:00:00Z"
+        };
+
+        List<FeedPost> firstFeedPosts = new ArrayList<>();
+        List<FeedPost> secondFeedPosts = new ArrayList<>();
+
+        for (int i = 0; i < pubDates.length; i++) {
+            FeedPost rssPost = new FeedPost();
+            rssPost.setTitle(POST_TITLE + i);
+            rssPost.setGuid("Guid " + i);
+            rssPost.setPubDate(pubDates[i]);
+            (i < 3 ? firstFeedPosts : secondFeedPosts).add(rssPost);
+        }
+
+        // Create DataStorage instance and set Realm for it
+        DataStorage dataStorage = new DataStorage(mContext, mUtilsPrefs, mTestRealm);
+        dataStorage.updateFeed("First timeline feed", FEED_TITLE, firstFeedPosts, null, null, 0);
+        dataStorage.updateFeed("Second timeline feed", FEED_TITLE, secondFeedPosts, null, null, 0);
+
+        // Pages are merged from both feeds, the newest first, without gaps and duplicates
+        List<String> titles = new ArrayList<>();
+        TimelineCursor cursor = TimelineCursor.START;
+        int pageCount = 0;
+
+        while (cursor != null) {
+            TimelinePage page = dataStorage.getTimelinePage(cursor, 2);
+            assertTrue(page.getPosts().size() <= 2);
+
+            for (RSSPost rssPost : page.getPosts()) {
+                titles.add(rssPost.getTitle());
+            }
+
+            cursor = page.getNextCursor();
+            pageCount++;
+        }
+
+        assertEquals(3, pageCount);
+        assertEquals(6, titles.size());
+        assertEquals(POST_TITLE + 0, titles.get(0));
+        assertEquals(POST_TITLE + 3, titles.get(1));
+        assertEquals(POST_TITLE + 1, titles.get(2));
+        assertTrue(titles.subList(3, 5).contains(POST_TITLE + 2));
+        assertTrue(titles.subList(3, 5).contains(POST_TITLE + 4));
+        assertEquals(POST_TITLE + 5, titles.get(5));
+    }
+
+    @Test
+    public void checkUnreadCounters() throws Exception {
+
+        String feedLink = "Unread feed link";
+
+        List<FeedPost> rssPosts = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            FeedPost rssPost = new FeedPost();
+            rssPost.setTitle(POST_TITLE + i);
+            rssPost.setGuid("Guid " + i);
+            rssPosts.add(rssPost);
+        }
+
+        // Create DataStorage instance and set Realm for it
+        DataStorage dataStorage = new DataStorage(mContext, mUtilsPrefs, mTestRealm);
+        dataStorage.updateFeed(feedLink, FEED_TITLE, rssPosts.subList(1, 3), null, null, 0);
+
+        // New posts are unread
+        assertEquals(2, dataStorage.getFeedCopy(feedLink).getUnreadCount());
+        RSSPost rssPost = dataStorage.getPostListCopy(feedLink).get(0);
+        assertFalse(rssPost.isRead());
+
+        // Read post is not counted
+        CountDownLatch latch = new CountDownLatch(1);
+        dataStorage.markPostReadAsync(feedLink, rssPost.getKey(), newCountDownListener(latch));
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        refreshTestRealm();
+
+        assertEquals(1, dataStorage.getFeedCopy(feedLink).getUnreadCount());
+        assertTrue(dataStorage.getPostListCopy(feedLink).get(0).isRead());
+
+        // Only new post is added to the counter
+        dataStorage.updateFeed(feedLink, FEED_TITLE, rssPosts, null, null, 0);
+        assertEquals(2, dataStorage.getFeedCopy(feedLink).getUnreadCount());
+
+        // Evicted unread post is not counted
+        dataStorage.setRetentionPolicy(new RetentionPolicy(2, 0, 0));
+
+        try {
+            dataStorage.updateFeed(feedLink, FEED_TITLE, rssPosts.subList(0, 1), null, null, 0);
+            assertEquals(1, dataStorage.getFeedCopy(feedLink).getUnreadCount());
+        } finally {
+            // Policy is kept in SharedPreferences of the app
+            dataStorage.setRetentionPolicy(new RetentionPolicy());
+        }
+
+        // Feed marked read has no unread posts
+        latch = new CountDownLatch(1);
+        dataStorage.markFeedReadAsync(feedLink, newCountDownListener(latch));
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        refreshTestRealm();
+
+        assertEquals(0, dataStorage.getFeedCopy(feedLink).getUnreadCount());
+        assertEquals(0, mTestRealm.where(RSSPost.class).equalTo("mRead", false).count());
+    }
+
+    private static FeedStore.OnFeedUpdateListener newCountDownListener(final CountDownLatch latch) {
+        return new FeedStore.OnFeedUpdateListener() {
+            @Override
+            public void onFeedUpdated(String feedLink, FeedUpdateSummary summary) {
+                latch.countDown();
+            }
+        };
+    }
+
+    // Test thread has no looper, so its Realm instance doesn't see writes of other threads
+    // until it is moved to the latest version (starting transaction does it).
+    private void refreshTestRealm() {
+        mTestRealm.beginTransaction();
+        mTestRealm.cancelTransaction();
+    }
+
     @After
     public void afterTest() {
         deleteTestRealm();
@@ -9,6 +9,7 @@ import android.support.v4.app.FragmentManager;
 import android.support.v7.widget.DividerItemDecoration;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -19,17 +20,25 @@ import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.gpetuhov.android.rssreader.core.FeedFetcher;
+import com.gpetuhov.android.rssreader.core.FeedRefresher;
+import com.gpetuhov.android.rssreader.core.events.FeedFetchErrorEvent;
+import com.gpetuhov.android.rssreader.core.events.FeedFetchSuccessEvent;
+import com.gpetuhov.android.rssreader.core.events.RefreshFinishedEvent;
 import com.gpetuhov.android.rssreader.data.DataStorage;
 import com.gpetuhov.android.rssreader.data.RSSFeed;
-import com.gpetuhov.android.rssreader.events.FeedFetchErrorEvent;
-import com.gpetuhov.android.rssreader.events.FeedFetchSuccessEvent;
 import com.gpetuhov.android.rssreader.events.OpenFeedEvent;
+import com.gpetuhov.android.rssreader.events.PostsEvictedEvent;
+import com.gpetuhov.android.rssreader.events.StorageReadyEvent;
+import com.gpetuhov.android.rssreader.sync.FeedSyncScheduler;
+import com.gpetuhov.android.rssreader.utils.UtilsPrefs;
 
 import org.greenrobot.eventbus.EventBus;
 import org.greenrobot.eventbus.Subscribe;
 import org.greenrobot.eventbus.ThreadMode;
 
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import javax.inject.Inject;
 
@@ -49,13 +58,19 @@ public class FeedListFragment extends Fragment {
     @Inject DataStorage mDataStorage;
     @Inject EventBus mEventBus;
     @Inject FeedFetcher mFeedFetcher;
+    @Inject FeedRefresher mFeedRefresher;
+    @Inject UtilsPrefs mUtilsPrefs;
+    @Inject FeedSyncScheduler mFeedSyncScheduler;
 
     // RecyclerView for RSS feed list
     @BindView(R.id.feed_list_recycler_view) RecyclerView mFeedListRecyclerView;
 
-    // Progress bar shown during adding of new feed
+    // Progress bar shown during adding of new feed and refreshing all feeds
     @BindView(R.id.add_feed_progress_bar) ProgressBar mProgressBar;
 
+    // TextView displayed instead of the list until storage is ready
+    @BindView(R.id.loading_view) TextView mLoadingTextView;
+
     // Keeps Unbinder object to properly unbind views in onDestroyView of the fragment
     private Unbinder mUnbinder;
 
@@ -64,6 +79,9 @@ public class FeedListFragment extends Fragment {
 
     private String mAddedFeedLink;
 
+    // True after StorageReadyEvent is received
+    private boolean mIsStorageReady;
+
     @Override
     public void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -111,16 +129,51 @@ public class FeedListFragment extends Fragment {
                 layoutManager.getOrientation());
         mFeedListRecyclerView.addItemDecoration(dividerItemDecoration);
 
-        // Get list of RSS feeds from the storage
-        // and create new adapter for the RecyclerView with it.
-        mFeedAdapter = new FeedAdapter(mDataStorage.getFeedList());
+        // Create new adapter for the RecyclerView
+        mFeedAdapter = new FeedAdapter();
 
         // Attach adapter to the RecyclerView
         mFeedListRecyclerView.setAdapter(mFeedAdapter);
 
+        // If refresh of all feeds is still running (after screen rotation), show progress bar
+        if (mFeedRefresher.isRefreshing()) {
+            mProgressBar.setVisibility(View.VISIBLE);
+        }
+
+        updateLoadingView();
+
         return v;
     }
 
+    @Override
+    public void onResume() {
+        super.onResume();
+
+        // Load list of RSS feeds from the storage
+        // (every time user returns, because unread counters change, when posts are read).
+        // Until storage is ready, the list is loaded by onStorageReady().
+        if (mIsStorageReady) {
+            updateUI();
+        }
+    }
+
+    // Show placeholder instead of the list until storage is ready
+    private void updateLoadingView() {
+        mFeedListRecyclerView.setVisibility(mIsStorageReady ? View.VISIBLE : View.GONE);
+        mLoadingTextView.setVisibility(mIsStorageReady ? View.GONE : View.VISIBLE);
+    }
+
+    // Load new snapshot of the feed list in background
+    // and display its changes in RecyclerView
+    private void updateUI() {
+        mFeedAdapter.update(new Callable<List<RSSFeed>>() {
+            @Override
+            public List<RSSFeed> call() throws Exception {
+                return mDataStorage.getFeedListCopy();
+            }
+        }, null);
+    }
+
     @Override
     public void onDestroyView() {
         super.onDestroyView();
@@ -133,6 +186,25 @@ public class FeedListFragment extends Fragment {
     public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
         // Inflate menu
         inflater.inflate(R.menu.menu_fragment_feed_list, menu);
+
+        // Show current background sync constraints
+        menu.findItem(R.id.action_sync_unmetered_only).setChecked(mUtilsPrefs.isSyncUnmeteredOnly());
+        menu.findItem(R.id.action_sync_charging_only).setChecked(mUtilsPrefs.isSyncChargingOnly());
+
+        // Fetch statistics are for debugging only
+        menu.findItem(R.id.action_fetch_statistics).setVisible(BuildConfig.DEBUG);
+    }
+
+    @Override
+    public void onPrepareOptionsMenu(Menu menu) {
+        super.onPrepareOptionsMenu(menu);
+
+        // These actions read storage in the main thread,
+        // so they are disabled until storage is ready.
+        menu.findItem(R.id.action_add_feed).setEnabled(mIsStorageReady);
+        menu.findItem(R.id.action_search_posts).setEnabled(mIsStorageReady);
+        menu.findItem(R.id.action_timeline).setEnabled(mIsStorageReady);
+        menu.findItem(R.id.action_refresh_all).setEnabled(mIsStorageReady);
     }
 
     @Override
@@ -147,6 +219,45 @@ public class FeedListFragment extends Fragment {
             return true;
         }
 
+        // If user selected Search item
+        if (R.id.action_search_posts == id) {
+            startActivity(new Intent(getActivity(), SearchActivity.class));
+            return true;
+        }
+
+        // If user selected All Feeds item
+        if (R.id.action_timeline == id) {
+            startActivity(new Intent(getActivity(), TimelineActivity.class));
+            return true;
+        }
+
+        // If user selected Refresh All item
+        if (R.id.action_refresh_all == id) {
+            refreshAllFeeds();
+            return true;
+        }
+
+        // If user selected one of background sync constraints
+        if (R.id.action_sync_unmetered_only == id) {
+            item.setChecked(!item.isChecked());
+            mUtilsPrefs.setSyncUnmeteredOnly(item.isChecked());
+            mFeedSyncScheduler.reschedule();
+            return true;
+        }
+
+        if (R.id.action_sync_charging_only == id) {
+            item.setChecked(!item.isChecked());
+            mUtilsPrefs.setSyncChargingOnly(item.isChecked());
+            mFeedSyncScheduler.reschedule();
+            return true;
+        }
+
+        // If user selected Fetch Statistics item
+        if (R.id.action_fetch_statistics == id) {
+            startActivity(new Intent(getActivity(), MetricsActivity.class));
+            return true;
+        }
+
         return super.onOptionsItemSelected(item);
     }
 
@@ -167,6 +278,15 @@ public class FeedListFragment extends Fragment {
         addFeedFragment.show(manager, ADD_FEED_DIALOG_TAG);
     }
 
+    private void refreshAllFeeds() {
+        // Show progress bar
+        mProgressBar.setVisibility(View.VISIBLE);
+
+        // Start fetching all feeds from the storage
+        // (user asked for refresh, so fresh feeds are fetched too).
+        mFeedRefresher.refreshAll(true);
+    }
+
     // Called by add feed fragment to return results
     @Override
     public void onActivityResult(int requestCode, int resultCode, Intent intent) {
@@ -211,6 +331,9 @@ public class FeedListFragment extends Fragment {
         // TextView for RSS Feed title
         @BindView(R.id.rss_feed_title) TextView mRSSFeedTitleTextView;
 
+        // TextView for number of unread posts
+        @BindView(R.id.rss_feed_unread_count) TextView mUnreadCountTextView;
+
         public FeedHolder(View itemView) {
             super(itemView);
 
@@ -223,6 +346,11 @@ public class FeedListFragment extends Fragment {
         public void bindFeed(RSSFeed rssFeed) {
             mRSSFeed = rssFeed;
             mRSSFeedTitleTextView.setText(rssFeed.getTitle());
+
+            // Counter is stored in the feed, posts are not counted here
+            int unreadCount = rssFeed.getUnreadCount();
+            mUnreadCountTextView.setText(String.valueOf(unreadCount));
+            mUnreadCountTextView.setVisibility(unreadCount > 0 ? View.VISIBLE : View.GONE);
         }
 
         @Override
@@ -248,13 +376,7 @@ public class FeedListFragment extends Fragment {
         }
     }
 
-    private class FeedAdapter extends RecyclerView.Adapter<FeedHolder> {
-
-        private List<RSSFeed> mRSSFeeds;
-
-        public FeedAdapter(List<RSSFeed> RSSFeeds) {
-            mRSSFeeds = RSSFeeds;
-        }
+    private class FeedAdapter extends SnapshotAdapter<RSSFeed, FeedHolder> {
 
         @Override
         public FeedHolder onCreateViewHolder(ViewGroup parent, int viewType) {
@@ -270,17 +392,48 @@ public class FeedListFragment extends Fragment {
 
         @Override
         public void onBindViewHolder(FeedHolder holder, int position) {
-            RSSFeed rssFeed = mRSSFeeds.get(position);
+            RSSFeed rssFeed = getItem(position);
             holder.bindFeed(rssFeed);
         }
 
         @Override
-        public int getItemCount() {
-            if (mRSSFeeds != null) {
-                return mRSSFeeds.size();
-            } else {
-                return 0;
-            }
+        protected boolean areItemsTheSame(RSSFeed oldItem, RSSFeed newItem) {
+            return oldItem.getLink().equals(newItem.getLink());
+        }
+
+        @Override
+        protected boolean areContentsTheSame(RSSFeed oldItem, RSSFeed newItem) {
+            return TextUtils.equals(oldItem.getTitle(), newItem.getTitle())
+                    && oldItem.getUnreadCount() == newItem.getUnreadCount();
+        }
+    }
+
+    // === DATASTORAGE CALLBACKS =====
+
+    // Called when a StorageReadyEvent is posted (in the main thread to update UI).
+    // Event is sticky, so it is received right after registration, if storage is already ready.
+    @Subscribe(threadMode = ThreadMode.MAIN, sticky = true)
+    public void onStorageReady(StorageReadyEvent event) {
+
+        if (mIsStorageReady) {
+            return;
+        }
+
+        mIsStorageReady = true;
+
+        // Enable actions, that need storage
+        if (getActivity() != null) {
+            getActivity().invalidateOptionsMenu();
+        }
+
+        // Fragment view may be already destroyed
+        if (getView() != null) {
+            updateLoadingView();
+        }
+
+        // If the fragment is not resumed yet, the list is loaded by onResume()
+        if (isResumed()) {
+            updateUI();
         }
     }
 
@@ -290,22 +443,51 @@ public class FeedListFragment extends Fragment {
     @Subscribe(threadMode = ThreadMode.MAIN)
     public void onFeedFetchSuccess(FeedFetchSuccessEvent event) {
 
-        // Hide progress bar
-        mProgressBar.setVisibility(View.GONE);
+        // Hide progress bar, if refresh of all feeds is not running
+        if (!mFeedRefresher.isRefreshing()) {
+            mProgressBar.setVisibility(View.GONE);
+        }
 
-        // Update UI
-        mFeedAdapter.notifyDataSetChanged();
+        // Update UI only if list of feeds has changed
+        // (new feed, new title or new posts, that change unread counter).
+        if (event.hasChanges()) {
+            updateUI();
+        }
+    }
+
+    // Called when a PostsEvictedEvent is posted (in the main thread to update UI)
+    @Subscribe(threadMode = ThreadMode.MAIN)
+    public void onPostsEvicted(PostsEvictedEvent event) {
+        // Unread counters of the feeds may have changed
+        updateUI();
     }
 
     // Called when a FeedFetchErrorEvent is posted (in the main thread to display Toast)
     @Subscribe(threadMode = ThreadMode.MAIN)
     public void onFeedFetchError(FeedFetchErrorEvent event) {
 
-        // Hide progress bar
-        mProgressBar.setVisibility(View.GONE);
+        // Hide progress bar, if refresh of all feeds is not running
+        if (!mFeedRefresher.isRefreshing()) {
+            mProgressBar.setVisibility(View.GONE);
+        }
 
         // Get error message from the event and display Toast
         String errorMessage = event.getErrorMessage();
         Toast.makeText(getActivity(), errorMessage, Toast.LENGTH_SHORT).show();
     }
+
+    // Called when a RefreshFinishedEvent is posted (in the main thread to update UI)
+    @Subscribe(threadMode = ThreadMode.MAIN)
+    public void onRefreshFinished(RefreshFinishedEvent event) {
+
+        // Hide progress bar
+        mProgressBar.setVisibility(View.GONE);
+
+        // Display number of failed feeds, if any
+        if (event.getFailedCount() > 0) {
+            String message = getString(R.string.refresh_all_failed,
+                    event.getFailedCount(), event.getTotalCount());
+            Toast.makeText(getActivity(), message, Toast.LENGTH_SHORT).show();
+        }
+    }
 }
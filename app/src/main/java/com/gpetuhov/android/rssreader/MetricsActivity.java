@@ -0,0 +1,11 @@
+package com.gpetuhov.android.rssreader;
+
+import android.support.v4.app.Fragment;
+
+// Activity for fetch statistics (available in debug builds only)
+public class MetricsActivity extends SingleFragmentActivity {
+    @Override
+    protected Fragment createFragment() {
+        return new MetricsFragment();
+    }
+}
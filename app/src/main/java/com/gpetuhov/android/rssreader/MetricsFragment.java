@@ -0,0 +1,123 @@
+package com.gpetuhov.android.rssreader;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.annotation.Nullable;
+import android.support.v4.app.Fragment;
+import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import com.gpetuhov.android.rssreader.core.metrics.FetchMetrics;
+
+import javax.inject.Inject;
+
+import butterknife.BindView;
+import butterknife.ButterKnife;
+import butterknife.Unbinder;
+
+// Fragment with text snapshot of fetch statistics
+// (timings of fetch stages and counters for all feeds and for every feed).
+// Snapshot can be shared as plain text.
+public class MetricsFragment extends Fragment {
+
+    // Dependencies injected by Dagger
+    @Inject FetchMetrics mFetchMetrics;
+
+    // TextView for text snapshot of the statistics
+    @BindView(R.id.metrics_text) TextView mMetricsTextView;
+
+    // Keeps Unbinder object to properly unbind views in onDestroyView of the fragment
+    private Unbinder mUnbinder;
+
+    @Override
+    public void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        // Inject dependencies
+        RSSReaderApp.getAppComponent().inject(this);
+
+        // This fragment has menu
+        setHasOptionsMenu(true);
+    }
+
+    @Nullable
+    @Override
+    public View onCreateView(LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
+
+        // Inflate the layout for this fragment
+        View v = inflater.inflate(R.layout.fragment_metrics, container, false);
+
+        // Bind views and save reference to Unbinder object
+        mUnbinder = ButterKnife.bind(this, v);
+
+        return v;
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+
+        // Show the latest statistics every time user returns to the screen
+        updateUI();
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+
+        // This is recommended to do here when using Butterknife in fragments
+        mUnbinder.unbind();
+    }
+
+    @Override
+    public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
+        // Inflate menu
+        inflater.inflate(R.menu.menu_fragment_metrics, menu);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+
+        // Get selected item ID
+        int id = item.getItemId();
+
+        // If user selected Refresh item
+        if (R.id.action_refresh_metrics == id) {
+            updateUI();
+            return true;
+        }
+
+        // If user selected Share item
+        if (R.id.action_share_metrics == id) {
+            shareMetrics();
+            return true;
+        }
+
+        // If user selected Reset item
+        if (R.id.action_reset_metrics == id) {
+            mFetchMetrics.reset();
+            updateUI();
+            return true;
+        }
+
+        return super.onOptionsItemSelected(item);
+    }
+
+    private void updateUI() {
+        mMetricsTextView.setText(mFetchMetrics.dump());
+    }
+
+    // Send text snapshot to any app, that accepts plain text
+    private void shareMetrics() {
+        Intent intent = new Intent(Intent.ACTION_SEND);
+        intent.setType("text/plain");
+        intent.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.fetch_statistics));
+        intent.putExtra(Intent.EXTRA_TEXT, mFetchMetrics.dump());
+        startActivity(Intent.createChooser(intent, getString(R.string.action_share_metrics)));
+    }
+}
@@ -1,6 +1,8 @@
 package com.gpetuhov.android.rssreader;
 
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.Nullable;
 import android.support.v4.app.Fragment;
 import android.view.LayoutInflater;
@@ -8,10 +10,14 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
+import com.gpetuhov.android.rssreader.data.DataStorage;
 import com.gpetuhov.android.rssreader.events.OpenPostEvent;
 
 import org.greenrobot.eventbus.EventBus;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
 import javax.inject.Inject;
 
 import butterknife.BindView;
@@ -21,8 +27,15 @@ import butterknife.Unbinder;
 // Fragment for post details
 public class PostFragment extends Fragment {
 
+    // Reads post descriptions from storage
+    private static final Executor sLoadExecutor = Executors.newSingleThreadExecutor();
+
+    // Delivers loaded description to main thread
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
     // Dependencies injected by Dagger
     @Inject EventBus mEventBus;
+    @Inject DataStorage mDataStorage;
 
     // TextViews for post title and description
     @BindView(R.id.post_title) TextView mPostTitleTextView;
@@ -31,8 +44,9 @@ public class PostFragment extends Fragment {
     // Keeps Unbinder object to properly unbind views in onDestroyView of the fragment
     private Unbinder mUnbinder;
 
+    private String mFeedLink;
+    private String mPostKey;
     private String mPostTitle;
-    private String mPostDescription;
 
     @Override
     public void onCreate(@Nullable Bundle savedInstanceState) {
@@ -58,15 +72,43 @@ public class PostFragment extends Fragment {
         OpenPostEvent openPostEvent = mEventBus.getStickyEvent(OpenPostEvent.class);
 
         // Get post details from the event
+        mFeedLink = openPostEvent.getFeedLink();
+        mPostKey = openPostEvent.getPostKey();
         mPostTitle = openPostEvent.getPostTitle();
-        mPostDescription = openPostEvent.getPostDescription();
 
         mPostTitleTextView.setText(mPostTitle);
-        mPostDescriptionTextView.setText(mPostDescription);
+
+        // Description is not kept in the lists of posts, so load it now
+        loadPostDescription();
+
+        // Opened post is read (marking it again after screen rotation changes nothing)
+        mDataStorage.markPostReadAsync(mFeedLink, mPostKey, null);
 
         return v;
     }
 
+    // Load description of the post in background and display it in main thread
+    private void loadPostDescription() {
+        sLoadExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final String postDescription = mDataStorage.getPostDescription(mFeedLink, mPostKey);
+
+                sMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Fragment view may be already destroyed
+                        if (null == getView()) {
+                            return;
+                        }
+
+                        mPostDescriptionTextView.setText(postDescription);
+                    }
+                });
+            }
+        });
+    }
+
     @Override
     public void onDestroyView() {
         super.onDestroyView();
@@ -1,24 +1,35 @@
 package com.gpetuhov.android.rssreader;
 
 import android.content.Intent;
+import android.graphics.Typeface;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.annotation.Nullable;
 import android.support.v4.app.Fragment;
 import android.support.v7.widget.DividerItemDecoration;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.gpetuhov.android.rssreader.core.FeedFetcher;
+import com.gpetuhov.android.rssreader.core.data.FeedStore;
+import com.gpetuhov.android.rssreader.core.data.FeedUpdateSummary;
+import com.gpetuhov.android.rssreader.core.events.FeedFetchErrorEvent;
+import com.gpetuhov.android.rssreader.core.events.FeedFetchSuccessEvent;
+import com.gpetuhov.android.rssreader.core.utils.UtilsUrl;
 import com.gpetuhov.android.rssreader.data.DataStorage;
 import com.gpetuhov.android.rssreader.data.RSSPost;
-import com.gpetuhov.android.rssreader.events.FeedFetchErrorEvent;
-import com.gpetuhov.android.rssreader.events.FeedFetchSuccessEvent;
 import com.gpetuhov.android.rssreader.events.OpenFeedEvent;
 import com.gpetuhov.android.rssreader.events.OpenPostEvent;
+import com.gpetuhov.android.rssreader.events.PostsEvictedEvent;
 import com.gpetuhov.android.rssreader.utils.UtilsNet;
 
 import org.greenrobot.eventbus.EventBus;
@@ -26,6 +37,7 @@ import org.greenrobot.eventbus.Subscribe;
 import org.greenrobot.eventbus.ThreadMode;
 
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import javax.inject.Inject;
 
@@ -56,13 +68,19 @@ public class PostListFragment extends Fragment {
     // Keeps RSS feed link
     private String mFeedLink;
 
-    // Keeps list of posts from the feed with provided link
-    private List<RSSPost> mPostList;
+    // True if network was available, when fragment view was created
+    private boolean mIsNetworkAvailable;
+
+    // Delivers results of storage writes to main thread
+    private final Handler mHandler = new Handler();
 
     @Override
     public void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
+        // This fragment has menu
+        setHasOptionsMenu(true);
+
         // Inject dependencies
         RSSReaderApp.getAppComponent().inject(this);
     }
@@ -112,29 +130,14 @@ public class PostListFragment extends Fragment {
         // Get RSS feed link from event
         mFeedLink = openFeedEvent.getFeedLink();
 
-        updateUI();
+        // Create new adapter for the list of posts and attach it to the RecyclerView
+        mPostAdapter = new PostAdapter();
+        mPostListRecyclerView.setAdapter(mPostAdapter);
 
         // Check network connection
-        if (!UtilsNet.isNetworkAvailableAndConnected(getActivity())) {
-            // No network connection
-            // Check if there is cached data
-            if (mPostList.size() == 0) {
-                // No cached data. Display error
-
-                // Hide RecyclerView
-                mPostListRecyclerView.setVisibility(View.GONE);
-
-                // Display empty view
-                mEmptyTextView.setVisibility(View.VISIBLE);
-            }
-        } else {
-            // Network connection available
-            // Display RecyclerView with cached data
-            mPostListRecyclerView.setVisibility(View.VISIBLE);
-
-            // Hide empty view
-            mEmptyTextView.setVisibility(View.GONE);
+        mIsNetworkAvailable = UtilsNet.isNetworkAvailableAndConnected(getActivity());
 
+        if (mIsNetworkAvailable) {
             // Start fetching post list from the feed link
             mFeedFetcher.fetchFeed(mFeedLink);
         }
@@ -142,15 +145,95 @@ public class PostListFragment extends Fragment {
         return v;
     }
 
+    @Override
+    public void onResume() {
+        super.onResume();
+
+        // Display cached posts
+        // (every time user returns, because opened posts are marked read).
+        updateUI();
+    }
+
+    @Override
+    public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
+        // Inflate menu
+        inflater.inflate(R.menu.menu_fragment_post_list, menu);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+
+        // If user selected Mark All As Read item
+        if (R.id.action_mark_all_read == item.getItemId()) {
+            markAllRead();
+            return true;
+        }
+
+        return super.onOptionsItemSelected(item);
+    }
+
+    // Mark all posts of the feed read in storage and display them as read, when it is written
+    private void markAllRead() {
+        mDataStorage.markFeedReadAsync(mFeedLink, new FeedStore.OnFeedUpdateListener() {
+            @Override
+            public void onFeedUpdated(String feedLink, FeedUpdateSummary summary) {
+                // Called in the writer thread
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Fragment view may be already destroyed
+                        if (getView() != null) {
+                            updateUI();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    // Load new snapshot of the post list in background
+    // and display its changes in RecyclerView
     private void updateUI() {
-        // Get list of posts from the feed with provided link
-        mPostList = mDataStorage.getPostList(mFeedLink);
+        mPostAdapter.update(new Callable<List<RSSPost>>() {
+            @Override
+            public List<RSSPost> call() throws Exception {
+                return mDataStorage.getPostListCopy(mFeedLink);
+            }
+        }, new SnapshotAdapter.OnUpdateListener() {
+            @Override
+            public void onUpdated() {
+                updateEmptyView();
+            }
 
-        // Create new adapter with the list of posts
-        mPostAdapter = new PostAdapter(mPostList);
+            @Override
+            public void onFailed() {
+                // Displayed posts are kept
+            }
+        });
+    }
 
-        // Attach adapter to the RecyclerView
-        mPostListRecyclerView.setAdapter(mPostAdapter);
+    private void updateEmptyView() {
+
+        // Fragment view may be already destroyed
+        if (null == getView()) {
+            return;
+        }
+
+        if (!mIsNetworkAvailable && mPostAdapter.getItemCount() == 0) {
+            // No network connection and no cached data. Display error
+
+            // Hide RecyclerView
+            mPostListRecyclerView.setVisibility(View.GONE);
+
+            // Display empty view
+            mEmptyTextView.setVisibility(View.VISIBLE);
+        } else {
+            // Display RecyclerView with cached data
+            mPostListRecyclerView.setVisibility(View.VISIBLE);
+
+            // Hide empty view
+            mEmptyTextView.setVisibility(View.GONE);
+        }
     }
 
     @Override
@@ -184,6 +267,9 @@ public class PostListFragment extends Fragment {
         public void bindPost(RSSPost rssPost) {
             mRSSPost = rssPost;
             mPostTitleTextView.setText(rssPost.getTitle());
+
+            // Unread posts are bold
+            mPostTitleTextView.setTypeface(null, rssPost.isRead() ? Typeface.NORMAL : Typeface.BOLD);
         }
 
         @Override
@@ -197,7 +283,8 @@ public class PostListFragment extends Fragment {
             // and can't receive events.
             // Post fragment will be able
             // to get sticky event from EventBus after start.
-            mEventBus.postSticky(new OpenPostEvent(mRSSPost.getTitle(), mRSSPost.getDescription()));
+            mEventBus.postSticky(new OpenPostEvent(
+                    mRSSPost.getFeedLink(), mRSSPost.getKey(), mRSSPost.getTitle()));
 
             // Create explicit intent to start post activity.
             // No need to add post details as intent extra,
@@ -209,13 +296,7 @@ public class PostListFragment extends Fragment {
         }
     }
 
-    private class PostAdapter extends RecyclerView.Adapter<PostHolder> {
-
-        private List<RSSPost> mRSSPosts;
-
-        public PostAdapter(List<RSSPost> RSSPosts) {
-            mRSSPosts = RSSPosts;
-        }
+    private class PostAdapter extends SnapshotAdapter<RSSPost, PostHolder> {
 
         @Override
         public PostHolder onCreateViewHolder(ViewGroup parent, int viewType) {
@@ -231,17 +312,19 @@ public class PostListFragment extends Fragment {
 
         @Override
         public void onBindViewHolder(PostHolder holder, int position) {
-            RSSPost rssPost = mRSSPosts.get(position);
+            RSSPost rssPost = getItem(position);
             holder.bindPost(rssPost);
         }
 
         @Override
-        public int getItemCount() {
-            if (mRSSPosts != null) {
-                return mRSSPosts.size();
-            } else {
-                return 0;
-            }
+        protected boolean areItemsTheSame(RSSPost oldItem, RSSPost newItem) {
+            return TextUtils.equals(oldItem.getKey(), newItem.getKey());
+        }
+
+        @Override
+        protected boolean areContentsTheSame(RSSPost oldItem, RSSPost newItem) {
+            return TextUtils.equals(oldItem.getTitle(), newItem.getTitle())
+                    && oldItem.isRead() == newItem.isRead();
         }
     }
 
@@ -250,14 +333,35 @@ public class PostListFragment extends Fragment {
     // Called when a FeedFetchSuccessEvent is posted (in the main thread to update UI)
     @Subscribe(threadMode = ThreadMode.MAIN)
     public void onFeedFetchSuccess(FeedFetchSuccessEvent event) {
-        mPostAdapter.notifyDataSetChanged();
+        // Update UI only if displayed feed has changed
+        if (isDisplayedFeed(event.getFeedLink()) && event.hasChanges()) {
+            updateUI();
+        }
+    }
+
+    // Called when a PostsEvictedEvent is posted (in the main thread to update UI)
+    @Subscribe(threadMode = ThreadMode.MAIN)
+    public void onPostsEvicted(PostsEvictedEvent event) {
+        // Displayed feed lost posts, while other feeds were updated
+        if (event.getFeedLinks().contains(UtilsUrl.normalizeFeedLink(mFeedLink))) {
+            updateUI();
+        }
     }
 
     // Called when a FeedFetchErrorEvent is posted (in the main thread to display Toast)
     @Subscribe(threadMode = ThreadMode.MAIN)
     public void onFeedFetchError(FeedFetchErrorEvent event) {
+        // Ignore errors of other feeds
+        if (!isDisplayedFeed(event.getFeedLink())) {
+            return;
+        }
+
         // Get error message from the event and display Toast
         String errorMessage = event.getErrorMessage();
         Toast.makeText(getActivity(), errorMessage, Toast.LENGTH_SHORT).show();
     }
-}
\ No newline at end of file
+
+    private boolean isDisplayedFeed(String feedLink) {
+        return UtilsUrl.normalizeFeedLink(mFeedLink).equals(feedLink);
+    }
+}
@@ -5,6 +5,9 @@ import android.app.Application;
 import com.gpetuhov.android.rssreader.dagger.AppComponent;
 import com.gpetuhov.android.rssreader.dagger.AppModule;
 import com.gpetuhov.android.rssreader.dagger.DaggerAppComponent;
+import com.gpetuhov.android.rssreader.sync.FeedSyncScheduler;
+
+import javax.inject.Inject;
 
 // Yellowstone application class.
 // Builds and keeps instance of AppComponent,
@@ -13,6 +16,9 @@ public class RSSReaderApp extends Application {
     // Keeps instance of AppComponent
     private static AppComponent mAppComponent;
 
+    // Dependencies injected by Dagger
+    @Inject FeedSyncScheduler mFeedSyncScheduler;
+
     @Override
     public void onCreate() {
         super.onCreate();
@@ -22,6 +28,12 @@ public class RSSReaderApp extends Application {
         mAppComponent = DaggerAppComponent.builder()
                 .appModule(new AppModule(this))
                 .build();
+
+        // Inject dependencies
+        mAppComponent.inject(this);
+
+        // Make sure feeds are synced in background (keeps existing schedule)
+        mFeedSyncScheduler.schedule();
     }
 
     public static AppComponent getAppComponent() {
@@ -0,0 +1,11 @@
+package com.gpetuhov.android.rssreader;
+
+import android.support.v4.app.Fragment;
+
+// Activity for search of posts in all feeds
+public class SearchActivity extends SingleFragmentActivity {
+    @Override
+    protected Fragment createFragment() {
+        return new SearchFragment();
+    }
+}
@@ -0,0 +1,251 @@
+package com.gpetuhov.android.rssreader;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Handler;
+import android.support.annotation.Nullable;
+import android.support.v4.app.Fragment;
+import android.support.v7.widget.DividerItemDecoration;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.text.Editable;
+import android.text.TextUtils;
+import android.text.TextWatcher;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.EditText;
+import android.widget.TextView;
+
+import com.gpetuhov.android.rssreader.data.DataStorage;
+import com.gpetuhov.android.rssreader.data.RSSPost;
+import com.gpetuhov.android.rssreader.events.OpenFeedEvent;
+import com.gpetuhov.android.rssreader.events.OpenPostEvent;
+
+import org.greenrobot.eventbus.EventBus;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import javax.inject.Inject;
+
+import butterknife.BindView;
+import butterknife.ButterKnife;
+import butterknife.Unbinder;
+
+// Fragment for search of posts in all feeds.
+// Posts are searched as user types: search starts, when user stops typing for SEARCH_DELAY_MILLIS,
+// and runs in background thread (results of outdated queries are dropped by adapter).
+public class SearchFragment extends Fragment {
+
+    // Search starts after user hasn't typed anything for this long
+    private static final long SEARCH_DELAY_MILLIS = 300;
+
+    // Only this many of the latest published found posts are displayed
+    private static final int MAX_SEARCH_RESULTS = 100;
+
+    // Dependencies injected by Dagger
+    @Inject DataStorage mDataStorage;
+    @Inject EventBus mEventBus;
+
+    // Search query
+    @BindView(R.id.search_query) EditText mSearchQueryEditText;
+
+    // RecyclerView for found posts
+    @BindView(R.id.search_result_recycler_view) RecyclerView mSearchResultRecyclerView;
+
+    // TextView to display when nothing is found
+    @BindView(R.id.empty_view) TextView mEmptyTextView;
+
+    // Keeps Unbinder object to properly unbind views in onDestroyView of the fragment
+    private Unbinder mUnbinder;
+
+    // Adapter for the RecyclerView
+    private PostAdapter mPostAdapter;
+
+    // Delays search until user stops typing
+    private final Handler mHandler = new Handler();
+
+    private final Runnable mSearchTask = new Runnable() {
+        @Override
+        public void run() {
+            updateUI();
+        }
+    };
+
+    @Override
+    public void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        // Inject dependencies
+        RSSReaderApp.getAppComponent().inject(this);
+    }
+
+    @Nullable
+    @Override
+    public View onCreateView(LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
+
+        // Inflate the layout for this fragment
+        View v = inflater.inflate(R.layout.fragment_search, container, false);
+
+        // Bind views and save reference to Unbinder object
+        mUnbinder = ButterKnife.bind(this, v);
+
+        // Create LinearLayoutManager for our RecyclerView (we need vertical scroll list)
+        LinearLayoutManager layoutManager = new LinearLayoutManager(getActivity());
+        mSearchResultRecyclerView.setLayoutManager(layoutManager);
+
+        // Add dividers between items
+        DividerItemDecoration dividerItemDecoration = new DividerItemDecoration(
+                mSearchResultRecyclerView.getContext(),
+                layoutManager.getOrientation());
+        mSearchResultRecyclerView.addItemDecoration(dividerItemDecoration);
+
+        // Create new adapter for the list of found posts and attach it to the RecyclerView
+        mPostAdapter = new PostAdapter();
+        mSearchResultRecyclerView.setAdapter(mPostAdapter);
+
+        // Restart delay on every change of the query
+        // (restored query after screen rotation is searched the same way).
+        mSearchQueryEditText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                mHandler.removeCallbacks(mSearchTask);
+                mHandler.postDelayed(mSearchTask, SEARCH_DELAY_MILLIS);
+            }
+        });
+
+        return v;
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+
+        // Search must not start after view is destroyed
+        mHandler.removeCallbacks(mSearchTask);
+
+        // This is recommended to do here when using Butterknife in fragments
+        mUnbinder.unbind();
+    }
+
+    // Search posts in background and display found ones
+    private void updateUI() {
+
+        final String query = mSearchQueryEditText.getText().toString();
+
+        mPostAdapter.update(new Callable<List<RSSPost>>() {
+            @Override
+            public List<RSSPost> call() throws Exception {
+                return mDataStorage.searchPosts(query, MAX_SEARCH_RESULTS);
+            }
+        }, new SnapshotAdapter.OnUpdateListener() {
+            @Override
+            public void onUpdated() {
+                updateEmptyView(query);
+            }
+
+            @Override
+            public void onFailed() {
+                // Displayed posts are kept
+            }
+        });
+    }
+
+    private void updateEmptyView(String query) {
+
+        // Fragment view may be already destroyed
+        if (null == getView()) {
+            return;
+        }
+
+        if (mPostAdapter.getItemCount() == 0 && !TextUtils.isEmpty(query.trim())) {
+            mSearchResultRecyclerView.setVisibility(View.GONE);
+            mEmptyTextView.setVisibility(View.VISIBLE);
+        } else {
+            mSearchResultRecyclerView.setVisibility(View.VISIBLE);
+            mEmptyTextView.setVisibility(View.GONE);
+        }
+    }
+
+    // === RECYCLERVIEW VIEWHOLDER AND ADAPTER =====
+
+    class PostHolder extends RecyclerView.ViewHolder
+            implements View.OnClickListener {
+
+        // Keeps post list item
+        private RSSPost mRSSPost;
+
+        // TextView for post title
+        @BindView(R.id.post_title) TextView mPostTitleTextView;
+
+        public PostHolder(View itemView) {
+            super(itemView);
+
+            itemView.setOnClickListener(this);
+
+            // Get access to TextView in itemView
+            ButterKnife.bind(this, itemView);
+        }
+
+        public void bindPost(RSSPost rssPost) {
+            mRSSPost = rssPost;
+            mPostTitleTextView.setText(rssPost.getTitle());
+        }
+
+        @Override
+        public void onClick(View v) {
+
+            // Post activity goes up to the post list, so it must show the feed of this post
+            mEventBus.removeStickyEvent(OpenFeedEvent.class);
+            mEventBus.postSticky(new OpenFeedEvent(mRSSPost.getFeedLink()));
+
+            // Deliver post to post fragment the same way, as post list does
+            mEventBus.removeStickyEvent(OpenPostEvent.class);
+            mEventBus.postSticky(new OpenPostEvent(
+                    mRSSPost.getFeedLink(), mRSSPost.getKey(), mRSSPost.getTitle()));
+
+            startActivity(new Intent(getActivity(), PostActivity.class));
+        }
+    }
+
+    private class PostAdapter extends SnapshotAdapter<RSSPost, PostHolder> {
+
+        @Override
+        public PostHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            // Get LayoutInflater from parent activity
+            LayoutInflater layoutInflater = LayoutInflater.from(getActivity());
+
+            // Create view for one list item from item layout
+            View view = layoutInflater.inflate(R.layout.list_item_post, parent, false);
+
+            // Create ViewHolder with inflated view for one list item
+            return new PostHolder(view);
+        }
+
+        @Override
+        public void onBindViewHolder(PostHolder holder, int position) {
+            RSSPost rssPost = getItem(position);
+            holder.bindPost(rssPost);
+        }
+
+        @Override
+        protected boolean areItemsTheSame(RSSPost oldItem, RSSPost newItem) {
+            return TextUtils.equals(oldItem.getFeedLink(), newItem.getFeedLink())
+                    && TextUtils.equals(oldItem.getKey(), newItem.getKey());
+        }
+
+        @Override
+        protected boolean areContentsTheSame(RSSPost oldItem, RSSPost newItem) {
+            return TextUtils.equals(oldItem.getTitle(), newItem.getTitle());
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.gpetuhov.android.rssreader;
+
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+// RecyclerView adapter, that displays immutable snapshot of the list.
+// New snapshot is loaded and compared with the displayed one in background thread,
+// then only inserted, removed and changed items are dispatched to RecyclerView
+// (this keeps item animations and scroll position and doesn't rebind all visible items).
+public abstract class SnapshotAdapter<T, VH extends RecyclerView.ViewHolder>
+        extends RecyclerView.Adapter<VH> {
+
+    // Loads and compares snapshots of all adapters one by one
+    private static final Executor sDiffExecutor = Executors.newSingleThreadExecutor();
+
+    // Delivers results to main thread
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    // Currently displayed snapshot
+    private List<T> mItems = new ArrayList<>();
+
+    // Increased on every update, so that results of the outdated updates are dropped
+    private int mUpdateGeneration;
+
+    // Notified in main thread, when new snapshot is displayed
+    // or when it failed to load (displayed snapshot is kept then)
+    public interface OnUpdateListener {
+        void onUpdated();
+        void onFailed();
+    }
+
+    // True if both items represent the same object (for example, have the same link)
+    protected abstract boolean areItemsTheSame(T oldItem, T newItem);
+
+    // True if both items are displayed the same way
+    protected abstract boolean areContentsTheSame(T oldItem, T newItem);
+
+    public T getItem(int position) {
+        return mItems.get(position);
+    }
+
+    // Return displayed snapshot (it is never changed, only replaced by the next one,
+    // so it can be read in background thread too).
+    public List<T> getItems() {
+        return mItems;
+    }
+
+    @Override
+    public int getItemCount() {
+        return mItems.size();
+    }
+
+    // Load new snapshot with provided loader (in background thread)
+    // and dispatch its difference with the displayed one (in main thread).
+    // Must be called in main thread.
+    public void update(final Callable<List<T>> loader, final OnUpdateListener listener) {
+
+        final int generation = ++mUpdateGeneration;
+        final List<T> oldItems = mItems;
+
+        sDiffExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<T> newItems;
+
+                try {
+                    newItems = loader.call();
+                } catch (Exception e) {
+                    // Keep displayed snapshot
+                    notifyFailed(generation, listener);
+                    return;
+                }
+
+                final DiffUtil.DiffResult diffResult =
+                        DiffUtil.calculateDiff(new SnapshotDiffCallback(oldItems, newItems));
+
+                sMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Newer update has been started, this result is outdated
+                        if (generation != mUpdateGeneration) {
+                            return;
+                        }
+
+                        mItems = newItems;
+                        diffResult.dispatchUpdatesTo(SnapshotAdapter.this);
+
+                        if (listener != null) {
+                            listener.onUpdated();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    // Notify listener of failed update in main thread (unless newer update has been started)
+    private void notifyFailed(final int generation, final OnUpdateListener listener) {
+
+        if (null == listener) {
+            return;
+        }
+
+        sMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (generation == mUpdateGeneration) {
+                    listener.onFailed();
+                }
+            }
+        });
+    }
+
+    // Compares old and new snapshots for DiffUtil
+    private class SnapshotDiffCallback extends DiffUtil.Callback {
+
+        private final List<T> mOldItems;
+        private final List<T> mNewItems;
+
+        SnapshotDiffCallback(List<T> oldItems, List<T> newItems) {
+            mOldItems = oldItems;
+            mNewItems = newItems;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldItems.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewItems.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return SnapshotAdapter.this.areItemsTheSame(
+                    mOldItems.get(oldItemPosition), mNewItems.get(newItemPosition));
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return SnapshotAdapter.this.areContentsTheSame(
+                    mOldItems.get(oldItemPosition), mNewItems.get(newItemPosition));
+        }
+    }
+}
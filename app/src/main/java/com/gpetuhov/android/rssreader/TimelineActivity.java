@@ -0,0 +1,11 @@
+package com.gpetuhov.android.rssreader;
+
+import android.support.v4.app.Fragment;
+
+// Activity with timeline of posts of all feeds
+public class TimelineActivity extends SingleFragmentActivity {
+    @Override
+    protected Fragment createFragment() {
+        return new TimelineFragment();
+    }
+}
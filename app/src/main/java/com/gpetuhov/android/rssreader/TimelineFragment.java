@@ -0,0 +1,289 @@
+package com.gpetuhov.android.rssreader;
+
+import android.content.Intent;
+import android.graphics.Typeface;
+import android.os.Bundle;
+import android.support.annotation.Nullable;
+import android.support.v4.app.Fragment;
+import android.support.v7.widget.DividerItemDecoration;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import com.gpetuhov.android.rssreader.data.DataStorage;
+import com.gpetuhov.android.rssreader.data.RSSPost;
+import com.gpetuhov.android.rssreader.data.TimelineCursor;
+import com.gpetuhov.android.rssreader.data.TimelinePage;
+import com.gpetuhov.android.rssreader.events.OpenFeedEvent;
+import com.gpetuhov.android.rssreader.events.OpenPostEvent;
+
+import org.greenrobot.eventbus.EventBus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import javax.inject.Inject;
+
+import butterknife.BindView;
+import butterknife.ButterKnife;
+import butterknife.Unbinder;
+
+// Fragment with timeline of posts of all feeds, the newest first.
+// Posts are loaded in background by pages of PAGE_SIZE (see DataStorage.getTimelinePage()),
+// the next page is loaded, when user scrolls close to the end of the loaded ones.
+public class TimelineFragment extends Fragment {
+
+    // Number of posts loaded at once
+    private static final int PAGE_SIZE = 50;
+
+    // Next page is loaded, when there are this few posts below the last visible one
+    private static final int LOAD_THRESHOLD = PAGE_SIZE / 2;
+
+    // Dependencies injected by Dagger
+    @Inject DataStorage mDataStorage;
+    @Inject EventBus mEventBus;
+
+    // RecyclerView for posts
+    @BindView(R.id.timeline_recycler_view) RecyclerView mTimelineRecyclerView;
+
+    // TextView to display when there are no posts
+    @BindView(R.id.empty_view) TextView mEmptyTextView;
+
+    // Keeps Unbinder object to properly unbind views in onDestroyView of the fragment
+    private Unbinder mUnbinder;
+
+    // Adapter for the RecyclerView
+    private PostAdapter mPostAdapter;
+
+    // Cursor of the next page (null if all posts are loaded)
+    private TimelineCursor mNextCursor;
+
+    // True while the next page is loaded
+    private boolean mIsLoading;
+
+    @Override
+    public void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        // Inject dependencies
+        RSSReaderApp.getAppComponent().inject(this);
+    }
+
+    @Nullable
+    @Override
+    public View onCreateView(LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
+
+        // Inflate the layout for this fragment
+        View v = inflater.inflate(R.layout.fragment_timeline, container, false);
+
+        // Bind views and save reference to Unbinder object
+        mUnbinder = ButterKnife.bind(this, v);
+
+        // Create LinearLayoutManager for our RecyclerView (we need vertical scroll list)
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(getActivity());
+        mTimelineRecyclerView.setLayoutManager(layoutManager);
+
+        // Add dividers between items
+        DividerItemDecoration dividerItemDecoration = new DividerItemDecoration(
+                mTimelineRecyclerView.getContext(),
+                layoutManager.getOrientation());
+        mTimelineRecyclerView.addItemDecoration(dividerItemDecoration);
+
+        // Create new adapter for the posts and attach it to the RecyclerView
+        mPostAdapter = new PostAdapter();
+        mTimelineRecyclerView.setAdapter(mPostAdapter);
+
+        // Load the next page, when user scrolls close to the end
+        mTimelineRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int lastVisiblePosition = layoutManager.findLastVisibleItemPosition();
+
+                if (lastVisiblePosition >= mPostAdapter.getItemCount() - LOAD_THRESHOLD) {
+                    loadNextPage();
+                }
+            }
+        });
+
+        // Load the first page
+        mNextCursor = TimelineCursor.START;
+        mIsLoading = false;
+        loadNextPage();
+
+        return v;
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+
+        // This is recommended to do here when using Butterknife in fragments
+        mUnbinder.unbind();
+    }
+
+    // Load the next page in background and display it after the loaded posts
+    private void loadNextPage() {
+
+        if (mIsLoading || null == mNextCursor) {
+            return;
+        }
+
+        mIsLoading = true;
+
+        final PageLoader pageLoader = new PageLoader(mPostAdapter.getItems(), mNextCursor);
+
+        mPostAdapter.update(pageLoader, new SnapshotAdapter.OnUpdateListener() {
+            @Override
+            public void onUpdated() {
+                mNextCursor = pageLoader.getNextCursor();
+                mIsLoading = false;
+                updateEmptyView();
+            }
+
+            @Override
+            public void onFailed() {
+                // The same page is loaded again, when user scrolls
+                mIsLoading = false;
+            }
+        });
+    }
+
+    private void updateEmptyView() {
+
+        // Fragment view may be already destroyed
+        if (null == getView()) {
+            return;
+        }
+
+        if (mPostAdapter.getItemCount() == 0) {
+            mTimelineRecyclerView.setVisibility(View.GONE);
+            mEmptyTextView.setVisibility(View.VISIBLE);
+        } else {
+            mTimelineRecyclerView.setVisibility(View.VISIBLE);
+            mEmptyTextView.setVisibility(View.GONE);
+        }
+    }
+
+    // Loads the next page in background and returns loaded posts followed by it
+    private class PageLoader implements Callable<List<RSSPost>> {
+
+        private final List<RSSPost> mLoadedPosts;
+        private final TimelineCursor mCursor;
+
+        // Written in background thread, read in main thread after the update is displayed
+        private volatile TimelineCursor mNextCursor;
+
+        PageLoader(List<RSSPost> loadedPosts, TimelineCursor cursor) {
+            mLoadedPosts = loadedPosts;
+            mCursor = cursor;
+        }
+
+        @Override
+        public List<RSSPost> call() throws Exception {
+            TimelinePage page = mDataStorage.getTimelinePage(mCursor, PAGE_SIZE);
+
+            List<RSSPost> posts = new ArrayList<>(mLoadedPosts.size() + page.getPosts().size());
+            posts.addAll(mLoadedPosts);
+            posts.addAll(page.getPosts());
+
+            mNextCursor = page.getNextCursor();
+
+            return posts;
+        }
+
+        TimelineCursor getNextCursor() {
+            return mNextCursor;
+        }
+    }
+
+    // === RECYCLERVIEW VIEWHOLDER AND ADAPTER =====
+
+    class PostHolder extends RecyclerView.ViewHolder
+            implements View.OnClickListener {
+
+        // Keeps post list item
+        private RSSPost mRSSPost;
+
+        // TextView for post title
+        @BindView(R.id.post_title) TextView mPostTitleTextView;
+
+        public PostHolder(View itemView) {
+            super(itemView);
+
+            itemView.setOnClickListener(this);
+
+            // Get access to TextView in itemView
+            ButterKnife.bind(this, itemView);
+        }
+
+        public void bindPost(RSSPost rssPost) {
+            mRSSPost = rssPost;
+            mPostTitleTextView.setText(rssPost.getTitle());
+
+            // Unread posts are bold (the same as in the post list)
+            mPostTitleTextView.setTypeface(null, rssPost.isRead() ? Typeface.NORMAL : Typeface.BOLD);
+        }
+
+        @Override
+        public void onClick(View v) {
+
+            // Post fragment marks the post read in storage.
+            // Loaded pages are not reloaded, so the displayed copy is marked here.
+            if (!mRSSPost.isRead()) {
+                mRSSPost.setRead(true);
+                if (getAdapterPosition() != RecyclerView.NO_POSITION) {
+                    mPostAdapter.notifyItemChanged(getAdapterPosition());
+                }
+            }
+
+            // Post activity goes up to the post list, so it must show the feed of this post
+            mEventBus.removeStickyEvent(OpenFeedEvent.class);
+            mEventBus.postSticky(new OpenFeedEvent(mRSSPost.getFeedLink()));
+
+            // Deliver post to post fragment the same way, as post list does
+            mEventBus.removeStickyEvent(OpenPostEvent.class);
+            mEventBus.postSticky(new OpenPostEvent(
+                    mRSSPost.getFeedLink(), mRSSPost.getKey(), mRSSPost.getTitle()));
+
+            startActivity(new Intent(getActivity(), PostActivity.class));
+        }
+    }
+
+    private class PostAdapter extends SnapshotAdapter<RSSPost, PostHolder> {
+
+        @Override
+        public PostHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            // Get LayoutInflater from parent activity
+            LayoutInflater layoutInflater = LayoutInflater.from(getActivity());
+
+            // Create view for one list item from item layout
+            View view = layoutInflater.inflate(R.layout.list_item_post, parent, false);
+
+            // Create ViewHolder with inflated view for one list item
+            return new PostHolder(view);
+        }
+
+        @Override
+        public void onBindViewHolder(PostHolder holder, int position) {
+            RSSPost rssPost = getItem(position);
+            holder.bindPost(rssPost);
+        }
+
+        @Override
+        protected boolean areItemsTheSame(RSSPost oldItem, RSSPost newItem) {
+            return TextUtils.equals(oldItem.getFeedLink(), newItem.getFeedLink())
+                    && TextUtils.equals(oldItem.getKey(), newItem.getKey());
+        }
+
+        @Override
+        protected boolean areContentsTheSame(RSSPost oldItem, RSSPost newItem) {
+            return TextUtils.equals(oldItem.getTitle(), newItem.getTitle())
+                    && oldItem.isRead() == newItem.isRead();
+        }
+    }
+}
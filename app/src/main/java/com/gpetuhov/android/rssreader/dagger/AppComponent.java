@@ -1,8 +1,15 @@
 package com.gpetuhov.android.rssreader.dagger;
 
 import com.gpetuhov.android.rssreader.FeedListFragment;
+import com.gpetuhov.android.rssreader.MetricsFragment;
 import com.gpetuhov.android.rssreader.PostFragment;
 import com.gpetuhov.android.rssreader.PostListFragment;
+import com.gpetuhov.android.rssreader.RSSReaderApp;
+import com.gpetuhov.android.rssreader.SearchFragment;
+import com.gpetuhov.android.rssreader.TimelineFragment;
+import com.gpetuhov.android.rssreader.sync.BootReceiver;
+import com.gpetuhov.android.rssreader.sync.FeedSyncJobService;
+import com.gpetuhov.android.rssreader.sync.FeedSyncService;
 
 import javax.inject.Singleton;
 
@@ -15,4 +22,11 @@ public interface AppComponent {
     void inject(FeedListFragment feedListFragment);
     void inject(PostListFragment postListFragment);
     void inject(PostFragment postFragment);
+    void inject(MetricsFragment metricsFragment);
+    void inject(SearchFragment searchFragment);
+    void inject(TimelineFragment timelineFragment);
+    void inject(RSSReaderApp rssReaderApp);
+    void inject(FeedSyncJobService feedSyncJobService);
+    void inject(FeedSyncService feedSyncService);
+    void inject(BootReceiver bootReceiver);
 }
@@ -4,12 +4,20 @@ import android.app.Application;
 import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
 
-import com.gpetuhov.android.rssreader.FeedFetcher;
+import com.gpetuhov.android.rssreader.core.FeedFetcher;
+import com.gpetuhov.android.rssreader.core.FeedHttpClient;
+import com.gpetuhov.android.rssreader.core.FeedRefresher;
+import com.gpetuhov.android.rssreader.core.metrics.FetchMetrics;
+import com.gpetuhov.android.rssreader.core.parser.XmlParserFactory;
 import com.gpetuhov.android.rssreader.data.DataStorage;
+import com.gpetuhov.android.rssreader.parser.AndroidXmlParserFactory;
+import com.gpetuhov.android.rssreader.sync.FeedSyncScheduler;
 import com.gpetuhov.android.rssreader.utils.UtilsPrefs;
 
 import org.greenrobot.eventbus.EventBus;
 
+import java.io.File;
+
 import javax.inject.Singleton;
 
 import dagger.Module;
@@ -20,6 +28,9 @@ import okhttp3.OkHttpClient;
 @Module
 public class AppModule {
 
+    // Subdirectory of app cache directory for HTTP response cache
+    private static final String HTTP_CACHE_DIRECTORY = "http";
+
     Application mApplication;
 
     public AppModule(Application application) {
@@ -50,10 +61,11 @@ public class AppModule {
     }
 
     // Returns instance of DataStorage
+    // (storage is initialized in background, StorageReadyEvent is posted to EventBus, when it is done).
     @Provides
     @Singleton
-    DataStorage providesDataStorage(Application application, UtilsPrefs utilsPrefs) {
-        DataStorage dataStorage = new DataStorage(application, utilsPrefs);
+    DataStorage providesDataStorage(Application application, UtilsPrefs utilsPrefs, EventBus eventBus) {
+        DataStorage dataStorage = new DataStorage(application, utilsPrefs, eventBus);
         return dataStorage;
     }
 
@@ -64,19 +76,59 @@ public class AppModule {
         return EventBus.getDefault();
     }
 
-    // Returns instance of OkHttpClient
+    // Returns instance of FetchMetrics
     @Provides
     @Singleton
-    OkHttpClient provideOkHttpClient() {
-        OkHttpClient client = new OkHttpClient();
+    FetchMetrics providesFetchMetrics() {
+        FetchMetrics fetchMetrics = new FetchMetrics();
+        return fetchMetrics;
+    }
+
+    // Returns instance of OkHttpClient shared by all network calls
+    // (with response cache in app cache directory, see FeedHttpClient for configuration).
+    // Network stages of every call are recorded to FetchMetrics.
+    @Provides
+    @Singleton
+    OkHttpClient provideOkHttpClient(Application application, FetchMetrics fetchMetrics) {
+        File cacheDirectory = new File(application.getCacheDir(), HTTP_CACHE_DIRECTORY);
+        OkHttpClient client = FeedHttpClient.newBuilder(cacheDirectory)
+                .eventListenerFactory(fetchMetrics.getEventListenerFactory())
+                .build();
         return client;
     }
 
+    // Returns instance of XmlParserFactory
+    @Provides
+    @Singleton
+    XmlParserFactory providesXmlParserFactory() {
+        XmlParserFactory xmlParserFactory = new AndroidXmlParserFactory();
+        return xmlParserFactory;
+    }
+
     // Returns instance of FeedFetcher
     @Provides
     @Singleton
-    FeedFetcher providesFeedFetcher(OkHttpClient okHttpClient, DataStorage dataStorage, EventBus eventBus) {
-        FeedFetcher feedFetcher = new FeedFetcher(okHttpClient, dataStorage, eventBus);
+    FeedFetcher providesFeedFetcher(OkHttpClient okHttpClient, DataStorage dataStorage,
+                                    XmlParserFactory xmlParserFactory, EventBus eventBus,
+                                    FetchMetrics fetchMetrics) {
+        FeedFetcher feedFetcher = new FeedFetcher(
+                okHttpClient, dataStorage, xmlParserFactory, eventBus, fetchMetrics);
         return feedFetcher;
     }
+
+    // Returns instance of FeedRefresher
+    @Provides
+    @Singleton
+    FeedRefresher providesFeedRefresher(FeedFetcher feedFetcher, DataStorage dataStorage, EventBus eventBus) {
+        FeedRefresher feedRefresher = new FeedRefresher(feedFetcher, dataStorage, eventBus);
+        return feedRefresher;
+    }
+
+    // Returns instance of FeedSyncScheduler
+    @Provides
+    @Singleton
+    FeedSyncScheduler providesFeedSyncScheduler(Application application, UtilsPrefs utilsPrefs) {
+        FeedSyncScheduler feedSyncScheduler = new FeedSyncScheduler(application, utilsPrefs);
+        return feedSyncScheduler;
+    }
 }
@@ -0,0 +1,263 @@
+package com.gpetuhov.android.rssreader.data;
+
+
+import com.gpetuhov.android.rssreader.core.data.PostBodyCodec;
+import com.gpetuhov.android.rssreader.core.data.PostKey;
+import com.gpetuhov.android.rssreader.core.search.SearchTokenizer;
+import com.gpetuhov.android.rssreader.core.utils.UtilsUrl;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import io.realm.DynamicRealm;
+import io.realm.DynamicRealmObject;
+import io.realm.FieldAttribute;
+import io.realm.RealmList;
+import io.realm.RealmMigration;
+import io.realm.RealmResults;
+import io.realm.RealmSchema;
+
+// Migrates Realm file created by previous versions of the app to the current schema.
+// Every change of the fields of Realm objects must increase SCHEMA_VERSION
+// and add a migration step below.
+public class DataMigration implements RealmMigration {
+
+    // Current version of Realm schema
+    public static final long SCHEMA_VERSION = 14;
+
+    @Override
+    public void migrate(DynamicRealm realm, long oldVersion, long newVersion) {
+
+        RealmSchema schema = realm.getSchema();
+
+        // Version 1: feed keeps HTTP validators for conditional GET
+        if (oldVersion == 0) {
+            schema.get("RSSFeed")
+                    .addField("mETag", String.class)
+                    .addField("mLastModified", String.class);
+            oldVersion++;
+        }
+
+        // Version 2: post keeps its link and guid
+        if (oldVersion == 1) {
+            schema.get("RSSPost")
+                    .addField("mLink", String.class)
+                    .addField("mGuid", String.class);
+            oldVersion++;
+        }
+
+        // Version 3: post keeps link of its feed and its identity in the feed
+        if (oldVersion == 2) {
+            schema.get("RSSPost")
+                    .addField("mFeedLink", String.class, FieldAttribute.INDEXED)
+                    .addField("mKey", String.class, FieldAttribute.INDEXED);
+
+            // Fill new fields of existing posts
+            for (DynamicRealmObject feed : realm.where("RSSFeed").findAll()) {
+                String feedLink = feed.getString("mLink");
+
+                for (DynamicRealmObject post : feed.getList("mRSSPostList")) {
+                    post.setString("mFeedLink", feedLink);
+                    post.setString("mKey", PostKey.of(
+                            post.getString("mGuid"),
+                            post.getString("mLink"),
+                            post.getString("mTitle"),
+                            post.getString("mDescription")));
+                }
+            }
+            oldVersion++;
+        }
+
+        // Version 4: normalized feed link is primary key of the feed
+        if (oldVersion == 3) {
+            Set<String> feedLinks = new HashSet<>();
+
+            RealmResults<DynamicRealmObject> feeds = realm.where("RSSFeed").findAll();
+
+            // Iterate backwards, because duplicate feeds are deleted
+            for (int i = feeds.size() - 1; i >= 0; i--) {
+                DynamicRealmObject feed = feeds.get(i);
+                String feedLink = UtilsUrl.normalizeFeedLink(feed.getString("mLink"));
+
+                if (!feedLinks.add(feedLink)) {
+                    // The same feed is already stored, delete duplicate with its posts
+                    feed.getList("mRSSPostList").deleteAllFromRealm();
+                    feed.deleteFromRealm();
+                    continue;
+                }
+
+                feed.setString("mLink", feedLink);
+                for (DynamicRealmObject post : feed.getList("mRSSPostList")) {
+                    post.setString("mFeedLink", feedLink);
+                }
+            }
+
+            schema.get("RSSFeed").addPrimaryKey("mLink");
+            oldVersion++;
+        }
+
+        // Version 5: feed keeps its refresh schedule.
+        // Existing feeds get zeros, so they are due right away.
+        if (oldVersion == 4) {
+            schema.get("RSSFeed")
+                    .addField("mLastFetchedAt", long.class)
+                    .addField("mLastNewPostAt", long.class)
+                    .addField("mPostIntervalMillis", long.class)
+                    .addField("mRefreshHintMillis", long.class)
+                    .addField("mNextRefreshAt", long.class, FieldAttribute.INDEXED);
+            oldVersion++;
+        }
+
+        // Version 6: feed keeps number of failed fetches (for backoff)
+        if (oldVersion == 5) {
+            schema.get("RSSFeed")
+                    .addField("mFailureCount", int.class);
+            oldVersion++;
+        }
+
+        // Version 7: post keeps time when it was stored.
+        // Existing posts are considered stored now, one millisecond apart in the order of the feed,
+        // so that they don't expire right away and the oldest of them are evicted first.
+        if (oldVersion == 6) {
+            schema.get("RSSPost")
+                    .addField("mStoredAt", long.class, FieldAttribute.INDEXED);
+
+            long now = System.currentTimeMillis();
+
+            for (DynamicRealmObject feed : realm.where("RSSFeed").findAll()) {
+                RealmList<DynamicRealmObject> posts = feed.getList("mRSSPostList");
+
+                for (int i = 0; i < posts.size(); i++) {
+                    posts.get(i).setLong("mStoredAt", now - i);
+                }
+            }
+            oldVersion++;
+        }
+
+        // Version 8: full-text search index of existing posts
+        if (oldVersion == 7) {
+            schema.create("RSSTerm")
+                    .addField("mTerm", String.class, FieldAttribute.PRIMARY_KEY)
+                    .addRealmListField("mPosts", schema.get("RSSPost"));
+
+            for (DynamicRealmObject post : realm.where("RSSPost").findAll()) {
+                for (String term : SearchTokenizer.getTerms(
+                        post.getString("mTitle"), post.getString("mDescription"))) {
+
+                    DynamicRealmObject rssTerm =
+                            realm.where("RSSTerm").equalTo("mTerm", term).findFirst();
+
+                    if (null == rssTerm) {
+                        rssTerm = realm.createObject("RSSTerm", term);
+                    }
+
+                    rssTerm.getList("mPosts").add(post);
+                }
+            }
+            oldVersion++;
+        }
+
+        // Version 9: description of the post is moved to separate body object
+        if (oldVersion == 8) {
+            schema.create("RSSPostBody")
+                    .addField("mDescription", String.class);
+            schema.get("RSSPost")
+                    .addRealmObjectField("mBody", schema.get("RSSPostBody"));
+
+            for (DynamicRealmObject post : realm.where("RSSPost").findAll()) {
+                DynamicRealmObject body = realm.createObject("RSSPostBody");
+                body.setString("mDescription", post.getString("mDescription"));
+                post.setObject("mBody", body);
+            }
+
+            schema.get("RSSPost").removeField("mDescription");
+            oldVersion++;
+        }
+
+        // Version 10: description in the body is stored compressed with its sizes
+        if (oldVersion == 9) {
+            schema.get("RSSPostBody")
+                    .addField("mData", byte[].class)
+                    .addField("mRawSize", int.class)
+                    .addField("mStoredSize", int.class);
+
+            for (DynamicRealmObject body : realm.where("RSSPostBody").findAll()) {
+                String description = body.getString("mDescription");
+                byte[] data = PostBodyCodec.encode(description);
+                body.setBlob("mData", data);
+                body.setInt("mRawSize", PostBodyCodec.getRawSize(description));
+                body.setInt("mStoredSize", data != null ? data.length : 0);
+            }
+
+            schema.get("RSSPostBody").removeField("mDescription");
+            oldVersion++;
+        }
+
+        // Version 11: publication time of the post.
+        // Dates of existing posts were not stored, so time of storing is used instead.
+        if (oldVersion == 10) {
+            schema.get("RSSPost")
+                    .addField("mPublishedAt", long.class, FieldAttribute.INDEXED);
+
+            for (DynamicRealmObject post : realm.where("RSSPost").findAll()) {
+                post.setLong("mPublishedAt", post.getLong("mStoredAt"));
+            }
+            oldVersion++;
+        }
+
+        // Version 12: read state of the posts and unread counters of the feeds.
+        // Posts stored before are treated as read, so that only new posts are counted.
+        if (oldVersion == 11) {
+            schema.get("RSSPost")
+                    .addField("mRead", boolean.class, FieldAttribute.INDEXED);
+            schema.get("RSSFeed")
+                    .addField("mUnreadCount", int.class);
+
+            for (DynamicRealmObject post : realm.where("RSSPost").findAll()) {
+                post.setBoolean("mRead", true);
+            }
+            oldVersion++;
+        }
+
+        // Version 13: posts of the latest documents of the feeds are marked.
+        // Documents of the stored posts are unknown, so all of them are protected
+        // from the total limit, until the next fetch of their feed clears the flag.
+        if (oldVersion == 12) {
+            schema.get("RSSPost")
+                    .addField("mInLatestDocument", boolean.class, FieldAttribute.INDEXED);
+
+            for (DynamicRealmObject post : realm.where("RSSPost").findAll()) {
+                post.setBoolean("mInLatestDocument", true);
+            }
+            oldVersion++;
+        }
+
+        // Version 14: links of the search index are stored in the posts,
+        // and terms get their posts from backlinks.
+        if (oldVersion == 13) {
+            schema.get("RSSPost")
+                    .addRealmListField("mTerms", schema.get("RSSTerm"));
+
+            for (DynamicRealmObject term : realm.where("RSSTerm").findAll()) {
+                for (DynamicRealmObject post : term.getList("mPosts")) {
+                    post.getList("mTerms").add(term);
+                }
+            }
+
+            schema.get("RSSTerm").removeField("mPosts");
+            oldVersion++;
+        }
+    }
+
+    // Realm compares configurations (and migrations in them)
+    // when the same file is opened more than once.
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof DataMigration;
+    }
+
+    @Override
+    public int hashCode() {
+        return DataMigration.class.hashCode();
+    }
+}
@@ -4,81 +4,335 @@ package com.gpetuhov.android.rssreader.data;
 import android.content.Context;
 
 import com.gpetuhov.android.rssreader.R;
+import com.gpetuhov.android.rssreader.core.data.FeedInfo;
+import com.gpetuhov.android.rssreader.core.data.FeedPost;
+import com.gpetuhov.android.rssreader.core.data.FeedStore;
+import com.gpetuhov.android.rssreader.core.data.FeedUpdateSummary;
+import com.gpetuhov.android.rssreader.core.data.PostBodyCodec;
+import com.gpetuhov.android.rssreader.core.data.PostKey;
+import com.gpetuhov.android.rssreader.core.data.RefreshSchedule;
+import com.gpetuhov.android.rssreader.core.data.RetentionPolicy;
+import com.gpetuhov.android.rssreader.core.search.SearchQuery;
+import com.gpetuhov.android.rssreader.core.search.SearchTokenizer;
+import com.gpetuhov.android.rssreader.core.utils.UtilsDate;
+import com.gpetuhov.android.rssreader.core.utils.UtilsUrl;
+import com.gpetuhov.android.rssreader.events.PostsEvictedEvent;
+import com.gpetuhov.android.rssreader.events.StorageReadyEvent;
 import com.gpetuhov.android.rssreader.utils.UtilsPrefs;
 
+import org.greenrobot.eventbus.EventBus;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import io.realm.Realm;
+import io.realm.RealmConfiguration;
 import io.realm.RealmList;
+import io.realm.RealmQuery;
 import io.realm.RealmResults;
+import io.realm.Sort;
+
+// Controls data storage for offline use.
+// Realm is opened and default feeds are written in the writer thread after construction,
+// so that start of the app doesn't wait for the disk. Methods, that need storage,
+// block until it is ready, UI waits for StorageReadyEvent instead.
+// Main thread Realm instance is used only for reading data displayed in UI.
+// Fetched feeds are written in a single background writer thread,
+// which has its own Realm instance.
+// Feed updates, that arrive close to each other, are written in one transaction
+// (group commit), so that many feeds fetched at once pay for one commit only.
+// Stored posts are limited by RetentionPolicy: every feed update evicts the oldest posts
+// of that feed, and every group commit evicts the oldest posts of all feeds,
+// if there are too many (posts of the latest documents of the feeds are never evicted).
+// Space of evicted posts is returned to the system
+// by compaction of the file, which runs on start at most once in COMPACT_INTERVAL_MILLIS.
+// Posts are searched with inverted index (see RSSTerm), which is updated
+// in the same transaction, when posts are stored or changed.
+public class DataStorage implements FeedStore {
+
+    // Pending feed updates are written after this delay since the first of them arrived...
+    private static final long WRITE_BATCH_WINDOW_MILLIS = 100;
+
+    // ...or as soon as there are this many of them
+    private static final int WRITE_BATCH_MAX_SIZE = 20;
+
+    // Realm file is compacted on start, if it was not compacted for this long
+    private static final long COMPACT_INTERVAL_MILLIS = 7 * 24 * 60 * 60 * 1000;
+
+    // Search starts from the posts published within this time from the newest match
+    private static final long SEARCH_WINDOW_MILLIS = 7 * 24 * 60 * 60 * 1000;
+
+    // Maximum number of search index terms, that incomplete last word of the query is expanded to
+    private static final int MAX_PREFIX_TERMS = 32;
 
-// Controls data storage for offline use
-public class DataStorage {
+    // Timeline page is taken from the posts published within this time
+    // below the cursor (see getTimelinePage())
+    private static final long TIMELINE_WINDOW_MILLIS = 24 * 60 * 60 * 1000;
+
+    // Order of the timeline (see compareTimeline())
+    private static final Comparator<RSSPost> TIMELINE_ORDER = new Comparator<RSSPost>() {
+        @Override
+        public int compare(RSSPost first, RSSPost second) {
+            return compareTimeline(first.getPublishedAt(), first.getFeedLink(), first.getKey(),
+                    second.getPublishedAt(), second.getFeedLink(), second.getKey());
+        }
+    };
+
+    // Eviction by the total limit starts with the posts stored within this time
+    // since the oldest one (see findEvictionCandidates())
+    private static final long EVICTION_WINDOW_MILLIS = 24 * 60 * 60 * 1000;
+
+    // Order of eviction of excess posts: read posts first, the oldest first
+    private static final String[] EVICTION_SORT_FIELDS = {"mRead", "mStoredAt"};
+    private static final Sort[] EVICTION_SORT_ORDERS = {Sort.DESCENDING, Sort.ASCENDING};
 
     private Context mContext;
     private UtilsPrefs mUtilsPrefs;
+    private EventBus mEventBus;
     private Realm mRealm;
 
-    // Constructor for use in app
-    public DataStorage(Context context, UtilsPrefs utilsPrefs) {
+    // Configuration of the Realm file.
+    // Used to open Realm instances in background threads.
+    // Written in the writer thread before mReadyLatch is released.
+    private RealmConfiguration mRealmConfiguration;
 
-        mContext = context;
-        mUtilsPrefs = utilsPrefs;
+    // Released, when storage is initialized (successfully or not)
+    private final CountDownLatch mReadyLatch = new CountDownLatch(1);
 
-        // Realm initialization must be done once.
-        Realm.init(context);
+    // Error of storage initialization (null if there was none)
+    private volatile RuntimeException mInitError;
 
-        // Get Realm instance
-        mRealm = Realm.getDefaultInstance();
+    // Performs all writes of fetched feeds in the same background thread
+    private final ScheduledExecutorService mWriteExecutor =
+            Executors.newSingleThreadScheduledExecutor();
+
+    // Feed updates waiting to be written (guarded by itself)
+    private final List<FeedUpdate> mPendingUpdates = new ArrayList<>();
+
+    // True if write of pending updates is already scheduled
+    private boolean mIsWriteScheduled;
+
+    // Writes all pending feed updates
+    private final Runnable mWritePendingUpdatesTask = new Runnable() {
+        @Override
+        public void run() {
+            writePendingUpdates();
+        }
+    };
+
+    // Initializes storage and signals, that it is ready
+    private final Runnable mInitStorageTask = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                initStorage();
+            } catch (RuntimeException e) {
+                // Executor would swallow the error, so it is rethrown by methods, that need storage
+                mInitError = e;
+            }
+
+            mReadyLatch.countDown();
+
+            if (null == mInitError) {
+                mEventBus.postSticky(new StorageReadyEvent());
+            }
+        }
+    };
+
+    // Realm instance of the writer thread (accessed only in that thread).
+    // Kept open during entire application lifecycle.
+    private Realm mWriterRealm;
+
+    // Limits of stored posts
+    private volatile RetentionPolicy mRetentionPolicy;
+
+    // Constructor for use in app.
+    // Storage is initialized in the writer thread (see initStorage()),
+    // so construction doesn't touch the disk. StorageReadyEvent is posted, when it is done.
+    public DataStorage(Context context, UtilsPrefs utilsPrefs, EventBus eventBus) {
+
+        mContext = context;
+        mUtilsPrefs = utilsPrefs;
+        mEventBus = eventBus;
 
-        initStorage();
+        // Feed updates queued before initialization is done are written after it,
+        // because the writer thread runs one task at a time.
+        mWriteExecutor.execute(mInitStorageTask);
     }
 
     // Constructor for testing.
-    // Realm must be provided by user.
+    // Realm must be provided by user. Storage is initialized in the calling thread.
     public DataStorage(Context context, UtilsPrefs utilsPrefs, Realm realm) {
         mContext = context;
         mUtilsPrefs = utilsPrefs;
         mRealm = realm;
+        mRealmConfiguration = realm.getConfiguration();
 
-        initStorage();
+        mRetentionPolicy = mUtilsPrefs.getRetentionPolicy();
+        createDefaultFeedsIfFirstRun(mRealm);
+
+        mReadyLatch.countDown();
     }
 
+    // Initialize Realm and write default feeds on the first run.
+    // Must be called only in the writer thread.
     private void initStorage() {
-        // Check if this is the first time the app runs on the device
-        if (mUtilsPrefs.isFirstRun()) {
-            // Create default RSS feed list
-            createDefaultFeeds();
-            // Reset first run flag
-            mUtilsPrefs.setNotFirstRun();
+
+        // Realm initialization must be done once.
+        Realm.init(mContext);
+
+        // Realm file is migrated to the current schema, when opened
+        mRealmConfiguration = new RealmConfiguration.Builder()
+                .schemaVersion(DataMigration.SCHEMA_VERSION)
+                .migration(new DataMigration())
+                .build();
+        Realm.setDefaultConfiguration(mRealmConfiguration);
+
+        mRetentionPolicy = mUtilsPrefs.getRetentionPolicy();
+
+        // Realm can't compact the file, while any instance is open
+        if (compactIfDue()) {
+            // Terms of evicted posts are not needed anymore
+            // (deleted after the ready signal, it is not urgent).
+            mWriteExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    deleteUnusedTerms(getWriterRealm());
+                }
+            });
         }
+
+        createDefaultFeedsIfFirstRun(getWriterRealm());
+    }
+
+    // Return true if storage is initialized (methods, that read or write it, don't block)
+    public boolean isReady() {
+        return mReadyLatch.getCount() == 0;
+    }
+
+    // Block until storage is initialized.
+    // Throws IllegalStateException, if initialization failed.
+    private void awaitReady() {
+
+        boolean isInterrupted = false;
+
+        while (true) {
+            try {
+                mReadyLatch.await();
+                break;
+            } catch (InterruptedException e) {
+                // Storage is needed anyway, so keep waiting and restore the flag after that
+                isInterrupted = true;
+            }
+        }
+
+        if (isInterrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (mInitError != null) {
+            throw new IllegalStateException("Storage initialization failed", mInitError);
+        }
+    }
+
+    // Open Realm instance for the calling thread (after storage is initialized).
+    // Realm instances can't be shared between threads, so every instance must be closed
+    // in the same thread.
+    private Realm openRealm() {
+        awaitReady();
+        return Realm.getInstance(mRealmConfiguration);
+    }
+
+    // Compact Realm file, if it was not compacted for COMPACT_INTERVAL_MILLIS.
+    // Return true if it was due.
+    // Must be called before any Realm instance is opened.
+    private boolean compactIfDue() {
+
+        long now = System.currentTimeMillis();
+
+        if (now - mUtilsPrefs.getLastCompactedAt() < COMPACT_INTERVAL_MILLIS) {
+            return false;
+        }
+
+        // Nothing to compact on the first run
+        if (new File(mRealmConfiguration.getPath()).exists()) {
+            Realm.compactRealm(mRealmConfiguration);
+        }
+
+        mUtilsPrefs.setLastCompactedAt(now);
+
+        return true;
+    }
+
+    // Set limits of stored posts (applied on the next feed update)
+    public void setRetentionPolicy(RetentionPolicy retentionPolicy) {
+        mRetentionPolicy = retentionPolicy;
+        mUtilsPrefs.setRetentionPolicy(retentionPolicy);
+    }
+
+    public RetentionPolicy getRetentionPolicy() {
+        awaitReady();
+        return mRetentionPolicy;
+    }
+
+    // Write initial list of RSS feeds to storage, if this is the first time
+    // the app runs on the device
+    private void createDefaultFeedsIfFirstRun(Realm realm) {
+
+        if (!mUtilsPrefs.isFirstRun()) {
+            return;
+        }
+
+        // Create default RSS feed list
+        createDefaultFeeds(realm);
+
+        // Reset first run flag
+        mUtilsPrefs.setNotFirstRun();
     }
 
     // Write initial list of RSS feeds to storage
-    private void createDefaultFeeds() {
+    private void createDefaultFeeds(Realm realm) {
         // Get default RSS feed titles and links from resources
         String[] defaultRSSFeedTitles =
                 mContext.getResources().getStringArray(R.array.default_rss_feed_titles);
         String[] defaultRSSFeedLinks =
                 mContext.getResources().getStringArray(R.array.default_rss_feed_links);
 
-        // Write default RSS feeds to Realm
-        mRealm.beginTransaction();
+        // Write default RSS feeds to Realm (skip feeds, that are already stored)
+        realm.beginTransaction();
         for (int i = 0; i < defaultRSSFeedTitles.length; i++) {
-            RSSFeed rssFeed = mRealm.createObject(RSSFeed.class);
-            rssFeed.setTitle(defaultRSSFeedTitles[i]);
-            rssFeed.setLink(defaultRSSFeedLinks[i]);
+            String feedLink = UtilsUrl.normalizeFeedLink(defaultRSSFeedLinks[i]);
+            if (null == findFeed(realm, feedLink)) {
+                RSSFeed rssFeed = realm.createObject(RSSFeed.class, feedLink);
+                rssFeed.setTitle(defaultRSSFeedTitles[i]);
+            }
         }
-        mRealm.commitTransaction();
+        realm.commitTransaction();
     }
 
+    // Get main thread Realm instance.
+    // It is opened on first use, so the first call blocks until storage is initialized.
     public Realm getRealm() {
+        if (null == mRealm) {
+            mRealm = openRealm();
+        }
         return mRealm;
     }
 
     // Get list of all RSS feeds in the storage
     public RealmResults<RSSFeed> getFeedList() {
-        return mRealm.where(RSSFeed.class).findAll();
+        return getRealm().where(RSSFeed.class).findAll();
     }
 
     // Get list of posts in the feed with the given link
@@ -98,44 +352,1264 @@ public class DataStorage {
     }
 
     public RSSFeed getFeed(String feedLink) {
-        return mRealm.where(RSSFeed.class).equalTo("mLink", feedLink).findFirst();
+        return findFeed(getRealm(), UtilsUrl.normalizeFeedLink(feedLink));
+    }
+
+    // Find feed by normalized link (primary key lookup)
+    private static RSSFeed findFeed(Realm realm, String normalizedFeedLink) {
+        return realm.where(RSSFeed.class).equalTo("mLink", normalizedFeedLink).findFirst();
+    }
+
+    // Get copy of the feed with provided link (without posts) detached from Realm,
+    // or null if there is no such feed.
+    // Can be called from any thread.
+    public RSSFeed getFeedCopy(String feedLink) {
+
+        // Realm instances can't be shared between threads,
+        // so open instance for the calling thread.
+        Realm realm = openRealm();
+
+        try {
+            RSSFeed rssFeed = findFeed(realm, UtilsUrl.normalizeFeedLink(feedLink));
+
+            // Depth 0 means, that list of posts is not copied
+            return rssFeed != null ? realm.copyFromRealm(rssFeed, 0) : null;
+        } finally {
+            realm.close();
+        }
+    }
+
+    // Get stored state of the feed with provided link, or null if there is no such feed.
+    // Can be called from any thread.
+    @Override
+    public FeedInfo getFeedInfo(String feedLink) {
+
+        RSSFeed rssFeed = getFeedCopy(feedLink);
+
+        if (rssFeed != null) {
+            return new FeedInfo(rssFeed.getLink(), rssFeed.getTitle(),
+                    rssFeed.getETag(), rssFeed.getLastModified(),
+                    rssFeed.getLastFetchedAt(), rssFeed.getNextRefreshAt(),
+                    rssFeed.getFailureCount());
+        } else {
+            return null;
+        }
+    }
+
+    // Get links of all RSS feeds in the storage.
+    // Can be called from any thread.
+    @Override
+    public List<String> getFeedLinks() {
+
+        Realm realm = openRealm();
+
+        try {
+            List<String> feedLinks = new ArrayList<>();
+            for (RSSFeed rssFeed : realm.where(RSSFeed.class).findAll()) {
+                feedLinks.add(rssFeed.getLink());
+            }
+            return feedLinks;
+        } finally {
+            realm.close();
+        }
+    }
+
+    // Get links of the feeds, that must be fetched at provided time
+    // (next refresh time is indexed, so only due feeds are read).
+    // Can be called from any thread.
+    @Override
+    public List<String> getDueFeedLinks(long now) {
+
+        Realm realm = openRealm();
+
+        try {
+            RealmResults<RSSFeed> dueFeeds = realm.where(RSSFeed.class)
+                    .lessThanOrEqualTo("mNextRefreshAt", now)
+                    .findAll();
+
+            List<String> feedLinks = new ArrayList<>();
+            for (RSSFeed rssFeed : dueFeeds) {
+                feedLinks.add(rssFeed.getLink());
+            }
+            return feedLinks;
+        } finally {
+            realm.close();
+        }
+    }
+
+    // Get copy of the list of all RSS feeds (without posts) detached from Realm.
+    // Can be called from any thread.
+    public List<RSSFeed> getFeedListCopy() {
+
+        Realm realm = openRealm();
+
+        try {
+            return realm.copyFromRealm(realm.where(RSSFeed.class).findAll(), 0);
+        } finally {
+            realm.close();
+        }
+    }
+
+    // Get copy of the list of posts in the feed with provided link detached from Realm.
+    // Bodies of the posts are not copied (see getPostDescription()).
+    // Can be called from any thread.
+    public List<RSSPost> getPostListCopy(String feedLink) {
+
+        Realm realm = openRealm();
+
+        try {
+            RSSFeed rssFeed = findFeed(realm, UtilsUrl.normalizeFeedLink(feedLink));
+
+            if (rssFeed != null) {
+                // Depth 0 means, that bodies of the posts are not copied
+                return realm.copyFromRealm(rssFeed.getRSSPostList(), 0);
+            } else {
+                return new ArrayList<>();
+            }
+        } finally {
+            realm.close();
+        }
+    }
+
+    // Get description of the post with provided key in the feed with provided link,
+    // or null if there is no such post.
+    // Only body of this post is read.
+    // Can be called from any thread.
+    public String getPostDescription(String feedLink, String postKey) {
+
+        Realm realm = openRealm();
+
+        try {
+            RSSPost rssPost = findPost(realm, UtilsUrl.normalizeFeedLink(feedLink), postKey);
+            return rssPost != null ? rssPost.getDescription() : null;
+        } catch (IllegalArgumentException e) {
+            // Corrupted body is displayed as empty
+            return null;
+        } finally {
+            realm.close();
+        }
+    }
+
+    // Find post by normalized link of its feed and its key (both fields are indexed)
+    private static RSSPost findPost(Realm realm, String normalizedFeedLink, String postKey) {
+        return realm.where(RSSPost.class)
+                .equalTo("mKey", postKey)
+                .equalTo("mFeedLink", normalizedFeedLink)
+                .findFirst();
+    }
+
+    // Get page of the timeline of all feeds: at most pageSize posts, that follow the cursor
+    // (use TimelineCursor.START for the first page), the newest first.
+    // Only posts published within a window below the cursor are read and sorted,
+    // not all posts older than the cursor,
+    // and only posts of the page are copied (without bodies).
+    // Can be called from any thread.
+    public TimelinePage getTimelinePage(TimelineCursor cursor, int pageSize) {
+
+        Realm realm = openRealm();
+
+        try {
+            // Posts of the page and at least one post after it, if there is any
+            List<RSSPost> candidates = new ArrayList<>();
+
+            // Posts published at the time of the cursor, that are after it (usually none)
+            if (!cursor.isStart()) {
+                RealmResults<RSSPost> samePublishedAtPosts = realm.where(RSSPost.class)
+                        .equalTo("mPublishedAt", cursor.getPublishedAt())
+                        .findAll();
+
+                for (RSSPost rssPost : samePublishedAtPosts) {
+                    if (compareWithCursor(rssPost, cursor) > 0) {
+                        candidates.add(rssPost);
+                    }
+                }
+            }
+
+            // Posts published earlier are taken from the window below the cursor,
+            // that doubles, until it holds enough posts (range conditions scan the column,
+            // but only posts of the window are sorted).
+            Number newestPublishedAt = realm.where(RSSPost.class)
+                    .lessThan("mPublishedAt", cursor.getPublishedAt())
+                    .max("mPublishedAt");
+
+            boolean hasOlderPosts = false;
+
+            if (newestPublishedAt != null) {
+                long oldestPublishedAt = realm.where(RSSPost.class).min("mPublishedAt").longValue();
+                long windowMillis = TIMELINE_WINDOW_MILLIS;
+                int neededCount = pageSize + 1 - candidates.size();
+
+                while (true) {
+                    long windowStart = newestPublishedAt.longValue() - windowMillis + 1;
+
+                    RealmQuery<RSSPost> query = realm.where(RSSPost.class)
+                            .lessThan("mPublishedAt", cursor.getPublishedAt())
+                            .greaterThanOrEqualTo("mPublishedAt", windowStart);
+
+                    boolean isLastWindow = windowStart <= oldestPublishedAt;
+
+                    if (isLastWindow || query.count() >= neededCount) {
+                        candidates.addAll(query.findAll());
+                        hasOlderPosts = !isLastWindow;
+                        break;
+                    }
+
+                    windowMillis *= 2;
+                }
+            }
+
+            Collections.sort(candidates, TIMELINE_ORDER);
+
+            boolean hasNextPage = hasOlderPosts || candidates.size() > pageSize;
+            List<RSSPost> pagePosts = realm.copyFromRealm(
+                    candidates.subList(0, Math.min(pageSize, candidates.size())), 0);
+
+            if (!hasNextPage || pagePosts.isEmpty()) {
+                return new TimelinePage(pagePosts, null);
+            }
+
+            RSSPost lastPost = pagePosts.get(pagePosts.size() - 1);
+            TimelineCursor nextCursor = new TimelineCursor(
+                    lastPost.getPublishedAt(), lastPost.getFeedLink(), lastPost.getKey());
+
+            return new TimelinePage(pagePosts, nextCursor);
+        } finally {
+            realm.close();
+        }
+    }
+
+    // Return positive number, if the post is after the cursor in the timeline
+    private static int compareWithCursor(RSSPost rssPost, TimelineCursor cursor) {
+        return compareTimeline(cursor.getPublishedAt(), cursor.getFeedLink(), cursor.getKey(),
+                rssPost.getPublishedAt(), rssPost.getFeedLink(), rssPost.getKey());
     }
 
-    // Update feed with new title and posts.
+    // Order of the timeline: the newest first, posts published at the same time
+    // are ordered by their identity, so that the order is the same on every page.
+    private static int compareTimeline(long firstPublishedAt, String firstFeedLink, String firstKey,
+                                       long secondPublishedAt, String secondFeedLink, String secondKey) {
+
+        if (firstPublishedAt != secondPublishedAt) {
+            return firstPublishedAt > secondPublishedAt ? -1 : 1;
+        }
+
+        int result = compareNullable(firstFeedLink, secondFeedLink);
+        return result != 0 ? result : compareNullable(firstKey, secondKey);
+    }
+
+    private static int compareNullable(String first, String second) {
+        if (null == first) {
+            return null == second ? 0 : -1;
+        }
+        return null == second ? 1 : first.compareTo(second);
+    }
+
+    // Find posts of all feeds, that match the query (see SearchQuery),
+    // and return copies of at most maxResults of them (without bodies) detached from Realm,
+    // the latest published first.
+    // Only the posts of the query term with the fewest posts are read
+    // (or of the terms the incomplete last word is expanded to, if it is the only one),
+    // and they are filtered by the other terms and sorted in Realm.
+    // The newest window of them is searched first, the window doubles,
+    // until it has maxResults matches, so common terms don't sort all of their posts.
+    // Can be called from any thread.
+    public List<RSSPost> searchPosts(String query, int maxResults) {
+
+        SearchQuery searchQuery = SearchQuery.parse(query);
+
+        if (searchQuery.isEmpty() || maxResults <= 0) {
+            return new ArrayList<>();
+        }
+
+        Realm realm = openRealm();
+
+        try {
+            List<RSSTerm> rssTerms = new ArrayList<>();
+
+            for (String term : searchQuery.getTerms()) {
+                RSSTerm rssTerm = findTerm(realm, term);
+
+                if (null == rssTerm) {
+                    // No post has this term
+                    return new ArrayList<>();
+                }
+
+                rssTerms.add(rssTerm);
+            }
+
+            List<RSSTerm> prefixTerms = null;
+
+            if (searchQuery.getPrefix() != null) {
+                prefixTerms = findPrefixTerms(realm, searchQuery.getPrefix());
+
+                if (prefixTerms.isEmpty()) {
+                    // No post has a term starting with the prefix
+                    return new ArrayList<>();
+                }
+            }
+
+            // Posts, that are filtered by the other terms
+            List<RealmResults<RSSPost>> sources = new ArrayList<>();
+            List<String> filterTerms = new ArrayList<>();
+            List<String> filterPrefixTerms = null;
+
+            if (rssTerms.isEmpty()) {
+                for (RSSTerm rssTerm : prefixTerms) {
+                    sources.add(rssTerm.getPosts());
+                }
+            } else {
+                // Backlinks are counted without reading the posts
+                RSSTerm rarestTerm = rssTerms.get(0);
+                for (RSSTerm rssTerm : rssTerms) {
+                    if (rssTerm.getPosts().size() < rarestTerm.getPosts().size()) {
+                        rarestTerm = rssTerm;
+                    }
+                }
+
+                sources.add(rarestTerm.getPosts());
+
+                for (RSSTerm rssTerm : rssTerms) {
+                    if (rssTerm != rarestTerm) {
+                        filterTerms.add(rssTerm.getTerm());
+                    }
+                }
+
+                if (prefixTerms != null) {
+                    filterPrefixTerms = new ArrayList<>();
+                    for (RSSTerm rssTerm : prefixTerms) {
+                        filterPrefixTerms.add(rssTerm.getTerm());
+                    }
+                }
+            }
+
+            List<RSSPost> matchedPosts =
+                    findNewestMatches(sources, filterTerms, filterPrefixTerms, maxResults);
+
+            return realm.copyFromRealm(matchedPosts, 0);
+        } finally {
+            realm.close();
+        }
+    }
+
+    // Return at most MAX_PREFIX_TERMS search index entries, that start with the prefix
+    // (the shortest of them first, because they are sorted alphabetically).
+    private static List<RSSTerm> findPrefixTerms(Realm realm, String prefix) {
+
+        RealmResults<RSSTerm> rssTerms = realm.where(RSSTerm.class)
+                .beginsWith("mTerm", prefix)
+                .findAllSorted("mTerm");
+
+        return new ArrayList<>(rssTerms.subList(0, Math.min(rssTerms.size(), MAX_PREFIX_TERMS)));
+    }
+
+    // Return at most maxCount distinct posts of the sources, that have all filterTerms
+    // and any of filterPrefixTerms (if not null), the latest published first.
+    // Posts published within a window from the newest one are searched first,
+    // the window doubles, until it holds maxCount matches or all posts of the sources.
+    private static List<RSSPost> findNewestMatches(List<RealmResults<RSSPost>> sources,
+                                                   List<String> filterTerms,
+                                                   List<String> filterPrefixTerms,
+                                                   int maxCount) {
+
+        long newestPublishedAt = Long.MIN_VALUE;
+        long oldestPublishedAt = Long.MAX_VALUE;
+
+        for (RealmResults<RSSPost> source : sources) {
+            Number maxPublishedAt = source.max("mPublishedAt");
+            Number minPublishedAt = source.min("mPublishedAt");
+
+            if (maxPublishedAt != null) {
+                newestPublishedAt = Math.max(newestPublishedAt, maxPublishedAt.longValue());
+                oldestPublishedAt = Math.min(oldestPublishedAt, minPublishedAt.longValue());
+            }
+        }
+
+        if (Long.MIN_VALUE == newestPublishedAt) {
+            // Sources have no posts
+            return new ArrayList<>();
+        }
+
+        long windowMillis = SEARCH_WINDOW_MILLIS;
+
+        while (true) {
+            long windowStart = newestPublishedAt - windowMillis;
+            boolean isLastWindow = windowStart <= oldestPublishedAt;
+
+            List<RealmQuery<RSSPost>> queries = new ArrayList<>();
+            long matchCount = 0;
+
+            for (RealmResults<RSSPost> source : sources) {
+                RealmQuery<RSSPost> query =
+                        buildSearchQuery(source, windowStart, filterTerms, filterPrefixTerms);
+                queries.add(query);
+                matchCount += query.count();
+            }
+
+            // Post of several sources is counted more than once,
+            // so the window may have fewer distinct matches.
+            if (isLastWindow || matchCount >= maxCount) {
+                List<RealmResults<RSSPost>> sortedResults = new ArrayList<>();
+                for (RealmQuery<RSSPost> query : queries) {
+                    sortedResults.add(query.findAllSorted("mPublishedAt", Sort.DESCENDING));
+                }
+
+                List<RSSPost> matchedPosts = mergeNewest(sortedResults, maxCount);
+
+                if (isLastWindow || matchedPosts.size() >= maxCount) {
+                    return matchedPosts;
+                }
+            }
+
+            windowMillis *= 2;
+        }
+    }
+
+    // Return query of the posts of the source published since windowStart,
+    // that have all filterTerms and any of filterPrefixTerms (if not null)
+    private static RealmQuery<RSSPost> buildSearchQuery(RealmResults<RSSPost> source, long windowStart,
+                                                        List<String> filterTerms,
+                                                        List<String> filterPrefixTerms) {
+
+        RealmQuery<RSSPost> query = source.where()
+                .greaterThanOrEqualTo("mPublishedAt", windowStart);
+
+        // Every condition on the list matches, if any of the linked terms matches
+        for (String term : filterTerms) {
+            query.equalTo("mTerms.mTerm", term);
+        }
+
+        if (filterPrefixTerms != null) {
+            query.beginGroup();
+            for (int i = 0; i < filterPrefixTerms.size(); i++) {
+                if (i > 0) {
+                    query.or();
+                }
+                query.equalTo("mTerms.mTerm", filterPrefixTerms.get(i));
+            }
+            query.endGroup();
+        }
+
+        return query;
+    }
+
+    // Return at most maxCount distinct posts of the results sorted from the latest published,
+    // the latest first. Only the heads of the results are read.
+    private static List<RSSPost> mergeNewest(List<RealmResults<RSSPost>> sortedResults, int maxCount) {
+
+        if (sortedResults.size() == 1) {
+            // Posts of one source are distinct
+            RealmResults<RSSPost> results = sortedResults.get(0);
+            return new ArrayList<>(results.subList(0, Math.min(results.size(), maxCount)));
+        }
+
+        List<RSSPost> mergedPosts = new ArrayList<>();
+
+        // Post can have several terms of the prefix, so it is found in several results
+        Set<String> mergedIds = new HashSet<>();
+
+        int[] positions = new int[sortedResults.size()];
+
+        while (mergedPosts.size() < maxCount) {
+            int newestIndex = -1;
+            long newestPublishedAt = Long.MIN_VALUE;
+
+            for (int i = 0; i < sortedResults.size(); i++) {
+                if (positions[i] < sortedResults.get(i).size()) {
+                    long publishedAt = sortedResults.get(i).get(positions[i]).getPublishedAt();
+                    if (newestIndex < 0 || publishedAt > newestPublishedAt) {
+                        newestIndex = i;
+                        newestPublishedAt = publishedAt;
+                    }
+                }
+            }
+
+            if (newestIndex < 0) {
+                // All results are merged
+                break;
+            }
+
+            RSSPost rssPost = sortedResults.get(newestIndex).get(positions[newestIndex]);
+            positions[newestIndex]++;
+
+            if (mergedIds.add(rssPost.getFeedLink() + '\n' + rssPost.getKey())) {
+                mergedPosts.add(rssPost);
+            }
+        }
+
+        return mergedPosts;
+    }
+
+    // Update feed with new title and posts and return summary of changes.
     // If the feed does not exist, create it.
-    public void updateFeed(String feedLink, String newTitle, List<RSSPost> newPosts) {
+    // Writes in the calling thread.
+    public FeedUpdateSummary updateFeed(String feedLink, String newTitle, List<FeedPost> newPosts) {
+        return updateFeed(feedLink, newTitle, newPosts, null, null, 0);
+    }
 
-        // Get feed with provided link
-        RSSFeed rssFeed = getFeed(feedLink);
+    // Update feed with new title, posts and HTTP validators of the response,
+    // update its refresh schedule and return summary of changes.
+    // If the feed does not exist, create it.
+    // Writes in the calling thread (with Realm instance of that thread).
+    @Override
+    public FeedUpdateSummary updateFeed(String feedLink, String newTitle, List<FeedPost> newPosts,
+                                        String eTag, String lastModified, long refreshHintMillis) {
+
+        Realm realm = openRealm();
+
+        Set<String> otherEvictedFeedLinks = new HashSet<>();
 
-        mRealm.beginTransaction();
+        try {
+            return writeFeed(realm, new FeedUpdate(
+                    feedLink, newTitle, newPosts, eTag, lastModified, refreshHintMillis, null),
+                    otherEvictedFeedLinks);
+        } finally {
+            realm.close();
+            postPostsEvicted(otherEvictedFeedLinks);
+        }
+    }
+
+    // Same as updateFeed(), but the write is performed in the writer thread
+    // together with other updates, that arrive within a short window.
+    // Listener is called in the writer thread after the transaction is committed,
+    // so UI can be notified only when new data is already in storage.
+    @Override
+    public void updateFeedAsync(String feedLink, String newTitle, List<FeedPost> newPosts,
+                                String eTag, String lastModified, long refreshHintMillis,
+                                OnFeedUpdateListener listener) {
+
+        addPendingUpdate(new FeedUpdate(
+                feedLink, newTitle, newPosts, eTag, lastModified, refreshHintMillis, listener));
+    }
+
+    // Refresh schedule of not modified feed is written in the writer thread
+    // together with other updates (no posts are written).
+    @Override
+    public void markFeedNotModifiedAsync(String feedLink, OnFeedUpdateListener listener) {
+        addPendingUpdate(new FeedUpdate(feedLink, FeedUpdate.TYPE_NOT_MODIFIED, 0, listener));
+    }
+
+    // Backoff of failed feed is written in the writer thread
+    // together with other updates (no posts are written).
+    @Override
+    public void markFeedFailedAsync(String feedLink, long retryAfterMillis,
+                                    OnFeedUpdateListener listener) {
+        addPendingUpdate(new FeedUpdate(feedLink, FeedUpdate.TYPE_FAILED, retryAfterMillis, listener));
+    }
+
+    // Mark post with provided key read in the writer thread
+    // together with other updates (unread counter of its feed is decreased in the same transaction).
+    // Listener is called in the writer thread after the transaction is committed.
+    public void markPostReadAsync(String feedLink, String postKey, OnFeedUpdateListener listener) {
+        addPendingUpdate(new FeedUpdate(feedLink, postKey, listener));
+    }
+
+    // Mark all posts of the feed read in the writer thread together with other updates
+    public void markFeedReadAsync(String feedLink, OnFeedUpdateListener listener) {
+        addPendingUpdate(new FeedUpdate(feedLink, null, listener));
+    }
+
+    // Add update to the batch and schedule write of the batch
+    private void addPendingUpdate(FeedUpdate feedUpdate) {
+        synchronized (mPendingUpdates) {
+            mPendingUpdates.add(feedUpdate);
+
+            if (mPendingUpdates.size() >= WRITE_BATCH_MAX_SIZE) {
+                // Batch is full, write it right now
+                mIsWriteScheduled = true;
+                mWriteExecutor.execute(mWritePendingUpdatesTask);
+
+            } else if (!mIsWriteScheduled) {
+                // The first update of the batch, wait for more
+                mIsWriteScheduled = true;
+                mWriteExecutor.schedule(
+                        mWritePendingUpdatesTask, WRITE_BATCH_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    // Write all pending updates in one transaction.
+    // Called only in the writer thread.
+    private void writePendingUpdates() {
+
+        List<FeedUpdate> batch;
+
+        synchronized (mPendingUpdates) {
+            batch = new ArrayList<>(mPendingUpdates);
+            mPendingUpdates.clear();
+            mIsWriteScheduled = false;
+        }
+
+        // Already written by previous task
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        // Nothing can be written, if storage failed to initialize
+        if (mInitError != null) {
+            for (FeedUpdate feedUpdate : batch) {
+                feedUpdate.notifyListener(null);
+            }
+            return;
+        }
+
+        Realm realm = getWriterRealm();
+
+        List<FeedUpdateSummary> summaries = new ArrayList<>();
+        boolean success;
+
+        long startTimeNanos = System.nanoTime();
+
+        // Feeds, that lost posts to the total limit, but have no update in this batch
+        Set<String> otherEvictedFeedLinks = new HashSet<>();
+
+        realm.beginTransaction();
+
+        try {
+            Map<String, FeedUpdateSummary> summariesByFeedLink = new HashMap<>();
+
+            for (FeedUpdate feedUpdate : batch) {
+                FeedUpdateSummary summary = applyFeedUpdate(realm, feedUpdate);
+                summaries.add(summary);
+                summariesByFeedLink.put(UtilsUrl.normalizeFeedLink(feedUpdate.mFeedLink), summary);
+            }
+
+            // Evicted in the same transaction, so that listeners are notified,
+            // when evicted posts are already gone (and are counted in the summaries).
+            evictExcessPosts(realm, summariesByFeedLink, otherEvictedFeedLinks);
+
+            realm.commitTransaction();
+            success = true;
+
+            // All feeds of the batch share the same transaction
+            long transactionNanos = System.nanoTime() - startTimeNanos;
+            for (FeedUpdateSummary summary : summaries) {
+                summary.setTransactionNanos(transactionNanos);
+            }
+
+        } catch (RuntimeException e) {
+            if (realm.isInTransaction()) {
+                realm.cancelTransaction();
+            }
+            success = false;
+        }
+
+        if (success) {
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).notifyListener(summaries.get(i));
+            }
+
+        } else {
+            // One broken update must not fail the others,
+            // so write every update of the failed batch separately
+            // (the total limit is enforced by every write).
+            otherEvictedFeedLinks.clear();
+            for (FeedUpdate feedUpdate : batch) {
+                writeFeedUpdate(realm, feedUpdate, otherEvictedFeedLinks);
+            }
+        }
+
+        // Lists of other feeds must be reloaded too
+        postPostsEvicted(otherEvictedFeedLinks);
+    }
+
+    // Write one update in its own transaction and notify its listener
+    private void writeFeedUpdate(Realm realm, FeedUpdate feedUpdate, Set<String> otherEvictedFeedLinks) {
+
+        FeedUpdateSummary summary;
+
+        try {
+            summary = writeFeed(realm, feedUpdate, otherEvictedFeedLinks);
+        } catch (RuntimeException e) {
+            summary = null;
+        }
+
+        feedUpdate.notifyListener(summary);
+    }
+
+    // Notify UI of the feeds, that lost posts to the total limit, but have no summary of the write
+    private void postPostsEvicted(Set<String> evictedFeedLinks) {
+        if (!evictedFeedLinks.isEmpty() && mEventBus != null) {
+            mEventBus.post(new PostsEvictedEvent(evictedFeedLinks));
+        }
+    }
+
+    // Evict the oldest posts of all feeds, if there are more of them than the total limit.
+    // Posts of the latest documents of their feeds are never evicted
+    // (they would be stored again as new on the next fetch).
+    // Read posts are evicted first, so that posts user has not seen yet are kept longer.
+    // Every evicted post is counted in the summary of its feed, if the feed is in summaries,
+    // otherwise link of its feed is added to otherFeedLinks.
+    // Must be called inside of write transaction in the writer thread.
+    private void evictExcessPosts(Realm realm, Map<String, FeedUpdateSummary> summaries,
+                                  Set<String> otherFeedLinks) {
+
+        // Count of all objects of the class is known without query
+        int excessPostCount =
+                mRetentionPolicy.getExcessPostCount(realm.where(RSSPost.class).count());
+
+        if (0 == excessPostCount) {
+            return;
+        }
+
+        List<RSSPost> evictedPosts = findEvictionCandidates(realm, excessPostCount);
+        if (evictedPosts.size() > excessPostCount) {
+            evictedPosts = evictedPosts.subList(0, excessPostCount);
+        }
+
+        // Deleted posts are removed from the lists of their feeds too
+        for (RSSPost rssPost : evictedPosts) {
+            String feedLink = rssPost.getFeedLink();
+            deletePost(realm, rssPost);
+
+            FeedUpdateSummary summary = summaries.get(feedLink);
+            if (summary != null) {
+                summary.addRemovedPosts(1);
+            } else {
+                otherFeedLinks.add(feedLink);
+            }
+        }
+    }
+
+    // Return at least count posts, that can be evicted by the total limit
+    // (or all of them, if there are fewer), in the order of eviction.
+    // Only the posts stored within a window from the oldest one are sorted:
+    // the window doubles, until it holds enough posts.
+    // So read posts go first among the oldest ones, not among all posts.
+    private static List<RSSPost> findEvictionCandidates(Realm realm, int count) {
+
+        // Range conditions scan the column, but don't sort it
+        Number oldestStoredAt = realm.where(RSSPost.class)
+                .equalTo("mInLatestDocument", false)
+                .min("mStoredAt");
+
+        if (null == oldestStoredAt) {
+            return new ArrayList<>();
+        }
+
+        long now = System.currentTimeMillis();
+        long windowMillis = EVICTION_WINDOW_MILLIS;
+
+        while (true) {
+            long windowEnd = oldestStoredAt.longValue() + windowMillis;
+
+            RealmQuery<RSSPost> query = realm.where(RSSPost.class)
+                    .equalTo("mInLatestDocument", false)
+                    .lessThan("mStoredAt", windowEnd);
+
+            // The last window holds all evictable posts
+            if (windowEnd > now || query.count() >= count) {
+                // Results are live, copy them before posts are deleted
+                return new ArrayList<>(query.findAllSorted(EVICTION_SORT_FIELDS, EVICTION_SORT_ORDERS));
+            }
+
+            windowMillis *= 2;
+        }
+    }
+
+    // Must be called only in the writer thread
+    private Realm getWriterRealm() {
+        if (null == mWriterRealm) {
+            mWriterRealm = Realm.getInstance(mRealmConfiguration);
+        }
+        return mWriterRealm;
+    }
+
+    // Write feed update in one transaction.
+    // Posts over the total limit are evicted in the same transaction,
+    // links of other feeds, that lost posts, are added to otherEvictedFeedLinks after commit.
+    private FeedUpdateSummary writeFeed(Realm realm, FeedUpdate feedUpdate,
+                                        Set<String> otherEvictedFeedLinks) {
+
+        long startTimeNanos = System.nanoTime();
+
+        Set<String> evictedFeedLinks = new HashSet<>();
+
+        realm.beginTransaction();
+
+        try {
+            FeedUpdateSummary summary = applyFeedUpdate(realm, feedUpdate);
+            evictExcessPosts(realm,
+                    Collections.singletonMap(UtilsUrl.normalizeFeedLink(feedUpdate.mFeedLink), summary),
+                    evictedFeedLinks);
+            realm.commitTransaction();
+            otherEvictedFeedLinks.addAll(evictedFeedLinks);
+            summary.setTransactionNanos(System.nanoTime() - startTimeNanos);
+            return summary;
+        } catch (RuntimeException e) {
+            // Do not leave Realm in transaction
+            if (realm.isInTransaction()) {
+                realm.cancelTransaction();
+            }
+            throw e;
+        }
+    }
+
+    // Apply feed update to Realm and return summary of changes.
+    // Must be called inside of write transaction.
+    private FeedUpdateSummary applyFeedUpdate(Realm realm, FeedUpdate feedUpdate) {
+
+        if (FeedUpdate.TYPE_NOT_MODIFIED == feedUpdate.mType) {
+            return applyNotModified(realm, feedUpdate.mFeedLink);
+        }
+
+        if (FeedUpdate.TYPE_FAILED == feedUpdate.mType) {
+            return applyFailed(realm, feedUpdate.mFeedLink, feedUpdate.mRetryAfterMillis);
+        }
+
+        if (FeedUpdate.TYPE_MARK_READ == feedUpdate.mType) {
+            return applyMarkRead(realm, feedUpdate.mFeedLink, feedUpdate.mPostKey);
+        }
+
+        String newTitle = feedUpdate.mTitle;
+        List<FeedPost> newPosts = feedUpdate.mPosts;
+
+        FeedUpdateSummary summary = new FeedUpdateSummary();
+
+        // Feed and its posts are stored with normalized link
+        String feedLink = UtilsUrl.normalizeFeedLink(feedUpdate.mFeedLink);
+
+        // Get feed with provided link
+        RSSFeed rssFeed = findFeed(realm, feedLink);
 
         // If no such feed in storage
         if (null == rssFeed) {
-            // Create it
-            rssFeed = mRealm.createObject(RSSFeed.class);
+            // Create it.
+            // Link is primary key, so the same feed can't be created twice.
+            rssFeed = realm.createObject(RSSFeed.class, feedLink);
             rssFeed.setTitle(newTitle);
-            rssFeed.setLink(feedLink);
-        } else {
+            summary.setFeedChanged();
+        } else if (!isEqual(rssFeed.getTitle(), newTitle)) {
             // Otherwise update its title
             rssFeed.setTitle(newTitle);
+            summary.setFeedChanged();
         }
 
-        // Get list of old posts
+        // Keep validators for the next conditional GET
+        rssFeed.setETag(feedUpdate.mETag);
+        rssFeed.setLastModified(feedUpdate.mLastModified);
+
+        // Get list of stored posts
         RealmList<RSSPost> rssPosts = rssFeed.getRSSPostList();
 
-        // Delete old posts
-        rssPosts.deleteAllFromRealm();
+        // New posts are inserted at the beginning of the list in the order of the feed,
+        // existing posts are updated only if changed, all other posts are left alone
+        // (until they exceed retention limits).
+        long now = System.currentTimeMillis();
+
+        int insertIndex = 0;
+
+        // Keys of the posts in this document
+        Set<String> postKeys = new HashSet<>();
+
+        // Posts of the previous document (results are live, so they are copied)
+        List<RSSPost> previousDocumentPosts = new ArrayList<>(realm.where(RSSPost.class)
+                .equalTo("mFeedLink", feedLink)
+                .equalTo("mInLatestDocument", true)
+                .findAll());
+
+        for (FeedPost newPost : newPosts) {
+            String postKey = PostKey.of(newPost);
+            postKeys.add(postKey);
+
+            // Find stored post with the same identity
+            RSSPost rssPost = findPost(realm, feedLink, postKey);
 
-        // Add new posts
-        for (RSSPost newPost : newPosts) {
-            RSSPost rssPost = mRealm.createObject(RSSPost.class);
-            rssPost.setTitle(newPost.getTitle());
-            rssPost.setDescription(newPost.getDescription());
-            rssPosts.add(rssPost);
+            if (rssPost != null && !rssPost.isInLatestDocument()) {
+                // Post returned to the document
+                rssPost.setInLatestDocument(true);
+            }
+
+            if (null == rssPost) {
+                // Add new post
+                rssPost = realm.createObject(RSSPost.class);
+                rssPost.setFeedLink(feedLink);
+                rssPost.setKey(postKey);
+                rssPost.setStoredAt(now);
+                rssPost.setPublishedAt(getPublishedAt(newPost, now, insertIndex));
+                rssPost.setRead(false);
+                rssPost.setInLatestDocument(true);
+                rssFeed.setUnreadCount(rssFeed.getUnreadCount() + 1);
+                copyPostContent(realm, newPost, rssPost, summary);
+                indexPost(realm, rssPost, newPost);
+                rssPosts.add(insertIndex, rssPost);
+                insertIndex++;
+                summary.addNewPost();
+
+            } else if (!hasSameContent(newPost, rssPost)) {
+                // Update changed post
+                copyPostContent(realm, newPost, rssPost, summary);
+                deleteUnusedTerms(indexPost(realm, rssPost, newPost));
+                summary.addUpdatedPost();
+            }
+        }
+
+        // Posts, that left the document, can be evicted by the total limit
+        for (RSSPost rssPost : previousDocumentPosts) {
+            if (!postKeys.contains(rssPost.getKey())) {
+                rssPost.setInLatestDocument(false);
+            }
         }
 
-        mRealm.commitTransaction();
+        evictPosts(realm, rssPosts, postKeys, now, summary);
+
+        updateRefreshSchedule(rssFeed, summary.getNewPostCount(), feedUpdate.mRefreshHintMillis);
+
+        return summary;
+    }
+
+    // Return publication time of the new post.
+    // Post without date is published when stored (earlier by its index,
+    // so that undated posts of one document keep their order in the timeline).
+    // Dates in the future are not trusted, so such posts don't stay on top of the timeline.
+    private static long getPublishedAt(FeedPost feedPost, long now, int insertIndex) {
+
+        long publishedAt = UtilsDate.parseDate(feedPost.getPubDate());
+
+        if (publishedAt > 0) {
+            return Math.min(publishedAt, now);
+        } else {
+            return now - insertIndex;
+        }
+    }
+
+    // Link post to the search index entries of the terms of its fetched content
+    // (tokenized as it came, stored description is compressed)
+    // and return entries, that the post doesn't have anymore.
+    // Only the list of the post is changed: links of the terms, that the post still has,
+    // are kept, and Realm updates backlinks of the terms.
+    // Must be called inside of write transaction.
+    private static List<RSSTerm> indexPost(Realm realm, RSSPost rssPost, FeedPost feedPost) {
+
+        Set<String> terms = SearchTokenizer.getTerms(feedPost.getTitle(), feedPost.getDescription());
+
+        RealmList<RSSTerm> postTerms = rssPost.getTerms();
+        List<RSSTerm> removedTerms = new ArrayList<>();
+
+        for (int i = postTerms.size() - 1; i >= 0; i--) {
+            RSSTerm rssTerm = postTerms.get(i);
+
+            // Term, that is already linked, is not added again
+            if (!terms.remove(rssTerm.getTerm())) {
+                postTerms.remove(i);
+                removedTerms.add(rssTerm);
+            }
+        }
+
+        for (String term : terms) {
+            RSSTerm rssTerm = findTerm(realm, term);
+
+            if (null == rssTerm) {
+                rssTerm = realm.createObject(RSSTerm.class, term);
+            }
+
+            postTerms.add(rssTerm);
+        }
+
+        return removedTerms;
+    }
+
+    // Find search index entry by term (primary key lookup)
+    private static RSSTerm findTerm(Realm realm, String term) {
+        return realm.where(RSSTerm.class).equalTo("mTerm", term).findFirst();
+    }
+
+    // Delete provided search index entries, if they have no posts left.
+    // Must be called inside of write transaction.
+    private static void deleteUnusedTerms(List<RSSTerm> rssTerms) {
+        for (RSSTerm rssTerm : rssTerms) {
+            if (rssTerm.isValid() && rssTerm.getPosts().isEmpty()) {
+                rssTerm.deleteFromRealm();
+            }
+        }
+    }
+
+    // Delete all search index entries, that have no posts left
+    // (entries of deleted posts are deleted with them, this is for the ones left before that).
+    // Backlinks can't be queried, so every entry is checked.
+    // Called only in the writer thread.
+    private static void deleteUnusedTerms(Realm realm) {
+
+        realm.beginTransaction();
+
+        try {
+            // Results are live, copy them before entries are deleted
+            deleteUnusedTerms(new ArrayList<>(realm.where(RSSTerm.class).findAll()));
+            realm.commitTransaction();
+        } catch (RuntimeException e) {
+            // Unused terms only take space, they will be deleted next time
+            if (realm.isInTransaction()) {
+                realm.cancelTransaction();
+            }
+        }
+    }
+
+    // Evict the oldest posts of the feed, that exceed retention limits,
+    // except the posts of the current document (they would be stored again as new).
+    // Posts are ordered from the newest, so only the tail of the list is read.
+    // Evicted posts are counted in the summary.
+    // Must be called inside of write transaction.
+    private void evictPosts(Realm realm, RealmList<RSSPost> rssPosts, Set<String> postKeys,
+                            long now, FeedUpdateSummary summary) {
+
+        RetentionPolicy retentionPolicy = mRetentionPolicy;
+
+        for (int i = rssPosts.size() - 1; i >= 0; i--) {
+            RSSPost rssPost = rssPosts.get(i);
+
+            if (!retentionPolicy.isEvicted(i, rssPost.getStoredAt(), now)) {
+                // All newer posts are kept too
+                break;
+            }
+
+            if (!postKeys.contains(rssPost.getKey())) {
+                // Deleted post is removed from the list too
+                deletePost(realm, rssPost);
+                summary.addRemovedPosts(1);
+            }
+        }
+    }
+
+    // Delete post together with its body (Realm doesn't delete linked objects)
+    // and search index entries, that are left without posts,
+    // and decrease unread counter of its feed, if the post was not read.
+    // Must be called inside of write transaction.
+    private static void deletePost(Realm realm, RSSPost rssPost) {
+
+        if (!rssPost.isRead()) {
+            RSSFeed rssFeed = findFeed(realm, rssPost.getFeedLink());
+            if (rssFeed != null) {
+                rssFeed.setUnreadCount(Math.max(rssFeed.getUnreadCount() - 1, 0));
+            }
+        }
+
+        // Results are live, copy them before the post is deleted
+        List<RSSTerm> rssTerms = new ArrayList<>(rssPost.getTerms());
+
+        RSSPostBody rssPostBody = rssPost.getBody();
+        rssPost.deleteFromRealm();
+        if (rssPostBody != null) {
+            rssPostBody.deleteFromRealm();
+        }
+
+        // Search index entries of the post must not outlive all their posts
+        deleteUnusedTerms(rssTerms);
+    }
+
+    // Update refresh schedule of the feed, that has not changed since the previous fetch.
+    // Must be called inside of write transaction.
+    private FeedUpdateSummary applyNotModified(Realm realm, String feedLink) {
+
+        RSSFeed rssFeed = findFeed(realm, UtilsUrl.normalizeFeedLink(feedLink));
+
+        // Feed may be deleted while it was fetched
+        if (rssFeed != null) {
+            // Refresh hint of the previous document still applies
+            updateRefreshSchedule(rssFeed, 0, -1);
+        }
+
+        return new FeedUpdateSummary();
+    }
+
+    // Postpone the next fetch of the feed after failed fetch.
+    // Must be called inside of write transaction.
+    private FeedUpdateSummary applyFailed(Realm realm, String feedLink, long retryAfterMillis) {
+
+        RSSFeed rssFeed = findFeed(realm, UtilsUrl.normalizeFeedLink(feedLink));
+
+        // Feed, that failed to be added, is not stored
+        if (rssFeed != null) {
+            RefreshSchedule schedule = getRefreshSchedule(rssFeed);
+            schedule.onFailed(System.currentTimeMillis(), retryAfterMillis);
+            setRefreshSchedule(rssFeed, schedule);
+        }
+
+        return new FeedUpdateSummary();
+    }
+
+    // Mark post with provided key (or all posts of the feed, if key is null) read
+    // and decrease unread counter of the feed.
+    // Must be called inside of write transaction.
+    private FeedUpdateSummary applyMarkRead(Realm realm, String feedLink, String postKey) {
+
+        String normalizedFeedLink = UtilsUrl.normalizeFeedLink(feedLink);
+
+        RSSFeed rssFeed = findFeed(realm, normalizedFeedLink);
+
+        // Feed may be deleted while its post was open
+        if (null == rssFeed) {
+            return new FeedUpdateSummary();
+        }
+
+        if (postKey != null) {
+            RSSPost rssPost = findPost(realm, normalizedFeedLink, postKey);
+
+            // Post may be evicted while it was open
+            if (rssPost != null && !rssPost.isRead()) {
+                rssPost.setRead(true);
+                rssFeed.setUnreadCount(Math.max(rssFeed.getUnreadCount() - 1, 0));
+            }
+        } else {
+            // Read state is indexed, so only unread posts are read
+            RealmResults<RSSPost> unreadPosts = realm.where(RSSPost.class)
+                    .equalTo("mFeedLink", normalizedFeedLink)
+                    .equalTo("mRead", false)
+                    .findAll();
+
+            // Results are live and shrink as posts are marked read, so iterate over a copy
+            for (RSSPost rssPost : new ArrayList<>(unreadPosts)) {
+                rssPost.setRead(true);
+            }
+            rssFeed.setUnreadCount(0);
+        }
+
+        return new FeedUpdateSummary();
+    }
+
+    // Must be called inside of write transaction
+    private static void updateRefreshSchedule(RSSFeed rssFeed, int newPostCount, long refreshHintMillis) {
+        RefreshSchedule schedule = getRefreshSchedule(rssFeed);
+        schedule.onFetched(System.currentTimeMillis(), newPostCount, refreshHintMillis);
+        setRefreshSchedule(rssFeed, schedule);
+    }
+
+    private static RefreshSchedule getRefreshSchedule(RSSFeed rssFeed) {
+        return new RefreshSchedule(
+                rssFeed.getLastFetchedAt(), rssFeed.getLastNewPostAt(),
+                rssFeed.getPostIntervalMillis(), rssFeed.getRefreshHintMillis(),
+                rssFeed.getNextRefreshAt(), rssFeed.getFailureCount());
+    }
+
+    // Must be called inside of write transaction
+    private static void setRefreshSchedule(RSSFeed rssFeed, RefreshSchedule schedule) {
+        rssFeed.setLastFetchedAt(schedule.getLastFetchedAt());
+        rssFeed.setLastNewPostAt(schedule.getLastNewPostAt());
+        rssFeed.setPostIntervalMillis(schedule.getPostIntervalMillis());
+        rssFeed.setRefreshHintMillis(schedule.getRefreshHintMillis());
+        rssFeed.setNextRefreshAt(schedule.getNextRefreshAt());
+        rssFeed.setFailureCount(schedule.getFailureCount());
+    }
+
+    // Copy content of the post and add size of its body to the summary.
+    // Must be called inside of write transaction.
+    private static void copyPostContent(Realm realm, FeedPost from, RSSPost to,
+                                        FeedUpdateSummary summary) {
+        to.setTitle(from.getTitle());
+
+        // Stored post must get its body created in Realm
+        RSSPostBody rssPostBody = to.getBody();
+        if (null == rssPostBody) {
+            rssPostBody = realm.createObject(RSSPostBody.class);
+            to.setBody(rssPostBody);
+        }
+
+        // Description is compressed here
+        rssPostBody.setDescription(from.getDescription());
+        summary.addPostBody(rssPostBody.getRawSize(), rssPostBody.getStoredSize());
+
+        to.setLink(from.getLink());
+        to.setGuid(from.getGuid());
+    }
+
+    private static boolean hasSameContent(FeedPost first, RSSPost second) {
+        return isEqual(first.getTitle(), second.getTitle())
+                && isEqual(first.getLink(), second.getLink())
+                && isEqual(first.getGuid(), second.getGuid())
+                && hasSameDescription(first.getDescription(), second.getBody());
+    }
+
+    // Stored description is decompressed only if its size is the same
+    private static boolean hasSameDescription(String description, RSSPostBody rssPostBody) {
+
+        if (null == rssPostBody) {
+            return null == description;
+        }
+
+        return PostBodyCodec.getRawSize(description) == rssPostBody.getRawSize()
+                && isEqual(description, rssPostBody.getDescription());
+    }
+
+    private static boolean isEqual(String first, String second) {
+        return first == null ? second == null : first.equals(second);
+    }
+
+    // Feed update waiting to be written in the writer thread
+    private static class FeedUpdate {
+
+        // Feed was fetched and its title and posts are written
+        static final int TYPE_UPDATE = 0;
+
+        // Feed has not changed, only its refresh schedule is updated
+        static final int TYPE_NOT_MODIFIED = 1;
+
+        // Feed failed, only its backoff is written
+        static final int TYPE_FAILED = 2;
+
+        // Post (or all posts of the feed, if post key is null) is marked read
+        static final int TYPE_MARK_READ = 3;
+
+        private final int mType;
+        private final String mFeedLink;
+        private final String mTitle;
+        private final List<FeedPost> mPosts;
+        private final String mETag;
+        private final String mLastModified;
+        private final long mRefreshHintMillis;
+        private final OnFeedUpdateListener mListener;
+
+        // Delay requested by server of the failed feed
+        private final long mRetryAfterMillis;
+
+        // Key of the post marked read
+        private final String mPostKey;
+
+        FeedUpdate(String feedLink, String title, List<FeedPost> posts,
+                   String eTag, String lastModified, long refreshHintMillis,
+                   OnFeedUpdateListener listener) {
+            mType = TYPE_UPDATE;
+            mFeedLink = feedLink;
+            mTitle = title;
+            mPosts = posts;
+            mETag = eTag;
+            mLastModified = lastModified;
+            mRefreshHintMillis = refreshHintMillis;
+            mListener = listener;
+            mRetryAfterMillis = 0;
+            mPostKey = null;
+        }
+
+        // Update of refresh schedule only (not modified or failed feed)
+        FeedUpdate(String feedLink, int type, long retryAfterMillis, OnFeedUpdateListener listener) {
+            mType = type;
+            mFeedLink = feedLink;
+            mTitle = null;
+            mPosts = null;
+            mETag = null;
+            mLastModified = null;
+            mRefreshHintMillis = -1;
+            mListener = listener;
+            mRetryAfterMillis = retryAfterMillis;
+            mPostKey = null;
+        }
+
+        // Read state of the post or of all posts of the feed
+        FeedUpdate(String feedLink, String postKey, OnFeedUpdateListener listener) {
+            mType = TYPE_MARK_READ;
+            mFeedLink = feedLink;
+            mTitle = null;
+            mPosts = null;
+            mETag = null;
+            mLastModified = null;
+            mRefreshHintMillis = -1;
+            mListener = listener;
+            mRetryAfterMillis = 0;
+            mPostKey = postKey;
+        }
+
+        void notifyListener(FeedUpdateSummary summary) {
+            if (mListener != null) {
+                mListener.onFeedUpdated(mFeedLink, summary);
+            }
+        }
     }
 
     @Override
@@ -144,7 +1618,7 @@ public class DataStorage {
 
         if (mRealm != null) {
             // All Realm instances must be closed.
-            // We have 1 instance, which is opened in constructor, and we close it here.
+            // We have 1 main thread instance, which is opened on first use, and we close it here.
             mRealm.close();
         }
     }
@@ -3,15 +3,42 @@ package com.gpetuhov.android.rssreader.data;
 
 import io.realm.RealmList;
 import io.realm.RealmObject;
+import io.realm.annotations.Index;
+import io.realm.annotations.PrimaryKey;
 
 public class RSSFeed extends RealmObject {
 
     private String mTitle;
 
+    // Normalized link of the feed (see UtilsUrl.normalizeFeedLink()).
+    // Primary key guarantees, that every feed is stored only once
+    // and makes lookup by link indexed.
+    @PrimaryKey
     private String mLink;
 
     private RealmList<RSSPost> mRSSPostList;
 
+    // HTTP validators of the last fetched response (sent back in conditional GET)
+    private String mETag;
+    private String mLastModified;
+
+    // Refresh schedule of the feed (see RefreshSchedule).
+    // Time of the next refresh is indexed, because due feeds are queried by it.
+    private long mLastFetchedAt;
+    private long mLastNewPostAt;
+    private long mPostIntervalMillis;
+    private long mRefreshHintMillis;
+    @Index
+    private long mNextRefreshAt;
+
+    // Number of failed fetches since the last successful one
+    private int mFailureCount;
+
+    // Number of unread posts of the feed.
+    // Updated by DataStorage in the same transaction as posts are added, deleted or read,
+    // so that the feed list never counts posts.
+    private int mUnreadCount;
+
     public String getTitle() {
         return mTitle;
     }
@@ -35,4 +62,76 @@ public class RSSFeed extends RealmObject {
     public void setRSSPostList(RealmList<RSSPost> RSSPostList) {
         mRSSPostList = RSSPostList;
     }
+
+    public String getETag() {
+        return mETag;
+    }
+
+    public void setETag(String eTag) {
+        mETag = eTag;
+    }
+
+    public String getLastModified() {
+        return mLastModified;
+    }
+
+    public void setLastModified(String lastModified) {
+        mLastModified = lastModified;
+    }
+
+    public long getLastFetchedAt() {
+        return mLastFetchedAt;
+    }
+
+    public void setLastFetchedAt(long lastFetchedAt) {
+        mLastFetchedAt = lastFetchedAt;
+    }
+
+    public long getLastNewPostAt() {
+        return mLastNewPostAt;
+    }
+
+    public void setLastNewPostAt(long lastNewPostAt) {
+        mLastNewPostAt = lastNewPostAt;
+    }
+
+    public long getPostIntervalMillis() {
+        return mPostIntervalMillis;
+    }
+
+    public void setPostIntervalMillis(long postIntervalMillis) {
+        mPostIntervalMillis = postIntervalMillis;
+    }
+
+    public long getRefreshHintMillis() {
+        return mRefreshHintMillis;
+    }
+
+    public void setRefreshHintMillis(long refreshHintMillis) {
+        mRefreshHintMillis = refreshHintMillis;
+    }
+
+    public long getNextRefreshAt() {
+        return mNextRefreshAt;
+    }
+
+    public void setNextRefreshAt(long nextRefreshAt) {
+        mNextRefreshAt = nextRefreshAt;
+    }
+
+    public int getFailureCount() {
+        return mFailureCount;
+    }
+
+    public void setFailureCount(int failureCount) {
+        mFailureCount = failureCount;
+    }
+
+    public int getUnreadCount() {
+        return mUnreadCount;
+    }
+
+    public void setUnreadCount(int unreadCount) {
+        mUnreadCount = unreadCount;
+    }
 }
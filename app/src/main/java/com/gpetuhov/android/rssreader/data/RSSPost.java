@@ -1,12 +1,53 @@
 package com.gpetuhov.android.rssreader.data;
 
 
+import io.realm.RealmList;
 import io.realm.RealmObject;
+import io.realm.annotations.Index;
 
 public class RSSPost extends RealmObject {
 
     private String mTitle;
-    private String mDescription;
+
+    // Description is kept in separate object and read only when needed.
+    // Copies of posts for lists are made without it.
+    private RSSPostBody mBody;
+
+    // Link to the post and its unique identifier in the feed (RSS guid or Atom id)
+    private String mLink;
+    private String mGuid;
+
+    // Link of the feed this post belongs to and identity of the post in that feed
+    // (see PostKey). Together they are used to find existing post on feed update.
+    @Index
+    private String mFeedLink;
+    @Index
+    private String mKey;
+
+    // Time when the post was stored (see RetentionPolicy).
+    // Indexed, because the oldest posts of all feeds are evicted first.
+    @Index
+    private long mStoredAt;
+
+    // Time when the post was published (time of storing, if the feed has no date).
+    // Indexed, because the timeline of all feeds is ordered by it.
+    @Index
+    private long mPublishedAt;
+
+    // True if user has opened the post (see RSSFeed.mUnreadCount).
+    // Indexed, because unread posts of the feed are queried, when the feed is marked read.
+    @Index
+    private boolean mRead;
+
+    // True if the post is in the latest fetched document of its feed.
+    // Such posts are never evicted by the total limit (see DataStorage.evictExcessPosts()).
+    // Indexed, because only the posts, that left their documents, are queried for eviction.
+    @Index
+    private boolean mInLatestDocument;
+
+    // Search index entries, that contain the post (see RSSTerm).
+    // Terms of the post are found without decompressing its description.
+    private RealmList<RSSTerm> mTerms;
 
     public String getTitle() {
         return mTitle;
@@ -16,11 +57,93 @@ public class RSSPost extends RealmObject {
         mTitle = title;
     }
 
+    public RSSPostBody getBody() {
+        return mBody;
+    }
+
+    public void setBody(RSSPostBody body) {
+        mBody = body;
+    }
+
+    // Return description from the body of the post (null if the body is not loaded)
     public String getDescription() {
-        return mDescription;
+        return mBody != null ? mBody.getDescription() : null;
     }
 
+    // Set description of the post, that is not stored in Realm yet
+    // (stored post must get its body created in Realm, see DataStorage).
     public void setDescription(String description) {
-        mDescription = description;
+        if (null == mBody) {
+            mBody = new RSSPostBody();
+        }
+        mBody.setDescription(description);
+    }
+
+    public String getLink() {
+        return mLink;
+    }
+
+    public void setLink(String link) {
+        mLink = link;
+    }
+
+    public String getGuid() {
+        return mGuid;
+    }
+
+    public void setGuid(String guid) {
+        mGuid = guid;
+    }
+
+    public String getFeedLink() {
+        return mFeedLink;
+    }
+
+    public void setFeedLink(String feedLink) {
+        mFeedLink = feedLink;
+    }
+
+    public String getKey() {
+        return mKey;
+    }
+
+    public void setKey(String key) {
+        mKey = key;
+    }
+
+    public long getStoredAt() {
+        return mStoredAt;
+    }
+
+    public void setStoredAt(long storedAt) {
+        mStoredAt = storedAt;
+    }
+
+    public long getPublishedAt() {
+        return mPublishedAt;
+    }
+
+    public void setPublishedAt(long publishedAt) {
+        mPublishedAt = publishedAt;
+    }
+
+    public boolean isRead() {
+        return mRead;
+    }
+
+    public void setRead(boolean read) {
+        mRead = read;
+    }
+
+    public RealmList<RSSTerm> getTerms() {
+        return mTerms;
+    }
+
+    public boolean isInLatestDocument() {
+        return mInLatestDocument;
+    }
+
+    public void setInLatestDocument(boolean inLatestDocument) {
+        mInLatestDocument = inLatestDocument;
     }
 }
@@ -0,0 +1,42 @@
+package com.gpetuhov.android.rssreader.data;
+
+
+import com.gpetuhov.android.rssreader.core.data.PostBodyCodec;
+
+import io.realm.RealmObject;
+
+// Body of the post (HTML description), stored separately from RSSPost,
+// so that lists of posts don't read and copy large bodies.
+// Read only when the post is opened (see DataStorage.getPostDescription()).
+// Description is stored compressed (see PostBodyCodec)
+// together with its size before and after compression.
+// Deleted together with its post.
+public class RSSPostBody extends RealmObject {
+
+    // Encoded description
+    private byte[] mData;
+
+    // Size of the description in UTF-8 and size of the encoded description
+    private int mRawSize;
+    private int mStoredSize;
+
+    // Decode description (null if there is no description)
+    public String getDescription() {
+        return PostBodyCodec.decode(mData);
+    }
+
+    // Encode description and record its sizes
+    public void setDescription(String description) {
+        mData = PostBodyCodec.encode(description);
+        mRawSize = PostBodyCodec.getRawSize(description);
+        mStoredSize = mData != null ? mData.length : 0;
+    }
+
+    public int getRawSize() {
+        return mRawSize;
+    }
+
+    public int getStoredSize() {
+        return mStoredSize;
+    }
+}
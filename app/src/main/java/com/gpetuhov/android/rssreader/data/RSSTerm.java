@@ -0,0 +1,31 @@
+package com.gpetuhov.android.rssreader.data;
+
+
+import io.realm.RealmObject;
+import io.realm.RealmResults;
+import io.realm.annotations.LinkingObjects;
+import io.realm.annotations.PrimaryKey;
+
+// Entry of the full-text search index: term and posts, that contain it
+// in their title or description (see SearchTokenizer).
+// Links are stored in the posts (RSSPost.mTerms), so changed post is unindexed by its own list,
+// and posts of the term are backlinks maintained by Realm.
+// Terms left without posts are deleted together with the last post.
+public class RSSTerm extends RealmObject {
+
+    // Primary key makes lookup of the term indexed
+    @PrimaryKey
+    private String mTerm;
+
+    // Computed by Realm from RSSPost.mTerms (not stored)
+    @LinkingObjects("mTerms")
+    private final RealmResults<RSSPost> mPosts = null;
+
+    public String getTerm() {
+        return mTerm;
+    }
+
+    public RealmResults<RSSPost> getPosts() {
+        return mPosts;
+    }
+}
@@ -0,0 +1,42 @@
+package com.gpetuhov.android.rssreader.data;
+
+
+// Position in the timeline of all feeds, where the next page starts
+// (see DataStorage.getTimelinePage()).
+// Timeline is ordered by publication time from the newest,
+// posts published at the same time are ordered by their identity (feed link and key).
+// Cursor keeps all three of the last returned post, so the next page starts
+// right after it without counting or skipping returned posts.
+public class TimelineCursor {
+
+    // Cursor of the first page
+    public static final TimelineCursor START = new TimelineCursor(Long.MAX_VALUE, null, null);
+
+    // Publication time and identity of the last returned post
+    private final long mPublishedAt;
+    private final String mFeedLink;
+    private final String mKey;
+
+    public TimelineCursor(long publishedAt, String feedLink, String key) {
+        mPublishedAt = publishedAt;
+        mFeedLink = feedLink;
+        mKey = key;
+    }
+
+    public long getPublishedAt() {
+        return mPublishedAt;
+    }
+
+    public String getFeedLink() {
+        return mFeedLink;
+    }
+
+    public String getKey() {
+        return mKey;
+    }
+
+    // True if this is the cursor of the first page
+    public boolean isStart() {
+        return null == mFeedLink;
+    }
+}
@@ -0,0 +1,31 @@
+package com.gpetuhov.android.rssreader.data;
+
+
+import java.util.List;
+
+// Page of the timeline of all feeds (see DataStorage.getTimelinePage())
+public class TimelinePage {
+
+    // Copies of the posts (without bodies) detached from Realm, the newest first
+    private final List<RSSPost> mPosts;
+
+    // Cursor of the next page (null if this page is the last one)
+    private final TimelineCursor mNextCursor;
+
+    public TimelinePage(List<RSSPost> posts, TimelineCursor nextCursor) {
+        mPosts = posts;
+        mNextCursor = nextCursor;
+    }
+
+    public List<RSSPost> getPosts() {
+        return mPosts;
+    }
+
+    public TimelineCursor getNextCursor() {
+        return mNextCursor;
+    }
+
+    public boolean hasNextPage() {
+        return mNextCursor != null;
+    }
+}
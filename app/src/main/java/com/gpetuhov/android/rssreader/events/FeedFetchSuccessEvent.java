@@ -1,5 +0,0 @@
-package com.gpetuhov.android.rssreader.events;
-
-// Signals of successfully fetched feed
-public class FeedFetchSuccessEvent {
-}
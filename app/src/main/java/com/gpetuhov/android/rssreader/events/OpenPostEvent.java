@@ -1,22 +1,29 @@
 package com.gpetuhov.android.rssreader.events;
 
 
-// Delivers post title and description to PostFragment
+// Delivers post identity and title to PostFragment
+// (description is read from DataStorage, when the post is opened)
 public class OpenPostEvent {
 
+    private String mFeedLink;
+    private String mPostKey;
     private String mPostTitle;
-    private String mPostDescription;
 
-    public OpenPostEvent(String postTitle, String postDescription) {
+    public OpenPostEvent(String feedLink, String postKey, String postTitle) {
+        mFeedLink = feedLink;
+        mPostKey = postKey;
         mPostTitle = postTitle;
-        mPostDescription = postDescription;
     }
 
-    public String getPostTitle() {
-        return mPostTitle;
+    public String getFeedLink() {
+        return mFeedLink;
+    }
+
+    public String getPostKey() {
+        return mPostKey;
     }
 
-    public String getPostDescription() {
-        return mPostDescription;
+    public String getPostTitle() {
+        return mPostTitle;
     }
 }
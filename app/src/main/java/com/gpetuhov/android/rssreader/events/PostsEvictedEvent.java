@@ -0,0 +1,20 @@
+package com.gpetuhov.android.rssreader.events;
+
+
+import java.util.Set;
+
+// Signals that posts of the feeds were evicted by the total limit of stored posts
+// while other feeds were updated (updated feeds report it in their FeedFetchSuccessEvent).
+public class PostsEvictedEvent {
+
+    private Set<String> mFeedLinks;
+
+    public PostsEvictedEvent(Set<String> feedLinks) {
+        mFeedLinks = feedLinks;
+    }
+
+    // Normalized links of the feeds, that lost posts
+    public Set<String> getFeedLinks() {
+        return mFeedLinks;
+    }
+}
@@ -0,0 +1,7 @@
+package com.gpetuhov.android.rssreader.events;
+
+
+// Signals that DataStorage is initialized and its data can be displayed.
+// Posted as sticky event, so that fragments started later receive it too.
+public class StorageReadyEvent {
+}
@@ -0,0 +1,17 @@
+package com.gpetuhov.android.rssreader.parser;
+
+
+import android.util.Xml;
+
+import com.gpetuhov.android.rssreader.core.parser.XmlParserFactory;
+
+import org.xmlpull.v1.XmlPullParser;
+
+// Creates XML pull parsers provided by Android (ExpatPullParser)
+public class AndroidXmlParserFactory implements XmlParserFactory {
+
+    @Override
+    public XmlPullParser newPullParser() {
+        return Xml.newPullParser();
+    }
+}
@@ -0,0 +1,26 @@
+package com.gpetuhov.android.rssreader.sync;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+import com.gpetuhov.android.rssreader.RSSReaderApp;
+
+import javax.inject.Inject;
+
+// Schedules background sync again after reboot
+// (alarms are cleared on reboot, persisted jobs are restored by the system).
+public class BootReceiver extends BroadcastReceiver {
+
+    // Dependencies injected by Dagger
+    @Inject FeedSyncScheduler mFeedSyncScheduler;
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+
+        // Inject dependencies
+        RSSReaderApp.getAppComponent().inject(this);
+
+        mFeedSyncScheduler.schedule();
+    }
+}
@@ -0,0 +1,14 @@
+package com.gpetuhov.android.rssreader.sync;
+
+import android.content.Context;
+import android.content.Intent;
+import android.support.v4.content.WakefulBroadcastReceiver;
+
+// Receives periodic sync alarm (API 16 - 20) and starts FeedSyncService.
+// Device is kept awake until the service finishes.
+public class FeedSyncAlarmReceiver extends WakefulBroadcastReceiver {
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        startWakefulService(context, new Intent(context, FeedSyncService.class));
+    }
+}
@@ -0,0 +1,66 @@
+package com.gpetuhov.android.rssreader.sync;
+
+import android.annotation.TargetApi;
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.os.Build;
+
+import com.gpetuhov.android.rssreader.RSSReaderApp;
+import com.gpetuhov.android.rssreader.core.FeedRefresher;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import javax.inject.Inject;
+
+// Runs periodic background sync scheduled with JobScheduler (API 21+).
+// Refreshes all feeds, that are not fresh, in one batch.
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class FeedSyncJobService extends JobService {
+
+    // Starts refresh off the main thread, because selecting due feeds
+    // waits for storage to open and reads it.
+    private static final Executor sStartExecutor = Executors.newSingleThreadExecutor();
+
+    // Dependencies injected by Dagger
+    @Inject FeedRefresher mFeedRefresher;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        // Inject dependencies
+        RSSReaderApp.getAppComponent().inject(this);
+    }
+
+    // Called in the main thread
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+
+        sStartExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Feeds, that user has just refreshed, are skipped.
+                // If user is refreshing all feeds right now, the job waits for that refresh.
+                mFeedRefresher.refreshAll(false, new FeedRefresher.OnRefreshFinishedListener() {
+                    @Override
+                    public void onRefreshFinished(int totalCount, int failedCount) {
+                        // Failed feeds are retried by the next periodic run
+                        jobFinished(params, false);
+                    }
+                });
+            }
+        });
+
+        // Job is finished in background
+        return true;
+    }
+
+    // Called if constraints are not satisfied anymore (for example, Wi-Fi is lost).
+    // Running requests are not cancelled, they are limited by timeouts of the client.
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // Periodic job runs again at the next interval anyway
+        return false;
+    }
+}
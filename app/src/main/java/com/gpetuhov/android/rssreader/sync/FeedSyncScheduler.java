@@ -0,0 +1,170 @@
+package com.gpetuhov.android.rssreader.sync;
+
+import android.annotation.TargetApi;
+import android.app.AlarmManager;
+import android.app.Application;
+import android.app.PendingIntent;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.SystemClock;
+
+import com.gpetuhov.android.rssreader.utils.UtilsNet;
+import com.gpetuhov.android.rssreader.utils.UtilsPrefs;
+
+// Schedules periodic background sync of all feeds.
+// One job refreshes all due feeds at once, so the radio wakes up once per sync, not once per feed.
+// On API 21+ JobScheduler runs FeedSyncJobService, when network (unmetered, if required)
+// is available and device is charging (if required). On API 24+ job gets flex window,
+// so the system can run it together with jobs of other apps.
+// On older devices inexact repeating alarm starts FeedSyncService
+// (the system shifts inexact alarms of all apps to fire together),
+// and constraints are checked when the alarm fires.
+public class FeedSyncScheduler {
+
+    // Every sync fetches only feeds due according to their refresh schedules,
+    // so it runs as often as the shortest refresh interval (see RefreshSchedule).
+    public static final long SYNC_INTERVAL_MILLIS = AlarmManager.INTERVAL_HALF_HOUR;
+
+    // Job may run anywhere in the last part of the interval of this length
+    public static final long SYNC_FLEX_MILLIS = 10 * 60 * 1000;
+
+    private static final int SYNC_JOB_ID = 1;
+
+    private Application mApplication;
+    private UtilsPrefs mUtilsPrefs;
+
+    public FeedSyncScheduler(Application application, UtilsPrefs utilsPrefs) {
+        mApplication = application;
+        mUtilsPrefs = utilsPrefs;
+    }
+
+    // Schedule sync, if it is not scheduled yet.
+    // Existing schedule is kept, so that calling this on every app start doesn't postpone sync.
+    public void schedule() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            if (!isJobScheduled()) {
+                scheduleJob();
+            }
+        } else {
+            if (null == getAlarmIntent(PendingIntent.FLAG_NO_CREATE)) {
+                scheduleAlarm();
+            }
+        }
+    }
+
+    // Schedule sync again after constraints were changed
+    public void reschedule() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            scheduleJob();
+        }
+        // Alarm checks constraints every time it fires, so it needs no changes
+    }
+
+    // Return true if sync can run now (used when alarm fires, JobScheduler checks this itself)
+    public boolean areConstraintsSatisfied() {
+
+        if (!UtilsNet.isNetworkAvailableAndConnected(mApplication)) {
+            return false;
+        }
+
+        if (mUtilsPrefs.isSyncUnmeteredOnly()) {
+            ConnectivityManager connectivityManager = (ConnectivityManager)
+                    mApplication.getSystemService(Context.CONNECTIVITY_SERVICE);
+
+            if (connectivityManager.isActiveNetworkMetered()) {
+                return false;
+            }
+        }
+
+        if (mUtilsPrefs.isSyncChargingOnly()) {
+            // Battery status is sticky broadcast, so it is returned without receiver
+            Intent batteryStatus = mApplication.registerReceiver(
+                    null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+
+            int plugged = batteryStatus != null
+                    ? batteryStatus.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0)
+                    : 0;
+
+            if (0 == plugged) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // === JOBSCHEDULER (API 21+) =====
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private void scheduleJob() {
+
+        JobInfo.Builder builder = new JobInfo.Builder(
+                SYNC_JOB_ID, new ComponentName(mApplication, FeedSyncJobService.class))
+                .setRequiredNetworkType(getRequiredNetworkType())
+                .setRequiresCharging(mUtilsPrefs.isSyncChargingOnly())
+                .setPersisted(true);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            builder.setPeriodic(SYNC_INTERVAL_MILLIS, SYNC_FLEX_MILLIS);
+        } else {
+            builder.setPeriodic(SYNC_INTERVAL_MILLIS);
+        }
+
+        // Job with the same ID replaces the previous one
+        getJobScheduler().schedule(builder.build());
+    }
+
+    // Return true if sync job with current constraints is already scheduled
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private boolean isJobScheduled() {
+
+        for (JobInfo jobInfo : getJobScheduler().getAllPendingJobs()) {
+            if (jobInfo.getId() == SYNC_JOB_ID) {
+                return jobInfo.getNetworkType() == getRequiredNetworkType()
+                        && jobInfo.isRequireCharging() == mUtilsPrefs.isSyncChargingOnly()
+                        && jobInfo.getIntervalMillis() == SYNC_INTERVAL_MILLIS;
+            }
+        }
+
+        return false;
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private int getRequiredNetworkType() {
+        return mUtilsPrefs.isSyncUnmeteredOnly()
+                ? JobInfo.NETWORK_TYPE_UNMETERED
+                : JobInfo.NETWORK_TYPE_ANY;
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private JobScheduler getJobScheduler() {
+        return (JobScheduler) mApplication.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+    }
+
+    // === ALARMMANAGER (API 16 - 20) =====
+
+    private void scheduleAlarm() {
+
+        AlarmManager alarmManager =
+                (AlarmManager) mApplication.getSystemService(Context.ALARM_SERVICE);
+
+        alarmManager.setInexactRepeating(
+                AlarmManager.ELAPSED_REALTIME_WAKEUP,
+                SystemClock.elapsedRealtime() + SYNC_INTERVAL_MILLIS,
+                SYNC_INTERVAL_MILLIS,
+                getAlarmIntent(PendingIntent.FLAG_UPDATE_CURRENT));
+    }
+
+    // Return PendingIntent of the alarm (with FLAG_NO_CREATE returns null, if alarm is not set)
+    private PendingIntent getAlarmIntent(int flags) {
+        Intent intent = new Intent(mApplication, FeedSyncAlarmReceiver.class);
+        return PendingIntent.getBroadcast(mApplication, 0, intent, flags);
+    }
+}
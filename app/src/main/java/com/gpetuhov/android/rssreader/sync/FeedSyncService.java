@@ -0,0 +1,72 @@
+package com.gpetuhov.android.rssreader.sync;
+
+import android.app.IntentService;
+import android.content.Intent;
+
+import com.gpetuhov.android.rssreader.RSSReaderApp;
+import com.gpetuhov.android.rssreader.core.FeedRefresher;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+// Runs periodic background sync on API 16 - 20 (started by FeedSyncAlarmReceiver).
+// Refreshes all feeds, that are not fresh, in one batch,
+// if constraints chosen by user are satisfied.
+public class FeedSyncService extends IntentService {
+
+    private static final String TAG = FeedSyncService.class.getSimpleName();
+
+    // Sync is abandoned, if it takes longer than this (wake lock must not be held forever)
+    private static final long SYNC_TIMEOUT_MINUTES = 5;
+
+    // Dependencies injected by Dagger
+    @Inject FeedRefresher mFeedRefresher;
+    @Inject FeedSyncScheduler mFeedSyncScheduler;
+
+    public FeedSyncService() {
+        super(TAG);
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        // Inject dependencies
+        RSSReaderApp.getAppComponent().inject(this);
+    }
+
+    // Called in background thread of IntentService
+    @Override
+    protected void onHandleIntent(Intent intent) {
+
+        try {
+            if (mFeedSyncScheduler.areConstraintsSatisfied()) {
+                refreshAll();
+            }
+        } finally {
+            // Release wake lock acquired by FeedSyncAlarmReceiver
+            FeedSyncAlarmReceiver.completeWakefulIntent(intent);
+        }
+    }
+
+    // Refresh all feeds and wait until refresh is finished
+    private void refreshAll() {
+
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        mFeedRefresher.refreshAll(false, new FeedRefresher.OnRefreshFinishedListener() {
+            @Override
+            public void onRefreshFinished(int totalCount, int failedCount) {
+                latch.countDown();
+            }
+        });
+
+        try {
+            latch.await(SYNC_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
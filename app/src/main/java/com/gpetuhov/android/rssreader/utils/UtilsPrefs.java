@@ -2,12 +2,26 @@ package com.gpetuhov.android.rssreader.utils;
 
 import android.content.SharedPreferences;
 
+import com.gpetuhov.android.rssreader.core.data.RetentionPolicy;
+
 // Utilities for SharedPreferences
 public class UtilsPrefs {
 
     // Key for first run flag in SharedPreferences
     private static final String PREF_KEY_FIRST_RUN = "first_run_flag";
 
+    // Keys for background sync constraints
+    private static final String PREF_KEY_SYNC_UNMETERED_ONLY = "sync_unmetered_only";
+    private static final String PREF_KEY_SYNC_CHARGING_ONLY = "sync_charging_only";
+
+    // Keys for limits of stored posts
+    private static final String PREF_KEY_RETENTION_MAX_POSTS_PER_FEED = "retention_max_posts_per_feed";
+    private static final String PREF_KEY_RETENTION_MAX_POST_AGE = "retention_max_post_age";
+    private static final String PREF_KEY_RETENTION_MAX_TOTAL_POSTS = "retention_max_total_posts";
+
+    // Key for time of the last compaction of the storage file
+    private static final String PREF_KEY_LAST_COMPACTED_AT = "last_compacted_at";
+
     private SharedPreferences mSharedPreferences;
 
     public UtilsPrefs(SharedPreferences sharedPreferences) {
@@ -30,6 +44,56 @@ public class UtilsPrefs {
         putBooleanToSharedPreferences(PREF_KEY_FIRST_RUN, value);
     }
 
+    // Return true if background sync must run only on unmetered network (Wi-Fi)
+    public boolean isSyncUnmeteredOnly() {
+        return getBooleanFromSharedPreferences(PREF_KEY_SYNC_UNMETERED_ONLY, false);
+    }
+
+    public void setSyncUnmeteredOnly(boolean value) {
+        putBooleanToSharedPreferences(PREF_KEY_SYNC_UNMETERED_ONLY, value);
+    }
+
+    // Return true if background sync must run only while device is charging
+    public boolean isSyncChargingOnly() {
+        return getBooleanFromSharedPreferences(PREF_KEY_SYNC_CHARGING_ONLY, false);
+    }
+
+    public void setSyncChargingOnly(boolean value) {
+        putBooleanToSharedPreferences(PREF_KEY_SYNC_CHARGING_ONLY, value);
+    }
+
+    // Return limits of stored posts (defaults, if not set)
+    public RetentionPolicy getRetentionPolicy() {
+        return new RetentionPolicy(
+                mSharedPreferences.getInt(PREF_KEY_RETENTION_MAX_POSTS_PER_FEED,
+                        RetentionPolicy.DEFAULT_MAX_POSTS_PER_FEED),
+                mSharedPreferences.getLong(PREF_KEY_RETENTION_MAX_POST_AGE,
+                        RetentionPolicy.DEFAULT_MAX_POST_AGE_MILLIS),
+                mSharedPreferences.getInt(PREF_KEY_RETENTION_MAX_TOTAL_POSTS,
+                        RetentionPolicy.DEFAULT_MAX_TOTAL_POSTS));
+    }
+
+    public void setRetentionPolicy(RetentionPolicy retentionPolicy) {
+        mSharedPreferences
+                .edit()
+                .putInt(PREF_KEY_RETENTION_MAX_POSTS_PER_FEED, retentionPolicy.getMaxPostsPerFeed())
+                .putLong(PREF_KEY_RETENTION_MAX_POST_AGE, retentionPolicy.getMaxPostAgeMillis())
+                .putInt(PREF_KEY_RETENTION_MAX_TOTAL_POSTS, retentionPolicy.getMaxTotalPosts())
+                .apply();
+    }
+
+    // Return time of the last compaction of the storage file (0 if never)
+    public long getLastCompactedAt() {
+        return mSharedPreferences.getLong(PREF_KEY_LAST_COMPACTED_AT, 0);
+    }
+
+    public void setLastCompactedAt(long lastCompactedAt) {
+        mSharedPreferences
+                .edit()
+                .putLong(PREF_KEY_LAST_COMPACTED_AT, lastCompactedAt)
+                .apply();
+    }
+
     private boolean getBooleanFromSharedPreferences(String key, boolean defValue) {
         return mSharedPreferences.getBoolean(key, defValue);
     }
@@ -0,0 +1,211 @@
+package com.gpetuhov.android.rssreader.benchmark;
+
+
+import java.io.UnsupportedEncodingException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+// Generates RSS 2.0 and Atom documents shaped like real blog and news feeds:
+// namespaces, permalink guids, authors, categories
+// and HTML descriptions of different length (escaped or in CDATA).
+// The same format and items always give the same document.
+public class FeedCorpus {
+
+    public enum Format {
+        RSS, ATOM
+    }
+
+    // Publication time of the item number 0 and interval between items
+    private static final long FIRST_ITEM_TIME_MILLIS = 1490094000000L;
+    private static final long ITEM_INTERVAL_MILLIS = 37 * 60 * 1000;
+
+    private static final String[] WORDS = {
+            "android", "realm", "parser", "feed", "network", "cache", "thread", "storage",
+            "performance", "memory", "update", "release", "kotlin", "java", "library", "layout",
+            "habrahabr", "article", "review", "benchmark", "server", "client", "design", "mobile"
+    };
+
+    private static final String[] CATEGORIES = {
+            "Android", "Java", "Programming", "Mobile development", "Open source"
+    };
+
+    private FeedCorpus() {
+    }
+
+    // Return UTF-8 bytes of the document with provided format and number of items
+    public static byte[] generate(Format format, int itemCount) {
+        return generate(format, itemCount, itemCount);
+    }
+
+    // Return UTF-8 bytes of the document with items numbered from newestItem down.
+    // Increasing newestItem by one adds one new item at the top of the feed
+    // and drops the oldest one, like in the next version of the real feed.
+    public static byte[] generate(Format format, int itemCount, int newestItem) {
+
+        String document = format == Format.ATOM
+                ? generateAtom(itemCount, newestItem)
+                : generateRss(itemCount, newestItem);
+
+        try {
+            return document.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String generateRss(int itemCount, int newestItem) {
+
+        SimpleDateFormat dateFormat = createDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'");
+
+        StringBuilder builder = new StringBuilder();
+
+        builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<rss version=\"2.0\" xmlns:dc=\"http://purl.org/dc/elements/1.1/\"")
+                .append(" xmlns:content=\"http://purl.org/rss/1.0/modules/content/\">\n")
+                .append("<channel>\n")
+                .append("\t<title>Benchmark feed / Best posts</title>\n")
+                .append("\t<link>https://example.com/</link>\n")
+                .append("\t<description>Best posts of the day</description>\n")
+                .append("\t<language>ru</language>\n")
+                .append("\t<lastBuildDate>")
+                .append(dateFormat.format(itemDate(newestItem)))
+                .append("</lastBuildDate>\n")
+                .append("\t<generator>benchmark</generator>\n");
+
+        for (int i = newestItem; i > newestItem - itemCount; i--) {
+            String postLink = "https://example.com/post/" + (1000000 + i) + "/";
+
+            // Content of the item depends only on its number,
+            // so the same item is the same in every version of the feed.
+            Random random = new Random(i);
+
+            builder.append("\t<item>\n")
+                    .append("\t\t<title><![CDATA[").append(sentence(random, 5 + random.nextInt(8)))
+                    .append("]]></title>\n")
+                    .append("\t\t<guid isPermaLink=\"true\">").append(postLink).append("</guid>\n")
+                    .append("\t\t<link>").append(postLink).append("?utm_source=rss</link>\n")
+                    .append("\t\t<description><![CDATA[").append(html(random)).append("]]></description>\n")
+                    .append("\t\t<pubDate>").append(dateFormat.format(itemDate(i))).append("</pubDate>\n")
+                    .append("\t\t<dc:creator>").append(word(random)).append("_author</dc:creator>\n");
+
+            int categoryCount = 1 + random.nextInt(3);
+            for (int j = 0; j < categoryCount; j++) {
+                builder.append("\t\t<category>").append(CATEGORIES[random.nextInt(CATEGORIES.length)])
+                        .append("</category>\n");
+            }
+
+            builder.append("\t</item>\n");
+        }
+
+        builder.append("</channel>\n")
+                .append("</rss>\n");
+
+        return builder.toString();
+    }
+
+    private static String generateAtom(int itemCount, int newestItem) {
+
+        SimpleDateFormat dateFormat = createDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+
+        StringBuilder builder = new StringBuilder();
+
+        builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<feed xmlns=\"http://www.w3.org/2005/Atom\" xml:lang=\"en\">\n")
+                .append("\t<title type=\"text\">Benchmark feed / Best posts</title>\n")
+                .append("\t<id>tag:example.com,2017:feed</id>\n")
+                .append("\t<link rel=\"self\" href=\"https://example.com/feed.atom\"/>\n")
+                .append("\t<link rel=\"alternate\" type=\"text/html\" href=\"https://example.com/\"/>\n")
+                .append("\t<updated>").append(dateFormat.format(itemDate(newestItem)))
+                .append("</updated>\n");
+
+        for (int i = newestItem; i > newestItem - itemCount; i--) {
+            String date = dateFormat.format(itemDate(i));
+
+            Random random = new Random(i);
+
+            builder.append("\t<entry>\n")
+                    .append("\t\t<title type=\"text\">").append(sentence(random, 5 + random.nextInt(8)))
+                    .append("</title>\n")
+                    .append("\t\t<link rel=\"alternate\" type=\"text/html\" href=\"https://example.com/post/")
+                    .append(1000000 + i).append("/\"/>\n")
+                    .append("\t\t<link rel=\"replies\" type=\"text/html\" href=\"https://example.com/post/")
+                    .append(1000000 + i).append("/#comments\"/>\n")
+                    .append("\t\t<id>tag:example.com,2017:post-").append(1000000 + i).append("</id>\n")
+                    .append("\t\t<published>").append(date).append("</published>\n")
+                    .append("\t\t<updated>").append(date).append("</updated>\n")
+                    .append("\t\t<author><name>").append(word(random)).append("_author</name></author>\n")
+                    .append("\t\t<category term=\"").append(CATEGORIES[random.nextInt(CATEGORIES.length)])
+                    .append("\"/>\n")
+                    .append("\t\t<summary type=\"html\">").append(escape(html(random))).append("</summary>\n")
+                    .append("\t</entry>\n");
+        }
+
+        builder.append("</feed>\n");
+
+        return builder.toString();
+    }
+
+    // HTML body of 1 to 6 paragraphs (some with links and images)
+    private static String html(Random random) {
+
+        StringBuilder builder = new StringBuilder();
+
+        int paragraphCount = 1 + random.nextInt(6);
+
+        for (int i = 0; i < paragraphCount; i++) {
+            builder.append("<p>").append(sentence(random, 20 + random.nextInt(40)));
+
+            if (random.nextInt(3) == 0) {
+                builder.append(" <a href=\"https://example.com/tag/").append(word(random))
+                        .append("/\">").append(word(random)).append("</a>");
+            }
+
+            builder.append("</p>");
+
+            if (random.nextInt(5) == 0) {
+                builder.append("<img src=\"https://example.com/images/").append(random.nextInt(100000))
+                        .append(".png\" alt=\"").append(word(random)).append("\"/>");
+            }
+        }
+
+        return builder.toString();
+    }
+
+    private static String sentence(Random random, int wordCount) {
+
+        StringBuilder builder = new StringBuilder();
+
+        for (int i = 0; i < wordCount; i++) {
+            if (i > 0) {
+                builder.append(' ');
+            }
+            builder.append(word(random));
+        }
+
+        // Capitalize the first letter
+        builder.setCharAt(0, Character.toUpperCase(builder.charAt(0)));
+
+        return builder.toString();
+    }
+
+    private static String word(Random random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    private static Date itemDate(int number) {
+        return new Date(FIRST_ITEM_TIME_MILLIS + number * ITEM_INTERVAL_MILLIS);
+    }
+
+    private static SimpleDateFormat createDateFormat(String pattern) {
+        SimpleDateFormat dateFormat = new SimpleDateFormat(pattern, Locale.US);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return dateFormat;
+    }
+}
@@ -0,0 +1,86 @@
+package com.gpetuhov.android.rssreader.benchmark;
+
+
+import com.gpetuhov.android.rssreader.core.data.FeedUpdateSummary;
+import com.gpetuhov.android.rssreader.core.data.MemoryFeedStore;
+import com.gpetuhov.android.rssreader.core.parser.FeedParser;
+import com.gpetuhov.android.rssreader.core.parser.ParsedFeed;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Throughput of the end-to-end ingestion of the fetched document:
+// one-pass parsing (as in FeedFetcher) followed by FeedStore.updateFeed().
+// Realm can't run outside of Android, so MemoryFeedStore is used,
+// which applies updates with the same upsert logic as DataStorage.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FeedIngestBenchmark {
+
+    private static final String FEED_LINK = "https://example.com/rss/";
+
+    // JMH uses names of these fields as names of the parameters in results
+    @Param({"10", "100", "1000", "10000"})
+    public int itemCount;
+
+    @Param({"RSS", "ATOM"})
+    public FeedCorpus.Format format;
+
+    private KXmlParserFactory mXmlParserFactory;
+    private FeedParser mFeedParser;
+
+    private byte[] mDocument;
+
+    // Store, that already has all posts of the document
+    private MemoryFeedStore mFilledStore;
+
+    @Setup
+    public void setUp() throws XmlPullParserException, IOException {
+        mXmlParserFactory = new KXmlParserFactory();
+        mFeedParser = new FeedParser();
+
+        mDocument = FeedCorpus.generate(format, itemCount);
+
+        mFilledStore = new MemoryFeedStore();
+        ingest(mFilledStore);
+    }
+
+    // The first fetch of the feed: every post is new
+    @Benchmark
+    public FeedUpdateSummary ingestNewFeed() throws XmlPullParserException, IOException {
+        return ingest(new MemoryFeedStore());
+    }
+
+    // Refresh of the feed, that has not changed: every post is looked up and compared
+    @Benchmark
+    public FeedUpdateSummary ingestUnchangedFeed() throws XmlPullParserException, IOException {
+        return ingest(mFilledStore);
+    }
+
+    private FeedUpdateSummary ingest(MemoryFeedStore feedStore)
+            throws XmlPullParserException, IOException {
+
+        ParsedFeed parsedFeed = mFeedParser.parse(mXmlParserFactory.newPullParser(mDocument));
+
+        return feedStore.updateFeed(
+                FEED_LINK, parsedFeed.getTitle(), parsedFeed.getPosts(),
+                null, null, parsedFeed.getRefreshHintMillis());
+    }
+}
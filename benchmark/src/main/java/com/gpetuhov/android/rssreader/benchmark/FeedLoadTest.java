@@ -0,0 +1,233 @@
+package com.gpetuhov.android.rssreader.benchmark;
+
+
+import com.gpetuhov.android.rssreader.core.FeedFetcher;
+import com.gpetuhov.android.rssreader.core.FeedHttpClient;
+import com.gpetuhov.android.rssreader.core.FeedRefresher;
+import com.gpetuhov.android.rssreader.core.data.FeedPost;
+import com.gpetuhov.android.rssreader.core.data.MemoryFeedStore;
+import com.gpetuhov.android.rssreader.core.events.RefreshFinishedEvent;
+import com.gpetuhov.android.rssreader.core.events.RefreshProgressEvent;
+import com.gpetuhov.android.rssreader.core.metrics.FetchMetrics;
+
+import org.greenrobot.eventbus.EventBus;
+import org.greenrobot.eventbus.Subscribe;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockWebServer;
+
+// Load test of the fetch pipeline against local MockFeedServer.
+// Subscribes to all feeds of the server and refreshes them with the real
+// FeedRefresher and FeedFetcher (the same code as in the app) several rounds in a row.
+// The first round fetches every feed, next rounds send conditional requests,
+// so most feeds get 304. For every round reports wall-clock time, per-feed latency
+// (p50, p90, p99, max), peak heap and timings of the fetch stages from FetchMetrics.
+// Realm can't run outside of Android, so fetched feeds are stored in MemoryFeedStore.
+//
+// Run with:
+//   ./gradlew :benchmark:loadTest -PloadTest.args="feeds=500 failing=0.05"
+// (see LoadTestScenario for all parameters).
+public class FeedLoadTest {
+
+    // Refresh round is aborted, if it takes longer than this
+    private static final long ROUND_TIMEOUT_MINUTES = 10;
+
+    // Heap is sampled this often
+    private static final long HEAP_SAMPLE_PERIOD_MILLIS = 10;
+
+    private final LoadTestScenario mScenario;
+
+    // Latencies of the feeds fetched in the current round (guarded by itself)
+    private final List<Long> mLatenciesMillis = new ArrayList<>();
+
+    // Stage timings and counters of the current round
+    private final FetchMetrics mFetchMetrics = new FetchMetrics();
+
+    private volatile CountDownLatch mRoundFinishedLatch;
+    private volatile int mFailedCount;
+
+    public FeedLoadTest(LoadTestScenario scenario) {
+        mScenario = scenario;
+    }
+
+    public static void main(String[] args) throws Exception {
+        // MockWebServer logs every request, keep only the report in the output
+        Logger.getLogger(MockWebServer.class.getName()).setLevel(Level.WARNING);
+
+        new FeedLoadTest(LoadTestScenario.parse(args)).run();
+    }
+
+    public void run() throws Exception {
+
+        System.out.println("Scenario: " + mScenario);
+
+        MockFeedServer mockFeedServer = new MockFeedServer(mScenario);
+        mockFeedServer.start();
+
+        EventBus eventBus = EventBus.builder()
+                .logNoSubscriberMessages(false)
+                .sendNoSubscriberEvent(false)
+                .build();
+
+        eventBus.register(this);
+
+        try {
+            // The same client configuration as in the app, but without response cache
+            OkHttpClient okHttpClient = FeedHttpClient.newBuilder(null)
+                    .dns(mockFeedServer.getDns())
+                    .eventListenerFactory(mFetchMetrics.getEventListenerFactory())
+                    .build();
+            okHttpClient.dispatcher().setMaxRequests(mScenario.getMaxRequests());
+            okHttpClient.dispatcher().setMaxRequestsPerHost(mScenario.getMaxRequestsPerHost());
+
+            // Subscribe to all feeds of the server
+            MemoryFeedStore feedStore = new MemoryFeedStore();
+            for (String feedLink : mockFeedServer.getFeedLinks()) {
+                feedStore.updateFeed(feedLink, null, new ArrayList<FeedPost>(), null, null, 0);
+            }
+
+            FeedFetcher feedFetcher = new FeedFetcher(
+                    okHttpClient, feedStore, new KXmlParserFactory(), eventBus, mFetchMetrics);
+
+            FeedRefresher feedRefresher = new FeedRefresher(feedFetcher, feedStore, eventBus);
+            feedRefresher.setMaxRequests(mScenario.getMaxRequests());
+            feedRefresher.setMaxRequestsPerHost(mScenario.getMaxRequestsPerHost());
+
+            for (int round = 1; round <= mScenario.getRoundCount(); round++) {
+                if (round > 1) {
+                    mockFeedServer.changeFeeds(round);
+                }
+                runRound(round, feedRefresher, mockFeedServer);
+            }
+
+            okHttpClient.dispatcher().executorService().shutdown();
+            okHttpClient.connectionPool().evictAll();
+
+        } finally {
+            eventBus.unregister(this);
+            mockFeedServer.shutdown();
+        }
+    }
+
+    private void runRound(int round, FeedRefresher feedRefresher, MockFeedServer mockFeedServer)
+            throws InterruptedException {
+
+        synchronized (mLatenciesMillis) {
+            mLatenciesMillis.clear();
+        }
+        mockFeedServer.resetCounters();
+        mFetchMetrics.reset();
+        mRoundFinishedLatch = new CountDownLatch(1);
+
+        // Start measuring heap from the same state in every round
+        System.gc();
+        HeapSampler heapSampler = new HeapSampler();
+        heapSampler.start();
+
+        long startTimeNanos = System.nanoTime();
+
+        feedRefresher.refreshAll(true);
+
+        boolean finished = mRoundFinishedLatch.await(ROUND_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+
+        long wallClockMillis = (System.nanoTime() - startTimeNanos) / 1000000;
+
+        long peakHeapBytes = heapSampler.stop();
+
+        List<Long> latencies;
+        synchronized (mLatenciesMillis) {
+            latencies = new ArrayList<>(mLatenciesMillis);
+        }
+        Collections.sort(latencies);
+
+        System.out.println(String.format(Locale.US,
+                "Round %d%s: wall-clock %d ms, feeds %d (failed %d), responses 200: %d, 304: %d, errors: %d",
+                round, finished ? "" : " (timed out)", wallClockMillis,
+                latencies.size(), mFailedCount, mockFeedServer.getOkCount(),
+                mockFeedServer.getNotModifiedCount(), mockFeedServer.getErrorCount()));
+
+        System.out.println(String.format(Locale.US,
+                "  latency p50 %d ms, p90 %d ms, p99 %d ms, max %d ms; peak heap %.1f MB",
+                percentile(latencies, 50), percentile(latencies, 90), percentile(latencies, 99),
+                percentile(latencies, 100), peakHeapBytes / (1024.0 * 1024.0)));
+
+        // Only totals of all feeds, per-feed tables would be too long
+        StringBuilder metrics = new StringBuilder();
+        mFetchMetrics.getGlobalMetrics().dump(metrics);
+        System.out.print(metrics);
+    }
+
+    // Called in OkHttp thread, when one feed is fetched
+    @Subscribe
+    public void onRefreshProgressEvent(RefreshProgressEvent refreshProgressEvent) {
+        synchronized (mLatenciesMillis) {
+            mLatenciesMillis.add(refreshProgressEvent.getDurationMillis());
+        }
+    }
+
+    @Subscribe
+    public void onRefreshFinishedEvent(RefreshFinishedEvent refreshFinishedEvent) {
+        mFailedCount = refreshFinishedEvent.getFailedCount();
+        mRoundFinishedLatch.countDown();
+    }
+
+    // Return percentile of the sorted values (nearest rank), or 0 if there are no values
+    private static long percentile(List<Long> sortedValues, int percent) {
+
+        if (sortedValues.isEmpty()) {
+            return 0;
+        }
+
+        int rank = (int) Math.ceil(percent / 100.0 * sortedValues.size());
+
+        return sortedValues.get(Math.max(rank, 1) - 1);
+    }
+
+    // Samples used heap in background and keeps its maximum
+    private static class HeapSampler implements Runnable {
+
+        private final MemoryMXBean mMemoryMXBean = ManagementFactory.getMemoryMXBean();
+
+        private final ScheduledExecutorService mExecutor =
+                Executors.newSingleThreadScheduledExecutor();
+
+        private final AtomicLong mPeakHeapBytes = new AtomicLong();
+
+        void start() {
+            mExecutor.scheduleAtFixedRate(this, 0, HEAP_SAMPLE_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        // Stop sampling and return peak used heap
+        long stop() throws InterruptedException {
+            mExecutor.shutdown();
+            mExecutor.awaitTermination(1, TimeUnit.SECONDS);
+            run();
+            return mPeakHeapBytes.get();
+        }
+
+        @Override
+        public void run() {
+            long usedHeapBytes = mMemoryMXBean.getHeapMemoryUsage().getUsed();
+
+            long peakHeapBytes = mPeakHeapBytes.get();
+            while (usedHeapBytes > peakHeapBytes
+                    && !mPeakHeapBytes.compareAndSet(peakHeapBytes, usedHeapBytes)) {
+                peakHeapBytes = mPeakHeapBytes.get();
+            }
+        }
+    }
+}
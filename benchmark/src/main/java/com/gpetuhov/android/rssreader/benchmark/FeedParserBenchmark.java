@@ -0,0 +1,67 @@
+package com.gpetuhov.android.rssreader.benchmark;
+
+
+import com.gpetuhov.android.rssreader.core.FeedFetcher;
+import com.gpetuhov.android.rssreader.core.data.FeedPost;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Throughput of FeedFetcher.extractFeedTitle() and extractFeedPosts()
+// on RSS and Atom documents of different size.
+// Documents are generated once per trial and kept in memory,
+// so only parsing is measured (not network or disk).
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FeedParserBenchmark {
+
+    // JMH uses names of these fields as names of the parameters in results
+    @Param({"10", "100", "1000", "10000"})
+    public int itemCount;
+
+    @Param({"RSS", "ATOM"})
+    public FeedCorpus.Format format;
+
+    private KXmlParserFactory mXmlParserFactory;
+    private FeedFetcher mFeedFetcher;
+
+    private byte[] mDocument;
+
+    @Setup
+    public void setUp() {
+        mXmlParserFactory = new KXmlParserFactory();
+
+        // Parsing doesn't need network, storage and event bus
+        mFeedFetcher = new FeedFetcher(null, null, mXmlParserFactory, null);
+
+        mDocument = FeedCorpus.generate(format, itemCount);
+    }
+
+    @Benchmark
+    public String extractFeedTitle() throws XmlPullParserException, IOException {
+        return mFeedFetcher.extractFeedTitle(mXmlParserFactory.newPullParser(mDocument));
+    }
+
+    @Benchmark
+    public List<FeedPost> extractFeedPosts() throws XmlPullParserException, IOException {
+        return mFeedFetcher.extractFeedPosts(mXmlParserFactory.newPullParser(mDocument));
+    }
+}
@@ -0,0 +1,27 @@
+package com.gpetuhov.android.rssreader.benchmark;
+
+
+import com.gpetuhov.android.rssreader.core.parser.XmlParserFactory;
+
+import org.kxml2.io.KXmlParser;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.ByteArrayInputStream;
+
+// Creates kXML parsers (the same parser Android's Xml.newPullParser() is based on)
+public class KXmlParserFactory implements XmlParserFactory {
+
+    @Override
+    public XmlPullParser newPullParser() {
+        return new KXmlParser();
+    }
+
+    // Create parser set up the same way as in FeedFetcher for provided document
+    public XmlPullParser newPullParser(byte[] document) throws XmlPullParserException {
+        XmlPullParser parser = newPullParser();
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
+        parser.setInput(new ByteArrayInputStream(document), null);
+        return parser;
+    }
+}
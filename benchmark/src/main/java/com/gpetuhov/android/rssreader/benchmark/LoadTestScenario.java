@@ -0,0 +1,178 @@
+package com.gpetuhov.android.rssreader.benchmark;
+
+
+import java.util.Locale;
+
+// Parameters of the load test.
+// Defaults describe the reference scenario: 500 feeds, 5% of them failing.
+// Every parameter can be overridden with "name=value" argument (see parse()).
+public class LoadTestScenario {
+
+    // Number of feeds and number of hosts they are spread over
+    private int mFeedCount = 500;
+    private int mHostCount = 50;
+
+    // Number of items in every feed and format of the feeds
+    private int mItemCount = 50;
+    private FeedCorpus.Format mFormat = FeedCorpus.Format.RSS;
+
+    // Fraction of the feeds, that always fail
+    // (half of them with server error, half with malformed XML)
+    private double mFailingFraction = 0.05;
+
+    // Fraction of the feeds, that send their body slowly, and speed of the body
+    private double mSlowFraction = 0.05;
+    private int mSlowBodyBytesPerSecond = 64 * 1024;
+
+    // Server latency of every response (fixed part and random addition)
+    private int mLatencyMillis = 50;
+    private int mLatencyJitterMillis = 50;
+
+    // Fraction of the feeds, that get new item before every next round
+    // (all others respond with 304 to conditional requests)
+    private double mChangedFraction = 0.2;
+
+    // Number of refresh rounds (the first one fetches all feeds unconditionally)
+    private int mRoundCount = 2;
+
+    // Concurrency limits of FeedRefresher
+    private int mMaxRequests = 16;
+    private int mMaxRequestsPerHost = 4;
+
+    // Seed of the random choice of failing, slow and changed feeds
+    private long mSeed = 1;
+
+    // Create scenario from arguments like "feeds=500 failing=0.05".
+    // Unknown arguments are reported with IllegalArgumentException.
+    public static LoadTestScenario parse(String[] args) {
+
+        LoadTestScenario scenario = new LoadTestScenario();
+
+        for (String arg : args) {
+            int separatorIndex = arg.indexOf('=');
+
+            if (separatorIndex <= 0) {
+                throw new IllegalArgumentException("Expected name=value, got: " + arg);
+            }
+
+            String name = arg.substring(0, separatorIndex);
+            String value = arg.substring(separatorIndex + 1);
+
+            switch (name) {
+                case "feeds":
+                    scenario.mFeedCount = Integer.parseInt(value);
+                    break;
+                case "hosts":
+                    scenario.mHostCount = Integer.parseInt(value);
+                    break;
+                case "items":
+                    scenario.mItemCount = Integer.parseInt(value);
+                    break;
+                case "format":
+                    scenario.mFormat = FeedCorpus.Format.valueOf(value.toUpperCase(Locale.US));
+                    break;
+                case "failing":
+                    scenario.mFailingFraction = Double.parseDouble(value);
+                    break;
+                case "slow":
+                    scenario.mSlowFraction = Double.parseDouble(value);
+                    break;
+                case "slowBytesPerSecond":
+                    scenario.mSlowBodyBytesPerSecond = Integer.parseInt(value);
+                    break;
+                case "latency":
+                    scenario.mLatencyMillis = Integer.parseInt(value);
+                    break;
+                case "jitter":
+                    scenario.mLatencyJitterMillis = Integer.parseInt(value);
+                    break;
+                case "changed":
+                    scenario.mChangedFraction = Double.parseDouble(value);
+                    break;
+                case "rounds":
+                    scenario.mRoundCount = Integer.parseInt(value);
+                    break;
+                case "maxRequests":
+                    scenario.mMaxRequests = Integer.parseInt(value);
+                    break;
+                case "maxRequestsPerHost":
+                    scenario.mMaxRequestsPerHost = Integer.parseInt(value);
+                    break;
+                case "seed":
+                    scenario.mSeed = Long.parseLong(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown parameter: " + name);
+            }
+        }
+
+        return scenario;
+    }
+
+    public int getFeedCount() {
+        return mFeedCount;
+    }
+
+    public int getHostCount() {
+        return mHostCount;
+    }
+
+    public int getItemCount() {
+        return mItemCount;
+    }
+
+    public FeedCorpus.Format getFormat() {
+        return mFormat;
+    }
+
+    public double getFailingFraction() {
+        return mFailingFraction;
+    }
+
+    public double getSlowFraction() {
+        return mSlowFraction;
+    }
+
+    public int getSlowBodyBytesPerSecond() {
+        return mSlowBodyBytesPerSecond;
+    }
+
+    public int getLatencyMillis() {
+        return mLatencyMillis;
+    }
+
+    public int getLatencyJitterMillis() {
+        return mLatencyJitterMillis;
+    }
+
+    public double getChangedFraction() {
+        return mChangedFraction;
+    }
+
+    public int getRoundCount() {
+        return mRoundCount;
+    }
+
+    public int getMaxRequests() {
+        return mMaxRequests;
+    }
+
+    public int getMaxRequestsPerHost() {
+        return mMaxRequestsPerHost;
+    }
+
+    public long getSeed() {
+        return mSeed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "feeds=%d hosts=%d items=%d format=%s failing=%.2f slow=%.2f slowBytesPerSecond=%d "
+                        + "latency=%d jitter=%d changed=%.2f rounds=%d "
+                        + "maxRequests=%d maxRequestsPerHost=%d seed=%d",
+                mFeedCount, mHostCount, mItemCount, mFormat, mFailingFraction, mSlowFraction,
+                mSlowBodyBytesPerSecond, mLatencyMillis, mLatencyJitterMillis, mChangedFraction,
+                mRoundCount, mMaxRequests, mMaxRequestsPerHost, mSeed);
+    }
+}
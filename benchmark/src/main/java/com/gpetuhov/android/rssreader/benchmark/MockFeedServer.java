@@ -0,0 +1,261 @@
+package com.gpetuhov.android.rssreader.benchmark;
+
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import okhttp3.Dns;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+// Serves synthetic feeds of the load test from local MockWebServer.
+// Feeds are spread over several fake hosts (all resolved to the local server by getDns()),
+// so per-host limits of the client work as with real feeds.
+// Every feed has its own behavior (normal, slow body, server error or malformed XML)
+// and its own version. Response has ETag of the current version,
+// and conditional request with the same ETag gets 304.
+public class MockFeedServer {
+
+    private static final String FAKE_HOST_SUFFIX = ".test";
+
+    private static final String MALFORMED_XML =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                    + "<html><body><p>Not a feed & not a valid XML</body></html>\n";
+
+    private enum Behavior {
+        NORMAL, SLOW_BODY, SERVER_ERROR, MALFORMED_XML
+    }
+
+    private final LoadTestScenario mScenario;
+    private final MockWebServer mMockWebServer = new MockWebServer();
+
+    private final Behavior[] mBehaviors;
+
+    // Current version of every feed
+    private final AtomicIntegerArray mVersions;
+
+    // Documents by version (all feeds of the same version have the same document)
+    private final Map<Integer, byte[]> mDocuments = new ConcurrentHashMap<>();
+
+    // Response counters
+    private final AtomicInteger mOkCount = new AtomicInteger();
+    private final AtomicInteger mNotModifiedCount = new AtomicInteger();
+    private final AtomicInteger mErrorCount = new AtomicInteger();
+
+    public MockFeedServer(LoadTestScenario scenario) {
+        mScenario = scenario;
+
+        int feedCount = scenario.getFeedCount();
+
+        mBehaviors = new Behavior[feedCount];
+        mVersions = new AtomicIntegerArray(feedCount);
+
+        // Choose failing and slow feeds at random, but the same way for the same seed
+        List<Integer> feedIndexes = new ArrayList<>();
+        for (int i = 0; i < feedCount; i++) {
+            feedIndexes.add(i);
+        }
+        Collections.shuffle(feedIndexes, new Random(scenario.getSeed()));
+
+        int failingCount = (int) Math.round(feedCount * scenario.getFailingFraction());
+        int slowCount = (int) Math.round(feedCount * scenario.getSlowFraction());
+
+        for (int i = 0; i < feedCount; i++) {
+            int feedIndex = feedIndexes.get(i);
+
+            if (i < failingCount) {
+                mBehaviors[feedIndex] = i % 2 == 0 ? Behavior.SERVER_ERROR : Behavior.MALFORMED_XML;
+            } else if (i < failingCount + slowCount) {
+                mBehaviors[feedIndex] = Behavior.SLOW_BODY;
+            } else {
+                mBehaviors[feedIndex] = Behavior.NORMAL;
+            }
+        }
+    }
+
+    public void start() throws IOException {
+        mMockWebServer.setDispatcher(new FeedDispatcher());
+        mMockWebServer.start();
+    }
+
+    public void shutdown() throws IOException {
+        mMockWebServer.shutdown();
+    }
+
+    // Return links of all feeds
+    public List<String> getFeedLinks() {
+
+        List<String> feedLinks = new ArrayList<>();
+
+        for (int i = 0; i < mScenario.getFeedCount(); i++) {
+            String host = "feeds" + (i % mScenario.getHostCount()) + FAKE_HOST_SUFFIX;
+            feedLinks.add("http://" + host + ":" + mMockWebServer.getPort() + "/feed/" + i + "/");
+        }
+
+        return feedLinks;
+    }
+
+    // Return DNS, that resolves fake hosts of the feeds to the local server
+    public Dns getDns() {
+        return new Dns() {
+            @Override
+            public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+                if (hostname.endsWith(FAKE_HOST_SUFFIX)) {
+                    return Arrays.asList(InetAddress.getByName(mMockWebServer.getHostName()));
+                } else {
+                    return Dns.SYSTEM.lookup(hostname);
+                }
+            }
+        };
+    }
+
+    // Add new item to some of the feeds (chosen at random, but the same way for the same round)
+    public void changeFeeds(int round) {
+
+        Random random = new Random(mScenario.getSeed() * 31 + round);
+
+        for (int i = 0; i < mScenario.getFeedCount(); i++) {
+            if (random.nextDouble() < mScenario.getChangedFraction()) {
+                mVersions.incrementAndGet(i);
+            }
+        }
+    }
+
+    public int getOkCount() {
+        return mOkCount.get();
+    }
+
+    public int getNotModifiedCount() {
+        return mNotModifiedCount.get();
+    }
+
+    public int getErrorCount() {
+        return mErrorCount.get();
+    }
+
+    public void resetCounters() {
+        mOkCount.set(0);
+        mNotModifiedCount.set(0);
+        mErrorCount.set(0);
+    }
+
+    private byte[] getDocument(int version) {
+
+        byte[] document = mDocuments.get(version);
+
+        if (null == document) {
+            // Version adds new items at the top of the feed
+            int itemCount = mScenario.getItemCount();
+            document = FeedCorpus.generate(mScenario.getFormat(), itemCount, itemCount + version);
+            mDocuments.put(version, document);
+        }
+
+        return document;
+    }
+
+    private static String getETag(int version) {
+        return String.format(Locale.US, "\"v%d\"", version);
+    }
+
+    // Creates response for every request.
+    // Called in the server thread of the connection, so delays affect only this request.
+    private class FeedDispatcher extends Dispatcher {
+
+        private final Random mLatencyRandom = new Random();
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+
+            int feedIndex = getFeedIndex(request.getPath());
+
+            if (feedIndex < 0 || feedIndex >= mBehaviors.length) {
+                mErrorCount.incrementAndGet();
+                return new MockResponse().setResponseCode(404);
+            }
+
+            // Server latency
+            int jitterMillis;
+            synchronized (mLatencyRandom) {
+                jitterMillis = mScenario.getLatencyJitterMillis() > 0
+                        ? mLatencyRandom.nextInt(mScenario.getLatencyJitterMillis())
+                        : 0;
+            }
+            Thread.sleep(mScenario.getLatencyMillis() + jitterMillis);
+
+            switch (mBehaviors[feedIndex]) {
+                case SERVER_ERROR:
+                    mErrorCount.incrementAndGet();
+                    return new MockResponse()
+                            .setResponseCode(503)
+                            .setBody("Service Unavailable");
+
+                case MALFORMED_XML:
+                    mOkCount.incrementAndGet();
+                    return new MockResponse()
+                            .setHeader("Content-Type", "text/xml; charset=UTF-8")
+                            .setBody(MALFORMED_XML);
+
+                default:
+                    return createFeedResponse(feedIndex, request);
+            }
+        }
+
+        private MockResponse createFeedResponse(int feedIndex, RecordedRequest request) {
+
+            int version = mVersions.get(feedIndex);
+            String eTag = getETag(version);
+
+            if (eTag.equals(request.getHeader("If-None-Match"))) {
+                mNotModifiedCount.incrementAndGet();
+                return new MockResponse()
+                        .setResponseCode(304)
+                        .setHeader("ETag", eTag);
+            }
+
+            mOkCount.incrementAndGet();
+
+            MockResponse response = new MockResponse()
+                    .setHeader("Content-Type", "application/rss+xml; charset=UTF-8")
+                    .setHeader("ETag", eTag)
+                    .setBody(new Buffer().write(getDocument(version)));
+
+            if (mBehaviors[feedIndex] == Behavior.SLOW_BODY) {
+                // Body is sent in chunks every 100 ms
+                response.throttleBody(
+                        Math.max(1, mScenario.getSlowBodyBytesPerSecond() / 10), 100, TimeUnit.MILLISECONDS);
+            }
+
+            return response;
+        }
+
+        // Return index of the feed from path like "/feed/17/", or -1 if path is unknown
+        private int getFeedIndex(String path) {
+            String prefix = "/feed/";
+
+            if (path != null && path.startsWith(prefix) && path.endsWith("/")) {
+                try {
+                    return Integer.parseInt(path.substring(prefix.length(), path.length() - 1));
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            } else {
+                return -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,604 @@
+package com.gpetuhov.android.rssreader.core;
+
+
+import com.gpetuhov.android.rssreader.core.data.FeedInfo;
+import com.gpetuhov.android.rssreader.core.data.FeedPost;
+import com.gpetuhov.android.rssreader.core.data.FeedStore;
+import com.gpetuhov.android.rssreader.core.data.FeedUpdateSummary;
+import com.gpetuhov.android.rssreader.core.data.RefreshSchedule;
+import com.gpetuhov.android.rssreader.core.events.FeedFetchErrorEvent;
+import com.gpetuhov.android.rssreader.core.events.FeedFetchSuccessEvent;
+import com.gpetuhov.android.rssreader.core.metrics.FetchErrorType;
+import com.gpetuhov.android.rssreader.core.metrics.FetchMetrics;
+import com.gpetuhov.android.rssreader.core.metrics.FetchStage;
+import com.gpetuhov.android.rssreader.core.parser.FeedParser;
+import com.gpetuhov.android.rssreader.core.parser.ParsedFeed;
+import com.gpetuhov.android.rssreader.core.parser.XmlParserFactory;
+import com.gpetuhov.android.rssreader.core.utils.UtilsUrl;
+
+import org.greenrobot.eventbus.EventBus;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+import retrofit2.http.GET;
+import retrofit2.http.Header;
+import retrofit2.http.Url;
+
+// Fetches XML for the RSS feed.
+// Every network call has its own FeedRequest with its own state,
+// so several feeds can be fetched at the same time.
+// Fetches of the feed, that is already being fetched, join the running request,
+// and feeds fetched successfully within freshness TTL are not fetched again
+// unless refresh is forced.
+// Failed feeds are not fetched again until their backoff passes (unless refresh is forced),
+// and requests to hosts, that keep failing, are rejected by HostCircuitBreaker without network,
+// so a few dead feeds don't take connection slots from the rest.
+// Timings of parse and persist stages and results of every fetch are recorded to FetchMetrics
+// (network stages are recorded there by OkHttp event listener, if it is set to the client).
+public class FeedFetcher {
+
+    // Returned by server, if feed has not changed since the previous fetch
+    private static final int HTTP_NOT_MODIFIED = 304;
+
+    // Returned by server, if it gets too many requests (server errors are 5xx)
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int HTTP_SERVER_ERROR = 500;
+
+    public static final long DEFAULT_FRESHNESS_TTL_MILLIS = 5 * 60 * 1000;
+
+    // Sent with forced refresh, so that response cache revalidates the feed with the server
+    // (no-cache would bypass the cache and download the whole feed).
+    private static final String CACHE_CONTROL_REVALIDATE = "max-age=0";
+
+    // Retrofit requires base URL, but every call has full URL of the feed, so it is never used
+    private static final String UNUSED_BASE_URL = "http://localhost/";
+
+    private OkHttpClient mOkHttpClient;
+    private FeedStore mFeedStore;
+    private XmlParserFactory mXmlParserFactory;
+    private EventBus mEventBus;
+    private FetchMetrics mFetchMetrics;
+
+    // Parses XML of the feeds (has no state, so it is shared by all requests)
+    private final FeedParser mFeedParser = new FeedParser();
+
+    // Implementation of the API interface (created on first fetch and shared by all requests)
+    private FeedFetchService mFeedFetchService;
+
+    // Requests being executed now, by feed link (guarded by itself)
+    private final Map<String, FeedRequest> mInFlightRequests = new HashMap<>();
+
+    // Time of the last successful fetch of every feed (guarded by mInFlightRequests)
+    private final Map<String, Long> mLastFetchTimes = new HashMap<>();
+
+    // Rejects requests to hosts, that keep failing (shared by all requests)
+    private final HostCircuitBreaker mHostCircuitBreaker = new HostCircuitBreaker();
+
+    private volatile long mFreshnessTtlMillis = DEFAULT_FRESHNESS_TTL_MILLIS;
+
+    // API interface to be used in Retrofit
+    private interface FeedFetchService {
+        @GET()
+        Call<ResponseBody> getFeed(@Url String url,
+                                   @Header("If-None-Match") String eTag,
+                                   @Header("If-Modified-Since") String lastModified,
+                                   @Header("Cache-Control") String cacheControl);
+        // As different RSS feeds have different URLs, we must provide full URL here,
+        // not base URL, @GET(url) and query parameters as usual.
+        // Null headers are not sent (without validators feed is fetched unconditionally).
+    }
+
+    // Notified when fetching of one feed is finished (successfully or not).
+    // Called in OkHttp background thread.
+    // If listener is provided, errors are reported to it instead of EventBus
+    // (this way refresh of many feeds doesn't flood UI with error messages).
+    // Errors are still posted to EventBus, if the same feed is also fetched without listener.
+    public interface OnFeedFetchListener {
+        void onFeedFetched(String feedLink, boolean success);
+    }
+
+    public FeedFetcher(OkHttpClient okHttpClient, FeedStore feedStore,
+                       XmlParserFactory xmlParserFactory, EventBus eventBus) {
+        this(okHttpClient, feedStore, xmlParserFactory, eventBus, new FetchMetrics());
+    }
+
+    public FeedFetcher(OkHttpClient okHttpClient, FeedStore feedStore,
+                       XmlParserFactory xmlParserFactory, EventBus eventBus,
+                       FetchMetrics fetchMetrics) {
+        mOkHttpClient = okHttpClient;
+        mFeedStore = feedStore;
+        mXmlParserFactory = xmlParserFactory;
+        mEventBus = eventBus;
+        mFetchMetrics = fetchMetrics;
+    }
+
+    public FetchMetrics getFetchMetrics() {
+        return mFetchMetrics;
+    }
+
+    public HostCircuitBreaker getHostCircuitBreaker() {
+        return mHostCircuitBreaker;
+    }
+
+    // Feeds fetched successfully within this time are not fetched again,
+    // unless refresh is forced.
+    public void setFreshnessTtl(long freshnessTtlMillis) {
+        mFreshnessTtlMillis = freshnessTtlMillis;
+    }
+
+    public void fetchFeed(String feedLink) {
+        fetchFeed(feedLink, false, null);
+    }
+
+    public void fetchFeed(String feedLink, boolean forceRefresh) {
+        fetchFeed(feedLink, forceRefresh, null);
+    }
+
+    public void fetchFeed(String feedLink, OnFeedFetchListener listener) {
+        fetchFeed(feedLink, false, listener);
+    }
+
+    // Fetch feed with provided link.
+    // If forceRefresh is false and the feed is still fresh, it is not fetched
+    // (listener is notified of success right away).
+    // If forceRefresh is false and the feed is backing off after failure, it is not fetched too
+    // (listener is notified of failure right away).
+    // Without listener FeedFetchSuccessEvent with no changes or FeedFetchErrorEvent is posted instead,
+    // so that UI always gets the end of the fetch (stored feed is displayed as is).
+    public void fetchFeed(String feedLink, boolean forceRefresh, OnFeedFetchListener listener) {
+
+        // Feeds are stored with normalized links
+        feedLink = UtilsUrl.normalizeFeedLink(feedLink);
+
+        // Stored state of the feed (validators and time of the last fetch)
+        FeedInfo storedFeed = mFeedStore.getFeedInfo(feedLink);
+
+        FeedRequest feedRequest;
+
+        // Result reported, if the feed is not fetched
+        boolean skippedSuccess = true;
+
+        synchronized (mInFlightRequests) {
+            FeedRequest inFlightRequest = mInFlightRequests.get(feedLink);
+
+            if (inFlightRequest != null) {
+                // The feed is already being fetched, wait for the same response
+                inFlightRequest.addListener(listener);
+                return;
+            }
+
+            if (!forceRefresh && storedFeed != null
+                    && storedFeed.isBackingOff(System.currentTimeMillis())) {
+                feedRequest = null;
+                skippedSuccess = false;
+            } else if (forceRefresh || !isFresh(feedLink, storedFeed)) {
+                feedRequest = new FeedRequest(feedLink, listener);
+                mInFlightRequests.put(feedLink, feedRequest);
+            } else {
+                feedRequest = null;
+            }
+        }
+
+        if (null == feedRequest) {
+            // Stored feed is fresh enough or it is too early to retry it
+            if (listener != null) {
+                listener.onFeedFetched(feedLink, skippedSuccess);
+            } else if (skippedSuccess) {
+                mEventBus.post(new FeedFetchSuccessEvent(feedLink, new FeedUpdateSummary(), 0));
+            } else {
+                mEventBus.post(new FeedFetchErrorEvent(feedLink, "Feed failed recently, try again later", 0));
+            }
+            return;
+        }
+
+        feedRequest.mHasStoredFeed = storedFeed != null;
+
+        // Send validators of the previous response.
+        // Response cache adds validators of the cached response itself
+        // and serves the cached body, if the feed has not changed.
+        // Request with validators set by the app would bypass the cache.
+        if (storedFeed != null && null == mOkHttpClient.cache()) {
+            feedRequest.mETag = storedFeed.getETag();
+            feedRequest.mLastModified = storedFeed.getLastModified();
+        }
+
+        HttpUrl url = HttpUrl.parse(feedLink);
+
+        if (null == url) {
+            // Link is not a valid HTTP URL
+            feedRequest.reportError(FetchErrorType.INVALID_URL, "Not a valid URL");
+            return;
+        }
+
+        feedRequest.mHost = url.host();
+
+        if (!mHostCircuitBreaker.allowRequest(feedRequest.mHost, System.currentTimeMillis())) {
+            // Host failed too many times recently, don't wait for it again
+            feedRequest.reportError(FetchErrorType.HOST_UNAVAILABLE, "Server is not responding, try again later");
+            return;
+        }
+
+        // Create conditional call with validators of the previous response (if any).
+        // Forced refresh must reach the server, even if cached response is still fresh.
+        Call<ResponseBody> call = getFeedFetchService()
+                .getFeed(feedLink, feedRequest.mETag, feedRequest.mLastModified,
+                        forceRefresh ? CACHE_CONTROL_REVALIDATE : null);
+
+        // Execute call asynchronously
+        // (retrofit performs and handles the method execution in a separate thread).
+        // If no converter is specified, Retrofit returns OkHttp ResponseBody.
+        call.enqueue(feedRequest);
+    }
+
+    // Retrofit creates implementation of the API interface with reflection,
+    // so it is created only once.
+    private synchronized FeedFetchService getFeedFetchService() {
+        if (null == mFeedFetchService) {
+            Retrofit retrofit = new Retrofit.Builder()
+                    .client(mOkHttpClient)
+                    .baseUrl(UNUSED_BASE_URL)
+                    .build();
+
+            mFeedFetchService = retrofit.create(FeedFetchService.class);
+        }
+        return mFeedFetchService;
+    }
+
+    // Feed is fresh, if it was fetched within TTL by this instance
+    // or by previous run of the app (according to storage).
+    // Must be called with mInFlightRequests lock held.
+    private boolean isFresh(String feedLink, FeedInfo storedFeed) {
+
+        Long lastFetchTime = mLastFetchTimes.get(feedLink);
+
+        long lastFetchedAt = lastFetchTime != null ? lastFetchTime : 0;
+        if (storedFeed != null) {
+            lastFetchedAt = Math.max(lastFetchedAt, storedFeed.getLastFetchedAt());
+        }
+
+        return lastFetchedAt > 0
+                && System.currentTimeMillis() - lastFetchedAt < mFreshnessTtlMillis;
+    }
+
+    // Return delay requested by server with Retry-After header (in seconds or as HTTP date),
+    // or 0 if there is none. Too long delay is limited.
+    private static long getRetryAfterMillis(Response<ResponseBody> response) {
+
+        String retryAfter = response.headers().get("Retry-After");
+
+        if (null == retryAfter) {
+            return 0;
+        }
+
+        long retryAfterMillis;
+
+        try {
+            retryAfterMillis = Long.parseLong(retryAfter.trim()) * 1000;
+        } catch (NumberFormatException e) {
+            Date retryAfterDate = response.headers().getDate("Retry-After");
+            retryAfterMillis = retryAfterDate != null
+                    ? retryAfterDate.getTime() - System.currentTimeMillis()
+                    : 0;
+        }
+
+        return Math.min(Math.max(retryAfterMillis, 0), RefreshSchedule.MAX_RETRY_AFTER_MILLIS);
+    }
+
+    // Called when request is finished, no more listeners can join it after this
+    private void finishRequest(FeedRequest feedRequest, boolean success) {
+        synchronized (mInFlightRequests) {
+            mInFlightRequests.remove(feedRequest.mFeedLink);
+
+            if (success) {
+                mLastFetchTimes.put(feedRequest.mFeedLink, System.currentTimeMillis());
+            }
+        }
+    }
+
+    // === XML PARSING =====
+
+    // Extract feed title from XML response
+    public String extractFeedTitle(XmlPullParser parser) throws XmlPullParserException, IOException {
+        return mFeedParser.parseTitle(parser);
+    }
+
+    // Extract feed posts from XML response
+    public List<FeedPost> extractFeedPosts(XmlPullParser parser) throws XmlPullParserException, IOException {
+        return mFeedParser.parse(parser).getPosts();
+    }
+
+    // === FEED REQUEST =====
+
+    // Keeps state of one feed fetch (link, response, extracted title and posts).
+    // Calls of fetchFeed() for the same feed, made while request is running,
+    // join it with their listeners.
+    private class FeedRequest implements Callback<ResponseBody>, FeedStore.OnFeedUpdateListener {
+
+        private final String mFeedLink;
+
+        // Host of the feed (for circuit breaker)
+        private String mHost;
+
+        // True if the feed is already in storage
+        // (cached response can be treated as not modified only then).
+        private boolean mHasStoredFeed;
+
+        // Delay requested by server with Retry-After (0 if none)
+        private long mRetryAfterMillis;
+
+        // Listeners of all joined calls (guarded by mInFlightRequests)
+        private final List<OnFeedFetchListener> mListeners = new ArrayList<>();
+
+        // True if any of joined calls has no listener,
+        // so errors must be posted to EventBus (guarded by mInFlightRequests).
+        private boolean mPostErrorEvent;
+
+        // Time when fetching started (to report duration of the fetch)
+        private final long mStartTimeNanos = System.nanoTime();
+
+        // Time when extracted feed was passed to storage (to measure persist stage)
+        private long mPersistStartTimeNanos;
+
+        // True if server responded, that feed has not changed
+        private boolean mNotModified;
+
+        // HTTP validators (sent with request and then replaced with the ones from response)
+        private String mETag;
+        private String mLastModified;
+
+        // Keeps response from the server converted to InputStream
+        // (this is needed for XMLPullParser).
+        private InputStream mXMLResponse;
+
+        // Feed title and posts
+        private String mFeedTitle;
+        private List<FeedPost> mRSSPosts;
+
+        FeedRequest(String feedLink, OnFeedFetchListener listener) {
+            mFeedLink = feedLink;
+            addListener(listener);
+        }
+
+        // Must be called with mInFlightRequests lock held (or in constructor)
+        void addListener(OnFeedFetchListener listener) {
+            if (listener != null) {
+                mListeners.add(listener);
+            } else {
+                mPostErrorEvent = true;
+            }
+        }
+
+        // === RETROFIT CALLBACKS =====
+
+        @Override
+        public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+
+            if (response != null && isHostFailure(response.code())) {
+                // Server is overloaded or broken, let it recover
+                mRetryAfterMillis = getRetryAfterMillis(response);
+                mHostCircuitBreaker.recordFailure(mHost, System.currentTimeMillis(), mRetryAfterMillis);
+            } else {
+                // Host is fine, even if the feed is not
+                mHostCircuitBreaker.recordSuccess(mHost);
+            }
+
+            if (response != null && isNotModified(response)) {
+                // Feed has not changed since the previous fetch.
+                // Nothing to parse, only refresh schedule is updated in storage.
+                mNotModified = true;
+                if (response.body() != null) {
+                    // Body of the cached response is not needed
+                    response.body().close();
+                }
+                mPersistStartTimeNanos = System.nanoTime();
+                try {
+                    mFeedStore.markFeedNotModifiedAsync(mFeedLink, this);
+                } catch (RuntimeException e) {
+                    reportErrorSavingFeed();
+                }
+
+            } else if (response != null && response.body() != null) {
+                // Keep validators of this response for the next fetch
+                mETag = response.headers().get("ETag");
+                mLastModified = response.headers().get("Last-Modified");
+
+                // Get OkHttp ResponseBody from Retrofit Response and convert it to InputStream
+                mXMLResponse = response.body().byteStream();
+
+                // Parse received response
+                parseXMLResponse();
+            } else {
+                reportError(FetchErrorType.HTTP, "Received no XML response");
+            }
+        }
+
+        @Override
+        public void onFailure(Call<ResponseBody> call, Throwable t) {
+            mHostCircuitBreaker.recordFailure(mHost, System.currentTimeMillis(), 0);
+            reportError(FetchErrorType.NETWORK, "Error fetching feed from network");
+        }
+
+        private void parseXMLResponse() {
+
+            ParsedFeed parsedFeed;
+
+            try {
+                // Create new XML parser (on Android ExpatPullParser is used)
+                XmlPullParser parser = mXmlParserFactory.newPullParser();
+
+                // Do not process namespaces
+                parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
+
+                // Set received response as input for the parser
+                parser.setInput(mXMLResponse, null);
+
+                // Extract feed title and posts in one pass
+                // (response body is already downloaded, so this is parsing only)
+                long parseStartTimeNanos = System.nanoTime();
+                parsedFeed = mFeedParser.parse(parser);
+                mFetchMetrics.recordStage(
+                        mFeedLink, FetchStage.PARSE, System.nanoTime() - parseStartTimeNanos);
+
+            } catch (XmlPullParserException | IOException e) {
+                reportErrorParsingXML();
+                return;
+            } catch (RuntimeException e) {
+                // Broken document can crash parser, and request must be finished anyway,
+                // otherwise the feed stays in flight forever and later fetches join dead request.
+                reportErrorParsingXML();
+                return;
+            } finally {
+                closeResponse();
+            }
+
+            mFeedTitle = parsedFeed.getTitle();
+
+            // If feed title is null or empty, report error
+            if (null == mFeedTitle || mFeedTitle.equals("")) {
+                reportErrorParsingXML();
+                return;
+            }
+
+            mRSSPosts = parsedFeed.getPosts();
+
+            if (null == mRSSPosts || mRSSPosts.size() == 0) {
+                reportErrorExtractingPosts();
+                return;
+            }
+
+            mFetchMetrics.recordItemsParsed(mFeedLink, mRSSPosts.size());
+
+            // Write extracted feed to storage in background.
+            // Success is reported after the write is committed.
+            mPersistStartTimeNanos = System.nanoTime();
+
+            try {
+                mFeedStore.updateFeedAsync(mFeedLink, mFeedTitle, mRSSPosts,
+                        mETag, mLastModified, parsedFeed.getRefreshHintMillis(), this);
+            } catch (RuntimeException e) {
+                // Storage is broken, not the feed (it doesn't go to backoff)
+                reportErrorSavingFeed();
+            }
+        }
+
+        // === FEEDSTORE CALLBACK =====
+
+        // Called after feed is written to storage
+        @Override
+        public void onFeedUpdated(String feedLink, FeedUpdateSummary summary) {
+
+            // Persist stage includes waiting for other feeds of the same group commit
+            mFetchMetrics.recordStage(
+                    mFeedLink, FetchStage.PERSIST, System.nanoTime() - mPersistStartTimeNanos);
+
+            if (summary != null) {
+                if (summary.getTransactionNanos() > 0) {
+                    mFetchMetrics.recordStage(
+                            mFeedLink, FetchStage.TRANSACTION, summary.getTransactionNanos());
+                }
+                if (summary.getPostBodyRawBytes() > 0) {
+                    mFetchMetrics.recordPostBodies(mFeedLink,
+                            summary.getPostBodyRawBytes(), summary.getPostBodyStoredBytes());
+                }
+                reportSuccess(summary);
+            } else {
+                reportErrorSavingFeed();
+            }
+        }
+
+        // Feed has not changed, if server responded 304 to validators set by the app,
+        // or if response cache served stored response (fresh or revalidated with 304).
+        private boolean isNotModified(Response<ResponseBody> response) {
+
+            if (response.code() == HTTP_NOT_MODIFIED) {
+                return true;
+            }
+
+            okhttp3.Response rawResponse = response.raw();
+            okhttp3.Response networkResponse = rawResponse.networkResponse();
+
+            return mHasStoredFeed
+                    && rawResponse.cacheResponse() != null
+                    && (null == networkResponse || networkResponse.code() == HTTP_NOT_MODIFIED);
+        }
+
+        private boolean isHostFailure(int code) {
+            return code == HTTP_TOO_MANY_REQUESTS || code >= HTTP_SERVER_ERROR;
+        }
+
+        private void closeResponse() {
+            try {
+                mXMLResponse.close();
+            } catch (IOException e) {
+                // Nothing to do, response is not needed anymore
+            }
+        }
+
+        // === REPORT SUCCESS OR ERROR =====
+
+        private void reportSuccess(FeedUpdateSummary summary) {
+            mFetchMetrics.recordStage(mFeedLink, FetchStage.TOTAL, System.nanoTime() - mStartTimeNanos);
+            mFetchMetrics.recordSuccess(mFeedLink, mNotModified);
+            finishRequest(this, true);
+            mEventBus.post(new FeedFetchSuccessEvent(mFeedLink, summary, getDurationMillis()));
+            notifyListeners(true);
+        }
+
+        private void reportError(FetchErrorType errorType, String errorMessage) {
+            mFetchMetrics.recordStage(mFeedLink, FetchStage.TOTAL, System.nanoTime() - mStartTimeNanos);
+            mFetchMetrics.recordError(mFeedLink, errorType);
+
+            // Postpone the next fetch of the feed, if request was really sent
+            // (storage errors are not problem of the feed).
+            if (errorType != FetchErrorType.INVALID_URL
+                    && errorType != FetchErrorType.HOST_UNAVAILABLE
+                    && errorType != FetchErrorType.STORAGE) {
+                mFeedStore.markFeedFailedAsync(mFeedLink, mRetryAfterMillis, null);
+            }
+
+            finishRequest(this, false);
+            if (mPostErrorEvent) {
+                mEventBus.post(new FeedFetchErrorEvent(mFeedLink, errorMessage, getDurationMillis()));
+            }
+            notifyListeners(false);
+        }
+
+        private long getDurationMillis() {
+            return (System.nanoTime() - mStartTimeNanos) / 1000000;
+        }
+
+        private void reportErrorExtractingPosts() {
+            reportError(FetchErrorType.NO_POSTS, "Error extracting feed posts");
+        }
+
+        private void reportErrorParsingXML() {
+            reportError(FetchErrorType.PARSE, "Error parsing XML");
+        }
+
+        private void reportErrorSavingFeed() {
+            reportError(FetchErrorType.STORAGE, "Error saving feed");
+        }
+
+        // Called after the request is finished, so listeners can't be added anymore
+        private void notifyListeners(boolean success) {
+            for (OnFeedFetchListener listener : mListeners) {
+                listener.onFeedFetched(mFeedLink, success);
+            }
+        }
+    }
+}
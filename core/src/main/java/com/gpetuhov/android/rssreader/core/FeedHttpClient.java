@@ -0,0 +1,62 @@
+package com.gpetuhov.android.rssreader.core;
+
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+
+// Configuration of the OkHttpClient shared by all feed fetches.
+// One client means one connection pool, so connections to the same host
+// are reused by the next fetches instead of doing DNS, TCP and TLS handshake again.
+// Dispatcher limits match the limits of FeedRefresher,
+// so bulk refresh is never queued twice.
+public class FeedHttpClient {
+
+    // Size limit of the response cache on disk
+    public static final long CACHE_SIZE_BYTES = 10 * 1024 * 1024;
+
+    // Idle connections are kept alive this long (servers usually close them sooner)
+    public static final long KEEP_ALIVE_MINUTES = 5;
+
+    public static final long CONNECT_TIMEOUT_SECONDS = 15;
+    public static final long READ_TIMEOUT_SECONDS = 20;
+    public static final long WRITE_TIMEOUT_SECONDS = 20;
+
+    // Whole call (including redirects and downloading the body) is cancelled after this
+    public static final long CALL_TIMEOUT_SECONDS = 60;
+
+    // Return builder of the client with shared configuration.
+    // If cacheDirectory is null, responses are not cached.
+    public static OkHttpClient.Builder newBuilder(File cacheDirectory) {
+
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(FeedRefresher.DEFAULT_MAX_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(FeedRefresher.DEFAULT_MAX_REQUESTS_PER_HOST);
+
+        // Keep idle connection for every request, that can run at the same time
+        ConnectionPool connectionPool =
+                new ConnectionPool(FeedRefresher.DEFAULT_MAX_REQUESTS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES);
+
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(connectionPool)
+                .connectTimeout(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .readTimeout(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .writeTimeout(WRITE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .callTimeout(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        if (cacheDirectory != null) {
+            // Responses are cached according to their Cache-Control headers.
+            // Cache revalidates stale responses with their validators
+            // (FeedFetcher doesn't set validators itself, if client has cache),
+            // and responses served from cache are treated by FeedFetcher as not modified.
+            builder.cache(new Cache(cacheDirectory, CACHE_SIZE_BYTES));
+        }
+
+        return builder;
+    }
+}
@@ -0,0 +1,294 @@
+package com.gpetuhov.android.rssreader.core;
+
+
+import com.gpetuhov.android.rssreader.core.data.FeedStore;
+import com.gpetuhov.android.rssreader.core.events.RefreshFinishedEvent;
+import com.gpetuhov.android.rssreader.core.events.RefreshProgressEvent;
+
+import org.greenrobot.eventbus.EventBus;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import okhttp3.HttpUrl;
+
+// Refreshes all RSS feeds in the storage at once.
+// Feeds are fetched in parallel, but no more than mMaxRequests at a time
+// and no more than mMaxRequestsPerHost at a time from the same host.
+// Every finished feed starts the next pending one,
+// so the whole refresh takes about as long as the slowest host.
+// Forced refresh requested while not forced one is running joins and upgrades it.
+public class FeedRefresher implements FeedFetcher.OnFeedFetchListener {
+
+    public static final int DEFAULT_MAX_REQUESTS = 16;
+    public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 4;
+
+    // Notified when refresh of all feeds is finished.
+    // Called in OkHttp background thread (or in the calling thread, if there is nothing to refresh).
+    public interface OnRefreshFinishedListener {
+        void onRefreshFinished(int totalCount, int failedCount);
+    }
+
+    private FeedFetcher mFeedFetcher;
+    private FeedStore mFeedStore;
+    private EventBus mEventBus;
+
+    // Concurrency limits
+    private int mMaxRequests = DEFAULT_MAX_REQUESTS;
+    private int mMaxRequestsPerHost = DEFAULT_MAX_REQUESTS_PER_HOST;
+
+    // Links of the feeds waiting to be fetched
+    private final List<String> mPendingLinks = new LinkedList<>();
+
+    // Number of running requests for every host
+    private final Map<String, Integer> mRunningPerHost = new HashMap<>();
+
+    // Start time of every running request by feed link
+    private final Map<String, Long> mStartTimesNanos = new HashMap<>();
+
+    private int mRunningCount;
+
+    // Progress of the current refresh
+    private int mTotalCount;
+    private int mCompletedCount;
+    private int mFailedCount;
+
+    // True if feeds of the current refresh are fetched even if they are still fresh
+    private boolean mForceRefresh;
+
+    // True while some thread is starting pending requests.
+    // Fetcher may call back synchronously (for skipped feeds),
+    // so requests are started in a loop by that thread instead of recursive calls.
+    private boolean mStartingRequests;
+
+    // Listeners of the current refresh
+    private final List<OnRefreshFinishedListener> mListeners = new ArrayList<>();
+
+    public FeedRefresher(FeedFetcher feedFetcher, FeedStore feedStore, EventBus eventBus) {
+        mFeedFetcher = feedFetcher;
+        mFeedStore = feedStore;
+        mEventBus = eventBus;
+    }
+
+    public synchronized void setMaxRequests(int maxRequests) {
+        if (maxRequests < 1) {
+            throw new IllegalArgumentException("maxRequests < 1: " + maxRequests);
+        }
+        mMaxRequests = maxRequests;
+    }
+
+    public synchronized void setMaxRequestsPerHost(int maxRequestsPerHost) {
+        if (maxRequestsPerHost < 1) {
+            throw new IllegalArgumentException("maxRequestsPerHost < 1: " + maxRequestsPerHost);
+        }
+        mMaxRequestsPerHost = maxRequestsPerHost;
+    }
+
+    public synchronized boolean isRefreshing() {
+        return mTotalCount > 0;
+    }
+
+    public void refreshAll(boolean forceRefresh) {
+        refreshAll(forceRefresh, null);
+    }
+
+    // Start refreshing all feeds in the storage.
+    // If forceRefresh is false, only feeds due according to their refresh schedules
+    // are fetched, and feeds fetched within freshness TTL are skipped.
+    // If refresh is already running, joins it with the listener.
+    // Forced refresh joining not forced one upgrades it:
+    // feeds, that are not pending or running, are added to it,
+    // and pending feeds are fetched even if they are still fresh.
+    public void refreshAll(boolean forceRefresh, OnRefreshFinishedListener listener) {
+
+        List<String> feedLinks = forceRefresh
+                ? mFeedStore.getFeedLinks()
+                : mFeedStore.getDueFeedLinks(System.currentTimeMillis());
+
+        boolean joined;
+
+        synchronized (this) {
+            joined = isRefreshing();
+
+            if (joined) {
+                // Join running refresh
+                if (listener != null) {
+                    mListeners.add(listener);
+                }
+
+                if (forceRefresh && !mForceRefresh) {
+                    upgradeToForceRefresh(feedLinks);
+                }
+
+            } else if (!feedLinks.isEmpty()) {
+                if (listener != null) {
+                    mListeners.add(listener);
+                }
+
+                mPendingLinks.addAll(feedLinks);
+                mTotalCount = feedLinks.size();
+                mCompletedCount = 0;
+                mFailedCount = 0;
+                mForceRefresh = forceRefresh;
+            }
+        }
+
+        if (!joined && feedLinks.isEmpty()) {
+            // Nothing to refresh
+            if (listener != null) {
+                listener.onRefreshFinished(0, 0);
+            }
+            return;
+        }
+
+        startPendingRequests();
+    }
+
+    // Add feeds, that are not pending or running, to the current refresh
+    // and fetch all pending feeds even if they are still fresh.
+    // Feeds already completed by the refresh could be skipped as fresh, so they are fetched again.
+    // Must be called with this lock held.
+    private void upgradeToForceRefresh(List<String> feedLinks) {
+
+        Set<String> queuedLinks = new HashSet<>(mPendingLinks);
+        queuedLinks.addAll(mStartTimesNanos.keySet());
+
+        for (String feedLink : feedLinks) {
+            if (queuedLinks.add(feedLink)) {
+                mPendingLinks.add(feedLink);
+                mTotalCount++;
+            }
+        }
+
+        mForceRefresh = true;
+    }
+
+    // Start as many pending requests as concurrency limits allow.
+    // If another thread is starting requests now, it starts these too,
+    // because it checks pending requests again after every batch.
+    private void startPendingRequests() {
+
+        synchronized (this) {
+            if (mStartingRequests) {
+                return;
+            }
+            mStartingRequests = true;
+        }
+
+        while (true) {
+            List<String> linksToStart = new ArrayList<>();
+            boolean forceRefresh;
+
+            synchronized (this) {
+                forceRefresh = mForceRefresh;
+
+                Iterator<String> iterator = mPendingLinks.iterator();
+
+                while (iterator.hasNext() && mRunningCount < mMaxRequests) {
+                    String feedLink = iterator.next();
+                    String host = getHost(feedLink);
+
+                    // Skip feeds of the hosts, that already have maximum number of running requests
+                    if (getRunningCount(host) < mMaxRequestsPerHost) {
+                        iterator.remove();
+                        mRunningPerHost.put(host, getRunningCount(host) + 1);
+                        mRunningCount++;
+                        mStartTimesNanos.put(feedLink, System.nanoTime());
+                        linksToStart.add(feedLink);
+                    }
+                }
+
+                if (linksToStart.isEmpty()) {
+                    // Nothing can start until running requests finish
+                    mStartingRequests = false;
+                    return;
+                }
+            }
+
+            // Requests are started outside of the lock,
+            // because listener may be called back in the same thread.
+            // Skipped feeds are completed right away, so their slots are reused by the next batch.
+            try {
+                for (String feedLink : linksToStart) {
+                    mFeedFetcher.fetchFeed(feedLink, forceRefresh, this);
+                }
+            } catch (RuntimeException e) {
+                // Let the next call start requests again
+                synchronized (this) {
+                    mStartingRequests = false;
+                }
+                throw e;
+            }
+        }
+    }
+
+    // Called in OkHttp background thread, when one feed is fetched
+    @Override
+    public void onFeedFetched(String feedLink, boolean success) {
+
+        RefreshProgressEvent progressEvent;
+        RefreshFinishedEvent finishedEvent = null;
+        List<OnRefreshFinishedListener> listeners = null;
+
+        synchronized (this) {
+            String host = getHost(feedLink);
+            int runningCount = getRunningCount(host) - 1;
+            if (runningCount > 0) {
+                mRunningPerHost.put(host, runningCount);
+            } else {
+                mRunningPerHost.remove(host);
+            }
+            mRunningCount--;
+
+            Long startTimeNanos = mStartTimesNanos.remove(feedLink);
+            long durationMillis = startTimeNanos != null
+                    ? (System.nanoTime() - startTimeNanos) / 1000000
+                    : 0;
+
+            mCompletedCount++;
+            if (!success) {
+                mFailedCount++;
+            }
+
+            progressEvent = new RefreshProgressEvent(
+                    feedLink, success, durationMillis, mCompletedCount, mTotalCount);
+
+            if (mCompletedCount == mTotalCount) {
+                finishedEvent = new RefreshFinishedEvent(mTotalCount, mFailedCount);
+                mTotalCount = 0;
+
+                listeners = new ArrayList<>(mListeners);
+                mListeners.clear();
+            }
+        }
+
+        mEventBus.post(progressEvent);
+
+        if (finishedEvent != null) {
+            mEventBus.post(finishedEvent);
+
+            for (OnRefreshFinishedListener listener : listeners) {
+                listener.onRefreshFinished(finishedEvent.getTotalCount(), finishedEvent.getFailedCount());
+            }
+        } else {
+            startPendingRequests();
+        }
+    }
+
+    private int getRunningCount(String host) {
+        Integer runningCount = mRunningPerHost.get(host);
+        return runningCount != null ? runningCount : 0;
+    }
+
+    // Return host of the feed link (or link itself, if it is not a valid URL)
+    private static String getHost(String feedLink) {
+        HttpUrl url = feedLink != null ? HttpUrl.parse(feedLink) : null;
+        return url != null ? url.host() : String.valueOf(feedLink);
+    }
+}
@@ -0,0 +1,106 @@
+package com.gpetuhov.android.rssreader.core;
+
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Stops sending requests to the host, that fails again and again.
+// After FAILURE_THRESHOLD failures in a row (network errors, timeouts, 5xx and 429 responses)
+// or after the host asks to retry later with Retry-After, the circuit opens
+// and requests to the host are rejected without network until the open time passes.
+// Then one trial request is let through: if it succeeds, the circuit closes,
+// if it fails, the circuit opens again for twice as long (up to MAX_OPEN_MILLIS).
+// Failures of requests, that were sent before the circuit opened and end while it is open,
+// belong to the same outage, so they don't open it again.
+// Any response from the host, that is not a server error, counts as success
+// (404 or invalid XML is the problem of the feed, not of the host).
+// State is kept in memory only: backoff of every failed feed is persisted
+// with its refresh schedule, so feeds of a dead host stay quiet after restart anyway.
+// Thread-safe.
+public class HostCircuitBreaker {
+
+    // Consecutive failures, that open the circuit
+    public static final int FAILURE_THRESHOLD = 3;
+
+    // Open time after the first opening, doubled after every next one up to the maximum
+    public static final long MIN_OPEN_MILLIS = 60 * 1000;
+    public static final long MAX_OPEN_MILLIS = 30 * 60 * 1000;
+
+    // Hosts with failures by host name (hosts without failures are not kept)
+    private final Map<String, HostState> mHosts = new HashMap<>();
+
+    private static class HostState {
+
+        // Failures in a row
+        private int mFailureCount;
+
+        // Number of times the circuit opened in a row (to double open time)
+        private int mOpenCount;
+
+        // Requests are rejected until this time (0 if the circuit is closed)
+        private long mOpenUntil;
+
+        // True if trial request after open time is running
+        private boolean mTrialRunning;
+    }
+
+    // Return true if request to the host can be sent now.
+    // After open time passes only one request is allowed, until its result is recorded.
+    public synchronized boolean allowRequest(String host, long now) {
+
+        HostState hostState = mHosts.get(host);
+
+        if (null == hostState || 0 == hostState.mOpenUntil) {
+            return true;
+        }
+
+        if (now < hostState.mOpenUntil || hostState.mTrialRunning) {
+            return false;
+        }
+
+        hostState.mTrialRunning = true;
+        return true;
+    }
+
+    // Host responded (circuit closes and failures are forgotten)
+    public synchronized void recordSuccess(String host) {
+        mHosts.remove(host);
+    }
+
+    // Request to the host failed.
+    // retryAfterMillis is delay requested by the host (0 if none), it opens the circuit right away.
+    public synchronized void recordFailure(String host, long now, long retryAfterMillis) {
+
+        HostState hostState = mHosts.get(host);
+
+        if (null == hostState) {
+            hostState = new HostState();
+            mHosts.put(host, hostState);
+        }
+
+        if (hostState.mOpenUntil != 0 && !hostState.mTrialRunning) {
+            // Circuit is already open (only later Retry-After can extend it)
+            hostState.mOpenUntil = Math.max(hostState.mOpenUntil, now + retryAfterMillis);
+            return;
+        }
+
+        hostState.mFailureCount++;
+        hostState.mTrialRunning = false;
+
+        if (hostState.mFailureCount >= FAILURE_THRESHOLD || retryAfterMillis > 0) {
+            hostState.mOpenCount++;
+
+            // Shift is limited, so that it can't overflow
+            long openMillis = MIN_OPEN_MILLIS << Math.min(hostState.mOpenCount - 1, 16);
+            openMillis = Math.min(openMillis, MAX_OPEN_MILLIS);
+
+            hostState.mOpenUntil = now + Math.max(openMillis, retryAfterMillis);
+        }
+    }
+
+    // Return true if requests to the host are rejected at provided time
+    public synchronized boolean isOpen(String host, long now) {
+        HostState hostState = mHosts.get(host);
+        return hostState != null && now < hostState.mOpenUntil;
+    }
+}
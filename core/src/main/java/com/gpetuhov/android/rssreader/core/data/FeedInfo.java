@@ -0,0 +1,65 @@
+package com.gpetuhov.android.rssreader.core.data;
+
+
+// Stored state of the feed, that is needed to fetch it (without posts)
+public class FeedInfo {
+
+    private String mLink;
+    private String mTitle;
+
+    // HTTP validators of the last fetched response (sent back in conditional GET)
+    private String mETag;
+    private String mLastModified;
+
+    // Time of the last successful fetch and time, when the feed must be fetched again
+    // (0 if the feed has never been fetched)
+    private long mLastFetchedAt;
+    private long mNextRefreshAt;
+
+    // Number of failed fetches since the last successful one
+    private int mFailureCount;
+
+    public FeedInfo(String link, String title, String eTag, String lastModified,
+                    long lastFetchedAt, long nextRefreshAt, int failureCount) {
+        mLink = link;
+        mTitle = title;
+        mETag = eTag;
+        mLastModified = lastModified;
+        mLastFetchedAt = lastFetchedAt;
+        mNextRefreshAt = nextRefreshAt;
+        mFailureCount = failureCount;
+    }
+
+    public String getLink() {
+        return mLink;
+    }
+
+    public String getTitle() {
+        return mTitle;
+    }
+
+    public String getETag() {
+        return mETag;
+    }
+
+    public String getLastModified() {
+        return mLastModified;
+    }
+
+    public long getLastFetchedAt() {
+        return mLastFetchedAt;
+    }
+
+    public long getNextRefreshAt() {
+        return mNextRefreshAt;
+    }
+
+    public int getFailureCount() {
+        return mFailureCount;
+    }
+
+    // Return true if the feed failed and must not be fetched before its next refresh time
+    public boolean isBackingOff(long now) {
+        return mFailureCount > 0 && now < mNextRefreshAt;
+    }
+}
@@ -0,0 +1,58 @@
+package com.gpetuhov.android.rssreader.core.data;
+
+
+// Post extracted from the feed XML.
+// Plain object without storage dependencies,
+// storage implementation copies it to its own model.
+public class FeedPost {
+
+    private String mTitle;
+    private String mDescription;
+
+    // Link to the post and its unique identifier in the feed (RSS guid or Atom id)
+    private String mLink;
+    private String mGuid;
+
+    // Publication date as it is written in the feed
+    private String mPubDate;
+
+    public String getTitle() {
+        return mTitle;
+    }
+
+    public void setTitle(String title) {
+        mTitle = title;
+    }
+
+    public String getDescription() {
+        return mDescription;
+    }
+
+    public void setDescription(String description) {
+        mDescription = description;
+    }
+
+    public String getLink() {
+        return mLink;
+    }
+
+    public void setLink(String link) {
+        mLink = link;
+    }
+
+    public String getGuid() {
+        return mGuid;
+    }
+
+    public void setGuid(String guid) {
+        mGuid = guid;
+    }
+
+    public String getPubDate() {
+        return mPubDate;
+    }
+
+    public void setPubDate(String pubDate) {
+        mPubDate = pubDate;
+    }
+}
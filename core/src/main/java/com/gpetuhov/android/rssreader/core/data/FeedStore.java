@@ -0,0 +1,49 @@
+package com.gpetuhov.android.rssreader.core.data;
+
+
+import java.util.List;
+
+// Storage of the fetched feeds used by fetch pipeline.
+// All methods can be called from any thread.
+public interface FeedStore {
+
+    // Notified, when feed update is committed (or failed).
+    // Summary of changes is null, if update failed.
+    interface OnFeedUpdateListener {
+        void onFeedUpdated(String feedLink, FeedUpdateSummary summary);
+    }
+
+    // Return links of all stored feeds
+    List<String> getFeedLinks();
+
+    // Return links of the feeds, that must be fetched at provided time
+    // according to their refresh schedules (see RefreshSchedule)
+    List<String> getDueFeedLinks(long now);
+
+    // Return stored state of the feed with provided link, or null if there is no such feed
+    FeedInfo getFeedInfo(String feedLink);
+
+    // Update feed with new title, posts and HTTP validators of the response,
+    // update its refresh schedule with the number of new posts and refresh hint of the feed
+    // (minimum refresh interval, 0 if none) and return summary of changes.
+    // If the feed does not exist, create it.
+    // Writes in the calling thread.
+    FeedUpdateSummary updateFeed(String feedLink, String newTitle, List<FeedPost> newPosts,
+                                 String eTag, String lastModified, long refreshHintMillis);
+
+    // Same as updateFeed(), but the write is performed in background.
+    // Listener is called after the update is committed.
+    void updateFeedAsync(String feedLink, String newTitle, List<FeedPost> newPosts,
+                         String eTag, String lastModified, long refreshHintMillis,
+                         OnFeedUpdateListener listener);
+
+    // Update refresh schedule of the feed, that has not changed since the previous fetch
+    // (HTTP 304), in background. Listener is called after the update is committed
+    // with empty summary (or null, if update failed).
+    void markFeedNotModifiedAsync(String feedLink, OnFeedUpdateListener listener);
+
+    // Postpone the next fetch of the feed after failed fetch (see RefreshSchedule.onFailed()),
+    // in background. retryAfterMillis is delay requested by server (0 if none).
+    // Listener may be null.
+    void markFeedFailedAsync(String feedLink, long retryAfterMillis, OnFeedUpdateListener listener);
+}
@@ -0,0 +1,80 @@
+package com.gpetuhov.android.rssreader.core.data;
+
+
+// Changes made in storage by one feed update
+public class FeedUpdateSummary {
+
+    // True if the feed was created or its title changed
+    private boolean mFeedChanged;
+
+    // Number of inserted, updated and removed posts
+    private int mNewPostCount;
+    private int mUpdatedPostCount;
+    private int mRemovedPostCount;
+
+    // Size of the bodies of inserted and updated posts before and after compression
+    private long mPostBodyRawBytes;
+    private long mPostBodyStoredBytes;
+
+    // Duration of the storage transaction, that committed the update (0 if unknown).
+    // With group commit it is shared by all feeds of the group.
+    private long mTransactionNanos;
+
+    public boolean isFeedChanged() {
+        return mFeedChanged;
+    }
+
+    public int getNewPostCount() {
+        return mNewPostCount;
+    }
+
+    public int getUpdatedPostCount() {
+        return mUpdatedPostCount;
+    }
+
+    public int getRemovedPostCount() {
+        return mRemovedPostCount;
+    }
+
+    public long getPostBodyRawBytes() {
+        return mPostBodyRawBytes;
+    }
+
+    public long getPostBodyStoredBytes() {
+        return mPostBodyStoredBytes;
+    }
+
+    public long getTransactionNanos() {
+        return mTransactionNanos;
+    }
+
+    // True if the update changed anything displayed in the lists
+    public boolean hasChanges() {
+        return mFeedChanged || mNewPostCount > 0 || mUpdatedPostCount > 0 || mRemovedPostCount > 0;
+    }
+
+    public void setFeedChanged() {
+        mFeedChanged = true;
+    }
+
+    public void addNewPost() {
+        mNewPostCount++;
+    }
+
+    public void addUpdatedPost() {
+        mUpdatedPostCount++;
+    }
+
+    public void addRemovedPosts(int count) {
+        mRemovedPostCount += count;
+    }
+
+    public void addPostBody(long rawBytes, long storedBytes) {
+        mPostBodyRawBytes += rawBytes;
+        mPostBodyStoredBytes += storedBytes;
+    }
+
+    public void setTransactionNanos(long transactionNanos) {
+        mTransactionNanos = transactionNanos;
+    }
+}
@@ -0,0 +1,277 @@
+package com.gpetuhov.android.rssreader.core.data;
+
+
+import com.gpetuhov.android.rssreader.core.utils.UtilsUrl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// FeedStore, that keeps feeds in memory.
+// Applies updates the same way as DataStorage in the app:
+// posts are matched by PostKey, new posts are inserted at the top in the order of the feed,
+// existing posts are updated only if changed, posts missing from the feed are kept
+// until they exceed per-feed limits of RetentionPolicy (total limit is not applied here).
+// Evicted posts are counted in the summary of the update.
+// Bodies of written posts are compressed like in DataStorage (only to count their sizes,
+// posts are kept as they are).
+// Used to test, benchmark and load-test fetch pipeline on JVM, where Realm is not available.
+public class MemoryFeedStore implements FeedStore {
+
+    // Stored feeds by normalized link (guarded by this)
+    private final Map<String, StoredFeed> mFeeds = new LinkedHashMap<>();
+
+    // Limits of stored posts (guarded by this)
+    private RetentionPolicy mRetentionPolicy = new RetentionPolicy();
+
+    public synchronized void setRetentionPolicy(RetentionPolicy retentionPolicy) {
+        mRetentionPolicy = retentionPolicy;
+    }
+
+    @Override
+    public synchronized List<String> getFeedLinks() {
+        return new ArrayList<>(mFeeds.keySet());
+    }
+
+    @Override
+    public synchronized List<String> getDueFeedLinks(long now) {
+
+        List<String> feedLinks = new ArrayList<>();
+
+        for (Map.Entry<String, StoredFeed> entry : mFeeds.entrySet()) {
+            if (entry.getValue().mSchedule.isDue(now)) {
+                feedLinks.add(entry.getKey());
+            }
+        }
+
+        return feedLinks;
+    }
+
+    @Override
+    public synchronized FeedInfo getFeedInfo(String feedLink) {
+
+        feedLink = UtilsUrl.normalizeFeedLink(feedLink);
+
+        StoredFeed storedFeed = mFeeds.get(feedLink);
+
+        if (storedFeed != null) {
+            return new FeedInfo(feedLink, storedFeed.mTitle,
+                    storedFeed.mETag, storedFeed.mLastModified,
+                    storedFeed.mSchedule.getLastFetchedAt(), storedFeed.mSchedule.getNextRefreshAt(),
+                    storedFeed.mSchedule.getFailureCount());
+        } else {
+            return null;
+        }
+    }
+
+    // Return copy of the list of posts in the feed with provided link
+    public synchronized List<FeedPost> getPosts(String feedLink) {
+
+        StoredFeed storedFeed = mFeeds.get(UtilsUrl.normalizeFeedLink(feedLink));
+
+        List<FeedPost> posts = new ArrayList<>();
+
+        if (storedFeed != null) {
+            for (FeedPost storedPost : storedFeed.mPosts) {
+                posts.add(copyPost(storedPost));
+            }
+        }
+
+        return posts;
+    }
+
+    @Override
+    public synchronized FeedUpdateSummary updateFeed(String feedLink, String newTitle,
+                                                     List<FeedPost> newPosts,
+                                                     String eTag, String lastModified,
+                                                     long refreshHintMillis) {
+
+        long startTimeNanos = System.nanoTime();
+
+        FeedUpdateSummary summary = new FeedUpdateSummary();
+
+        feedLink = UtilsUrl.normalizeFeedLink(feedLink);
+
+        StoredFeed storedFeed = mFeeds.get(feedLink);
+
+        if (null == storedFeed) {
+            storedFeed = new StoredFeed();
+            storedFeed.mTitle = newTitle;
+            mFeeds.put(feedLink, storedFeed);
+            summary.setFeedChanged();
+        } else if (!isEqual(storedFeed.mTitle, newTitle)) {
+            storedFeed.mTitle = newTitle;
+            summary.setFeedChanged();
+        }
+
+        storedFeed.mETag = eTag;
+        storedFeed.mLastModified = lastModified;
+
+        long now = System.currentTimeMillis();
+
+        int insertIndex = 0;
+
+        // Keys of the posts in this document
+        Set<String> postKeys = new HashSet<>();
+
+        for (FeedPost newPost : newPosts) {
+            String postKey = PostKey.of(newPost);
+            postKeys.add(postKey);
+
+            FeedPost storedPost = storedFeed.mPostsByKey.get(postKey);
+
+            if (null == storedPost) {
+                // Posts are copied, so that caller can't change stored data
+                storedPost = copyPost(newPost);
+                storedFeed.mPostsByKey.put(postKey, storedPost);
+                storedFeed.mStoredAtByKey.put(postKey, now);
+                storedFeed.mPosts.add(insertIndex, storedPost);
+                insertIndex++;
+                summary.addNewPost();
+                addPostBody(summary, newPost);
+
+            } else if (!hasSameContent(newPost, storedPost)) {
+                copyPostContent(newPost, storedPost);
+                summary.addUpdatedPost();
+                addPostBody(summary, newPost);
+            }
+        }
+
+        evictPosts(storedFeed, postKeys, now, summary);
+
+        storedFeed.mSchedule.onFetched(now, summary.getNewPostCount(), refreshHintMillis);
+
+        // Whole update is made under the store lock, which is the transaction here
+        summary.setTransactionNanos(System.nanoTime() - startTimeNanos);
+
+        return summary;
+    }
+
+    // Writes in the calling thread and notifies listener right away
+    @Override
+    public void updateFeedAsync(String feedLink, String newTitle, List<FeedPost> newPosts,
+                                String eTag, String lastModified, long refreshHintMillis,
+                                OnFeedUpdateListener listener) {
+
+        FeedUpdateSummary summary =
+                updateFeed(feedLink, newTitle, newPosts, eTag, lastModified, refreshHintMillis);
+
+        if (listener != null) {
+            listener.onFeedUpdated(UtilsUrl.normalizeFeedLink(feedLink), summary);
+        }
+    }
+
+    // Updates schedule in the calling thread and notifies listener right away
+    @Override
+    public void markFeedNotModifiedAsync(String feedLink, OnFeedUpdateListener listener) {
+
+        feedLink = UtilsUrl.normalizeFeedLink(feedLink);
+
+        synchronized (this) {
+            StoredFeed storedFeed = mFeeds.get(feedLink);
+
+            if (storedFeed != null) {
+                // Refresh hint of the previous document still applies
+                storedFeed.mSchedule.onFetched(System.currentTimeMillis(), 0, -1);
+            }
+        }
+
+        if (listener != null) {
+            listener.onFeedUpdated(feedLink, new FeedUpdateSummary());
+        }
+    }
+
+    // Updates schedule in the calling thread and notifies listener right away
+    @Override
+    public void markFeedFailedAsync(String feedLink, long retryAfterMillis,
+                                    OnFeedUpdateListener listener) {
+
+        feedLink = UtilsUrl.normalizeFeedLink(feedLink);
+
+        synchronized (this) {
+            StoredFeed storedFeed = mFeeds.get(feedLink);
+
+            if (storedFeed != null) {
+                storedFeed.mSchedule.onFailed(System.currentTimeMillis(), retryAfterMillis);
+            }
+        }
+
+        if (listener != null) {
+            listener.onFeedUpdated(feedLink, new FeedUpdateSummary());
+        }
+    }
+
+    // Evict the oldest posts of the feed, that exceed retention limits,
+    // except the posts of the current document
+    private void evictPosts(StoredFeed storedFeed, Set<String> postKeys, long now,
+                            FeedUpdateSummary summary) {
+
+        for (int i = storedFeed.mPosts.size() - 1; i >= 0; i--) {
+            String postKey = PostKey.of(storedFeed.mPosts.get(i));
+
+            if (!mRetentionPolicy.isEvicted(i, storedFeed.mStoredAtByKey.get(postKey), now)) {
+                // All newer posts are kept too
+                break;
+            }
+
+            if (!postKeys.contains(postKey)) {
+                storedFeed.mPosts.remove(i);
+                storedFeed.mPostsByKey.remove(postKey);
+                storedFeed.mStoredAtByKey.remove(postKey);
+                summary.addRemovedPosts(1);
+            }
+        }
+    }
+
+    private static FeedPost copyPost(FeedPost post) {
+        FeedPost copy = new FeedPost();
+        copyPostContent(post, copy);
+        return copy;
+    }
+
+    private static void copyPostContent(FeedPost from, FeedPost to) {
+        to.setTitle(from.getTitle());
+        to.setDescription(from.getDescription());
+        to.setLink(from.getLink());
+        to.setGuid(from.getGuid());
+        to.setPubDate(from.getPubDate());
+    }
+
+    private static void addPostBody(FeedUpdateSummary summary, FeedPost post) {
+        byte[] encoded = PostBodyCodec.encode(post.getDescription());
+        if (encoded != null) {
+            summary.addPostBody(PostBodyCodec.getRawSize(post.getDescription()), encoded.length);
+        }
+    }
+
+    private static boolean hasSameContent(FeedPost first, FeedPost second) {
+        return isEqual(first.getTitle(), second.getTitle())
+                && isEqual(first.getDescription(), second.getDescription())
+                && isEqual(first.getLink(), second.getLink())
+                && isEqual(first.getGuid(), second.getGuid());
+    }
+
+    private static boolean isEqual(String first, String second) {
+        return first == null ? second == null : first.equals(second);
+    }
+
+    // Feed kept in memory
+    private static class StoredFeed {
+        private String mTitle;
+        private String mETag;
+        private String mLastModified;
+
+        private final RefreshSchedule mSchedule = new RefreshSchedule();
+
+        // Posts in display order and the same posts by key
+        private final List<FeedPost> mPosts = new ArrayList<>();
+        private final Map<String, FeedPost> mPostsByKey = new HashMap<>();
+
+        // Time when every post was stored, by key
+        private final Map<String, Long> mStoredAtByKey = new HashMap<>();
+    }
+}
@@ -0,0 +1,174 @@
+package com.gpetuhov.android.rssreader.core.data;
+
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Compresses HTML descriptions of the posts for storage.
+// Bodies are deflated with preset dictionary of markup, that is common in feeds,
+// so that even short bodies (too short to repeat anything themselves) shrink.
+// The first byte of encoded body is its format, so bodies written
+// with another dictionary or without compression can be read too.
+// Bodies, that don't get smaller, are stored as UTF-8.
+public class PostBodyCodec {
+
+    // Formats of encoded body (never change existing values, they are stored)
+    public static final byte FORMAT_UTF8 = 0;
+    public static final byte FORMAT_DEFLATE = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Strings, that are used the most, are at the end of the dictionary
+    // (Deflate finds matches at shorter distances cheaper).
+    private static final byte[] DICTIONARY = (
+            "<table><tbody><tr><td></td></tr></tbody></table><blockquote></blockquote>"
+            + "<pre><code></code></pre><h1></h1><h2></h2><h3></h3><h4></h4>"
+            + "<ol><li></li></ol><ul><li></li></ul><em></em><i></i><b></b>"
+            + "<strong></strong><span></span><div></div><figure></figure><figcaption></figcaption>"
+            + "<iframe src=\"https://www.youtube.com/embed/\" frameborder=\"0\" allowfullscreen></iframe>"
+            + " width=\"\" height=\"\" style=\"\" class=\"\" id=\"\" title=\"\" target=\"_blank\" rel=\"nofollow\""
+            + "<br><br/><br />&nbsp;&quot;&amp;&lt;&gt;&laquo;&raquo;&mdash;&ndash;&hellip;"
+            + " the of and to in is for that with on as are this by from at you it be was "
+            + "Read more Continue reading The post appeared first on "
+            + "<img src=\"https://\" alt=\"\" /><a href=\"https://\">Read more</a>"
+            + "</p><p></p>\n<p><a href=\"https://</a></p><p><img src=\"https://"
+    ).getBytes(UTF_8);
+
+    // Level doesn't matter much for speed of decompression, and bodies are compressed once
+    private static final int COMPRESSION_LEVEL = Deflater.BEST_COMPRESSION;
+
+    private PostBodyCodec() {
+    }
+
+    // Return encoded body of provided description (null for null)
+    public static byte[] encode(String description) {
+
+        if (null == description) {
+            return null;
+        }
+
+        byte[] raw = description.getBytes(UTF_8);
+
+        Deflater deflater = new Deflater(COMPRESSION_LEVEL);
+
+        try {
+            deflater.setDictionary(DICTIONARY);
+            deflater.setInput(raw);
+            deflater.finish();
+
+            // Compressed body is useless, if it is not smaller than raw one
+            byte[] buffer = new byte[raw.length + 1];
+            buffer[0] = FORMAT_DEFLATE;
+            int length = 1;
+
+            while (!deflater.finished() && length < buffer.length) {
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+
+            if (deflater.finished() && length < buffer.length) {
+                return Arrays.copyOf(buffer, length);
+            }
+        } finally {
+            // Native memory of Deflater is released only here
+            deflater.end();
+        }
+
+        byte[] encoded = new byte[raw.length + 1];
+        encoded[0] = FORMAT_UTF8;
+        System.arraycopy(raw, 0, encoded, 1, raw.length);
+        return encoded;
+    }
+
+    // Return description decoded from provided body (null for null).
+    // Throws IllegalArgumentException, if the body is corrupted or has unknown format.
+    public static String decode(byte[] encoded) {
+
+        if (null == encoded) {
+            return null;
+        }
+
+        if (0 == encoded.length) {
+            throw new IllegalArgumentException("Empty post body");
+        }
+
+        switch (encoded[0]) {
+            case FORMAT_UTF8:
+                return new String(encoded, 1, encoded.length - 1, UTF_8);
+
+            case FORMAT_DEFLATE:
+                return new String(inflate(encoded), UTF_8);
+
+            default:
+                throw new IllegalArgumentException("Unknown format of post body: " + encoded[0]);
+        }
+    }
+
+    // Return number of bytes in UTF-8 representation of the description
+    // (without encoding it).
+    public static int getRawSize(String description) {
+
+        if (null == description) {
+            return 0;
+        }
+
+        int size = 0;
+
+        for (int i = 0; i < description.length(); i++) {
+            char c = description.charAt(i);
+
+            if (c < 0x80) {
+                size += 1;
+            } else if (c < 0x800) {
+                size += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < description.length()
+                    && Character.isLowSurrogate(description.charAt(i + 1))) {
+                // Supplementary character takes 4 bytes for both chars of the pair
+                size += 4;
+                i++;
+            } else {
+                // Unpaired surrogate is encoded as '?'
+                boolean isSurrogate = c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE;
+                size += isSurrogate ? 1 : 3;
+            }
+        }
+
+        return size;
+    }
+
+    private static byte[] inflate(byte[] encoded) {
+
+        Inflater inflater = new Inflater();
+
+        try {
+            inflater.setInput(encoded, 1, encoded.length - 1);
+
+            // HTML usually shrinks several times
+            ByteArrayOutputStream output = new ByteArrayOutputStream(encoded.length * 4);
+            byte[] buffer = new byte[4096];
+
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+
+                if (0 == length) {
+                    if (inflater.needsDictionary()) {
+                        inflater.setDictionary(DICTIONARY);
+                    } else if (inflater.needsInput()) {
+                        throw new IllegalArgumentException("Truncated post body");
+                    }
+                }
+
+                output.write(buffer, 0, length);
+            }
+
+            return output.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupted post body", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
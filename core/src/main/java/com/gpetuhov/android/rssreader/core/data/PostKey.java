@@ -0,0 +1,49 @@
+package com.gpetuhov.android.rssreader.core.data;
+
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// Builds stable identity of the post inside its feed.
+// Guid is preferred, then link.
+// If the post has neither, hash of its title and description is used.
+public class PostKey {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private PostKey() {
+    }
+
+    public static String of(String guid, String link, String title, String description) {
+        if (guid != null && !guid.equals("")) {
+            return "guid:" + guid;
+        } else if (link != null && !link.equals("")) {
+            return "link:" + link;
+        } else {
+            return "hash:" + sha1(title + "\n" + description);
+        }
+    }
+
+    public static String of(FeedPost post) {
+        return of(post.getGuid(), post.getLink(), post.getTitle(), post.getDescription());
+    }
+
+    private static String sha1(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(text.getBytes("UTF-8"));
+
+            char[] hex = new char[hash.length * 2];
+            for (int i = 0; i < hash.length; i++) {
+                hex[i * 2] = HEX_DIGITS[(hash[i] >> 4) & 0xf];
+                hex[i * 2 + 1] = HEX_DIGITS[hash[i] & 0xf];
+            }
+            return new String(hex);
+
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            // SHA-1 and UTF-8 are supported on every platform
+            throw new IllegalStateException(e);
+        }
+    }
+}
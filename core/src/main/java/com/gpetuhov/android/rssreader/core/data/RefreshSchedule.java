@@ -0,0 +1,159 @@
+package com.gpetuhov.android.rssreader.core.data;
+
+
+// Refresh schedule of one feed, adapted to how often the feed publishes new posts.
+// After every successful fetch the average interval between new posts is updated
+// (exponentially weighted, so the schedule follows changes of the feed),
+// and the next refresh is planned one such interval later.
+// Feed, that has not published anything for longer than usual, is polled less often.
+// Refresh hint of the feed (RSS <ttl> or <sy:updatePeriod>) is the minimum interval.
+// After failed fetch the next one is postponed with exponential backoff
+// (or until time requested by server with Retry-After, if it is later).
+// Storage keeps the fields and calls onFetched() inside of the same write as the feed update.
+public class RefreshSchedule {
+
+    // Interval limits (background sync runs every 30 minutes, so it can't be shorter)
+    public static final long MIN_REFRESH_INTERVAL_MILLIS = 30 * 60 * 1000;
+    public static final long MAX_REFRESH_INTERVAL_MILLIS = 24 * 60 * 60 * 1000;
+
+    // Interval of the feed with no history of new posts yet
+    public static final long DEFAULT_REFRESH_INTERVAL_MILLIS = 60 * 60 * 1000;
+
+    // Backoff after the first failure, doubled after every next one up to the maximum
+    public static final long MIN_BACKOFF_MILLIS = MIN_REFRESH_INTERVAL_MILLIS;
+    public static final long MAX_BACKOFF_MILLIS = MAX_REFRESH_INTERVAL_MILLIS;
+
+    // Retry-After longer than this is not trusted
+    public static final long MAX_RETRY_AFTER_MILLIS = 7 * MAX_REFRESH_INTERVAL_MILLIS;
+
+    // Weight of the latest observed interval in the average
+    private static final double POST_INTERVAL_WEIGHT = 0.3;
+
+    // Time of the last successful fetch and of the last fetch, that brought new posts
+    private long mLastFetchedAt;
+    private long mLastNewPostAt;
+
+    // Average interval between new posts (0 if unknown)
+    private long mPostIntervalMillis;
+
+    // Minimum interval requested by the feed (0 if none)
+    private long mRefreshHintMillis;
+
+    // Feed must be fetched after this time (0 means right away)
+    private long mNextRefreshAt;
+
+    // Number of failed fetches since the last successful one
+    private int mFailureCount;
+
+    public RefreshSchedule() {
+    }
+
+    public RefreshSchedule(long lastFetchedAt, long lastNewPostAt, long postIntervalMillis,
+                           long refreshHintMillis, long nextRefreshAt, int failureCount) {
+        mLastFetchedAt = lastFetchedAt;
+        mLastNewPostAt = lastNewPostAt;
+        mPostIntervalMillis = postIntervalMillis;
+        mRefreshHintMillis = refreshHintMillis;
+        mNextRefreshAt = nextRefreshAt;
+        mFailureCount = failureCount;
+    }
+
+    // Update schedule after successful fetch, that brought newPostCount new posts.
+    // Refresh hint of the fetched document replaces the previous one
+    // (negative value keeps the previous hint, when there is no document, like with HTTP 304).
+    public void onFetched(long now, int newPostCount, long refreshHintMillis) {
+
+        if (refreshHintMillis >= 0) {
+            mRefreshHintMillis = refreshHintMillis;
+        }
+
+        if (newPostCount > 0) {
+            // The first fetch only marks the start of the history
+            // (posts of the first fetch were published at unknown times).
+            if (mLastNewPostAt > 0 && now > mLastNewPostAt) {
+                long observedIntervalMillis = (now - mLastNewPostAt) / newPostCount;
+
+                if (mPostIntervalMillis > 0) {
+                    mPostIntervalMillis = (long) (POST_INTERVAL_WEIGHT * observedIntervalMillis
+                            + (1 - POST_INTERVAL_WEIGHT) * mPostIntervalMillis);
+                } else {
+                    mPostIntervalMillis = observedIntervalMillis;
+                }
+            }
+
+            mLastNewPostAt = now;
+        }
+
+        mLastFetchedAt = now;
+        mFailureCount = 0;
+        mNextRefreshAt = now + getRefreshIntervalMillis(now);
+    }
+
+    // Postpone the next fetch after failed one.
+    // retryAfterMillis is delay requested by server (0 if none).
+    public void onFailed(long now, long retryAfterMillis) {
+
+        mFailureCount++;
+
+        // Shift is limited, so that it can't overflow
+        long backoffMillis = MIN_BACKOFF_MILLIS << Math.min(mFailureCount - 1, 16);
+        backoffMillis = Math.min(backoffMillis, MAX_BACKOFF_MILLIS);
+
+        backoffMillis = Math.max(backoffMillis, Math.min(retryAfterMillis, MAX_RETRY_AFTER_MILLIS));
+
+        mNextRefreshAt = now + backoffMillis;
+    }
+
+    // Return true if the feed failed and its backoff has not passed yet
+    public boolean isBackingOff(long now) {
+        return mFailureCount > 0 && !isDue(now);
+    }
+
+    // Return interval between the fetch made now and the next one
+    public long getRefreshIntervalMillis(long now) {
+
+        long intervalMillis;
+
+        if (mPostIntervalMillis > 0) {
+            // If the feed is silent for much longer than usual, it has slowed down
+            long silenceMillis = mLastNewPostAt > 0 ? now - mLastNewPostAt : 0;
+            intervalMillis = Math.max(mPostIntervalMillis, silenceMillis / 2);
+        } else {
+            intervalMillis = DEFAULT_REFRESH_INTERVAL_MILLIS;
+        }
+
+        // Do not poll more often, than the feed asks
+        intervalMillis = Math.max(intervalMillis, mRefreshHintMillis);
+
+        return Math.min(Math.max(intervalMillis, MIN_REFRESH_INTERVAL_MILLIS), MAX_REFRESH_INTERVAL_MILLIS);
+    }
+
+    // Return true if the feed must be fetched at provided time
+    public boolean isDue(long now) {
+        return now >= mNextRefreshAt;
+    }
+
+    public long getLastFetchedAt() {
+        return mLastFetchedAt;
+    }
+
+    public long getLastNewPostAt() {
+        return mLastNewPostAt;
+    }
+
+    public long getPostIntervalMillis() {
+        return mPostIntervalMillis;
+    }
+
+    public long getRefreshHintMillis() {
+        return mRefreshHintMillis;
+    }
+
+    public long getNextRefreshAt() {
+        return mNextRefreshAt;
+    }
+
+    public int getFailureCount() {
+        return mFailureCount;
+    }
+}
@@ -0,0 +1,63 @@
+package com.gpetuhov.android.rssreader.core.data;
+
+
+// Limits of stored posts: number of posts of one feed, age of the post
+// (since it was stored) and total number of posts of all feeds.
+// Posts of the feed are evicted from the oldest one on every feed update,
+// posts of all feeds are evicted from the oldest ones, when total limit is exceeded.
+// Posts still present in the latest fetched document of the feed are never evicted
+// (otherwise they would be stored again as new on the next fetch).
+// Total limit is a number of posts, not a size budget in bytes:
+// bodies are compressed (see PostBodyCodec), so their stored sizes are close to each other,
+// and number of posts is known without reading them, while total size would have to be
+// summed over all bodies after every write.
+// Limit of 0 means no limit.
+public class RetentionPolicy {
+
+    public static final int DEFAULT_MAX_POSTS_PER_FEED = 200;
+    public static final long DEFAULT_MAX_POST_AGE_MILLIS = 30L * 24 * 60 * 60 * 1000;
+    public static final int DEFAULT_MAX_TOTAL_POSTS = 5000;
+
+    private final int mMaxPostsPerFeed;
+    private final long mMaxPostAgeMillis;
+    private final int mMaxTotalPosts;
+
+    public RetentionPolicy() {
+        this(DEFAULT_MAX_POSTS_PER_FEED, DEFAULT_MAX_POST_AGE_MILLIS, DEFAULT_MAX_TOTAL_POSTS);
+    }
+
+    public RetentionPolicy(int maxPostsPerFeed, long maxPostAgeMillis, int maxTotalPosts) {
+        mMaxPostsPerFeed = maxPostsPerFeed;
+        mMaxPostAgeMillis = maxPostAgeMillis;
+        mMaxTotalPosts = maxTotalPosts;
+    }
+
+    // Return true if the post at provided position of the feed (0 is the newest),
+    // stored at provided time, exceeds per-feed limits.
+    // Posts of the feed are ordered from the newest to the oldest,
+    // so if this returns false, it returns false for all posts above too.
+    public boolean isEvicted(int index, long storedAt, long now) {
+        return (mMaxPostsPerFeed > 0 && index >= mMaxPostsPerFeed)
+                || (mMaxPostAgeMillis > 0 && now - storedAt > mMaxPostAgeMillis);
+    }
+
+    // Return number of posts to evict from all feeds, if there are totalPostCount of them
+    // (posts of the latest documents are not evicted, so fewer posts may be evicted)
+    public int getExcessPostCount(long totalPostCount) {
+        return mMaxTotalPosts > 0 && totalPostCount > mMaxTotalPosts
+                ? (int) (totalPostCount - mMaxTotalPosts)
+                : 0;
+    }
+
+    public int getMaxPostsPerFeed() {
+        return mMaxPostsPerFeed;
+    }
+
+    public long getMaxPostAgeMillis() {
+        return mMaxPostAgeMillis;
+    }
+
+    public int getMaxTotalPosts() {
+        return mMaxTotalPosts;
+    }
+}
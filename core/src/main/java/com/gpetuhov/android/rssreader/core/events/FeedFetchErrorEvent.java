@@ -0,0 +1,29 @@
+package com.gpetuhov.android.rssreader.core.events;
+
+// Signals of error during feed fetching
+public class FeedFetchErrorEvent {
+
+    private String mFeedLink;
+    private String mErrorMessage;
+    private long mDurationMillis;
+
+    public FeedFetchErrorEvent(String feedLink, String errorMessage, long durationMillis) {
+        mFeedLink = feedLink;
+        mErrorMessage = errorMessage;
+        mDurationMillis = durationMillis;
+    }
+
+    // Normalized link of the feed
+    public String getFeedLink() {
+        return mFeedLink;
+    }
+
+    public String getErrorMessage() {
+        return mErrorMessage;
+    }
+
+    // Time from the start of fetching till the error
+    public long getDurationMillis() {
+        return mDurationMillis;
+    }
+}
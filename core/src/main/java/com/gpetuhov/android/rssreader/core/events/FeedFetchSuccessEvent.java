@@ -0,0 +1,51 @@
+package com.gpetuhov.android.rssreader.core.events;
+
+import com.gpetuhov.android.rssreader.core.data.FeedUpdateSummary;
+
+// Signals of successfully fetched feed.
+// Carries link of the feed and changes made in storage,
+// so that subscribers can skip events of the feeds they don't display.
+public class FeedFetchSuccessEvent {
+
+    private String mFeedLink;
+    private FeedUpdateSummary mSummary;
+    private long mDurationMillis;
+
+    public FeedFetchSuccessEvent(String feedLink, FeedUpdateSummary summary, long durationMillis) {
+        mFeedLink = feedLink;
+        mSummary = summary;
+        mDurationMillis = durationMillis;
+    }
+
+    // Normalized link of the feed
+    public String getFeedLink() {
+        return mFeedLink;
+    }
+
+    // True if the feed was created or its title changed
+    public boolean isFeedChanged() {
+        return mSummary.isFeedChanged();
+    }
+
+    public int getNewPostCount() {
+        return mSummary.getNewPostCount();
+    }
+
+    public int getUpdatedPostCount() {
+        return mSummary.getUpdatedPostCount();
+    }
+
+    public int getRemovedPostCount() {
+        return mSummary.getRemovedPostCount();
+    }
+
+    // False if the feed has not changed (or server returned 304 Not Modified)
+    public boolean hasChanges() {
+        return mSummary.hasChanges();
+    }
+
+    // Time from the start of fetching till the feed is written to storage
+    public long getDurationMillis() {
+        return mDurationMillis;
+    }
+}
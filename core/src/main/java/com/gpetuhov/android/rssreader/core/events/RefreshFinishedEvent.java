@@ -0,0 +1,22 @@
+package com.gpetuhov.android.rssreader.core.events;
+
+
+// Signals that refresh of all feeds is finished
+public class RefreshFinishedEvent {
+
+    private int mTotalCount;
+    private int mFailedCount;
+
+    public RefreshFinishedEvent(int totalCount, int failedCount) {
+        mTotalCount = totalCount;
+        mFailedCount = failedCount;
+    }
+
+    public int getTotalCount() {
+        return mTotalCount;
+    }
+
+    public int getFailedCount() {
+        return mFailedCount;
+    }
+}
@@ -0,0 +1,44 @@
+package com.gpetuhov.android.rssreader.core.events;
+
+
+// Signals that one feed of refresh all is fetched (successfully or not)
+public class RefreshProgressEvent {
+
+    private String mFeedLink;
+    private boolean mSuccess;
+
+    // Time from the start of the fetch of this feed till its end (including storage write)
+    private long mDurationMillis;
+
+    private int mCompletedCount;
+    private int mTotalCount;
+
+    public RefreshProgressEvent(String feedLink, boolean success, long durationMillis,
+                                int completedCount, int totalCount) {
+        mFeedLink = feedLink;
+        mSuccess = success;
+        mDurationMillis = durationMillis;
+        mCompletedCount = completedCount;
+        mTotalCount = totalCount;
+    }
+
+    public String getFeedLink() {
+        return mFeedLink;
+    }
+
+    public boolean isSuccess() {
+        return mSuccess;
+    }
+
+    public long getDurationMillis() {
+        return mDurationMillis;
+    }
+
+    public int getCompletedCount() {
+        return mCompletedCount;
+    }
+
+    public int getTotalCount() {
+        return mTotalCount;
+    }
+}
@@ -0,0 +1,165 @@
+package com.gpetuhov.android.rssreader.core.metrics;
+
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Timings and counters of the fetches of one feed (or of all feeds together).
+// Thread-safe.
+public class FeedMetrics {
+
+    private final Map<FetchStage, Histogram> mStageHistograms = new EnumMap<>(FetchStage.class);
+    private final Map<FetchErrorType, Long> mErrorCounts = new EnumMap<>(FetchErrorType.class);
+
+    private long mSuccessCount;
+    private long mNotModifiedCount;
+    private long mBytesReceived;
+    private long mItemsParsed;
+
+    // Size of the written post bodies before and after compression
+    private long mPostBodyRawBytes;
+    private long mPostBodyStoredBytes;
+
+    public FeedMetrics() {
+        for (FetchStage stage : FetchStage.values()) {
+            mStageHistograms.put(stage, new Histogram());
+        }
+    }
+
+    // === RECORDING =====
+
+    public void recordStage(FetchStage stage, long durationNanos) {
+        // Histograms are thread-safe themselves
+        mStageHistograms.get(stage).record(durationNanos);
+    }
+
+    public synchronized void recordSuccess(boolean notModified) {
+        mSuccessCount++;
+        if (notModified) {
+            mNotModifiedCount++;
+        }
+    }
+
+    public synchronized void recordError(FetchErrorType errorType) {
+        mErrorCounts.put(errorType, getErrorCount(errorType) + 1);
+    }
+
+    public synchronized void recordBytesReceived(long byteCount) {
+        mBytesReceived += byteCount;
+    }
+
+    public synchronized void recordItemsParsed(int itemCount) {
+        mItemsParsed += itemCount;
+    }
+
+    public synchronized void recordPostBodies(long rawBytes, long storedBytes) {
+        mPostBodyRawBytes += rawBytes;
+        mPostBodyStoredBytes += storedBytes;
+    }
+
+    public synchronized void reset() {
+        for (Histogram histogram : mStageHistograms.values()) {
+            histogram.reset();
+        }
+        mErrorCounts.clear();
+        mSuccessCount = 0;
+        mNotModifiedCount = 0;
+        mBytesReceived = 0;
+        mItemsParsed = 0;
+        mPostBodyRawBytes = 0;
+        mPostBodyStoredBytes = 0;
+    }
+
+    // === GETTERS =====
+
+    public Histogram getStageHistogram(FetchStage stage) {
+        return mStageHistograms.get(stage);
+    }
+
+    public synchronized long getFetchCount() {
+        return mSuccessCount + getErrorCount();
+    }
+
+    public synchronized long getSuccessCount() {
+        return mSuccessCount;
+    }
+
+    public synchronized long getNotModifiedCount() {
+        return mNotModifiedCount;
+    }
+
+    public synchronized long getErrorCount() {
+        long errorCount = 0;
+        for (long count : mErrorCounts.values()) {
+            errorCount += count;
+        }
+        return errorCount;
+    }
+
+    public synchronized long getErrorCount(FetchErrorType errorType) {
+        Long errorCount = mErrorCounts.get(errorType);
+        return errorCount != null ? errorCount : 0;
+    }
+
+    public synchronized long getBytesReceived() {
+        return mBytesReceived;
+    }
+
+    public synchronized long getItemsParsed() {
+        return mItemsParsed;
+    }
+
+    public synchronized long getPostBodyRawBytes() {
+        return mPostBodyRawBytes;
+    }
+
+    public synchronized long getPostBodyStoredBytes() {
+        return mPostBodyStoredBytes;
+    }
+
+    // === TEXT SNAPSHOT =====
+
+    // Append counters and table of stage timings to the text snapshot
+    public synchronized void dump(StringBuilder builder) {
+
+        builder.append(String.format(Locale.US,
+                "fetches %d, succeeded %d (not modified %d), failed %d%n",
+                getFetchCount(), mSuccessCount, mNotModifiedCount, getErrorCount()));
+
+        if (getErrorCount() > 0) {
+            builder.append("errors:");
+            for (FetchErrorType errorType : FetchErrorType.values()) {
+                if (getErrorCount(errorType) > 0) {
+                    builder.append(String.format(Locale.US,
+                            " %s %d", errorType.getLabel(), getErrorCount(errorType)));
+                }
+            }
+            builder.append(String.format("%n"));
+        }
+
+        builder.append(String.format(Locale.US,
+                "received %.1f KB, parsed %d items%n", mBytesReceived / 1024.0, mItemsParsed));
+
+        if (mPostBodyRawBytes > 0) {
+            builder.append(String.format(Locale.US,
+                    "post bodies %.1f KB stored as %.1f KB (%.1fx smaller)%n",
+                    mPostBodyRawBytes / 1024.0, mPostBodyStoredBytes / 1024.0,
+                    (double) mPostBodyRawBytes / Math.max(mPostBodyStoredBytes, 1)));
+        }
+
+        builder.append(String.format(Locale.US, "%-12s %6s %9s %9s %9s %9s %9s%n",
+                "stage, ms", "count", "mean", "p50", "p90", "p99", "max"));
+
+        for (FetchStage stage : FetchStage.values()) {
+            Histogram histogram = mStageHistograms.get(stage);
+
+            if (histogram.getCount() > 0) {
+                builder.append(String.format(Locale.US, "%-12s %6d %9.1f %9.1f %9.1f %9.1f %9.1f%n",
+                        stage.getLabel(), histogram.getCount(), histogram.getMeanMillis(),
+                        histogram.getPercentileMillis(50), histogram.getPercentileMillis(90),
+                        histogram.getPercentileMillis(99), histogram.getMaxMillis()));
+            }
+        }
+    }
+}
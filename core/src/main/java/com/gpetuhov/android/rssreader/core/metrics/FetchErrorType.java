@@ -0,0 +1,37 @@
+package com.gpetuhov.android.rssreader.core.metrics;
+
+
+// Reasons of failed feed fetches
+public enum FetchErrorType {
+
+    // Link of the feed is not a valid HTTP URL
+    INVALID_URL("invalid url"),
+
+    // Request failed (no connection, timeout, connection reset)
+    NETWORK("network"),
+
+    // Server responded with error or without body
+    HTTP("http"),
+
+    // Request was not sent, because the host failed too many times recently
+    HOST_UNAVAILABLE("host unavailable"),
+
+    // Response is not a valid feed XML
+    PARSE("parse"),
+
+    // Feed has no posts
+    NO_POSTS("no posts"),
+
+    // Feed could not be written to storage
+    STORAGE("storage");
+
+    private final String mLabel;
+
+    FetchErrorType(String label) {
+        mLabel = label;
+    }
+
+    public String getLabel() {
+        return mLabel;
+    }
+}
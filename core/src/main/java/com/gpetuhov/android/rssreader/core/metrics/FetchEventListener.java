@@ -0,0 +1,94 @@
+package com.gpetuhov.android.rssreader.core.metrics;
+
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+// Records network stages of one OkHttp call into FetchMetrics.
+// New instance is created for every call (see FetchMetrics.getEventListenerFactory()).
+// DNS and connect stages are missing, if pooled connection is reused.
+// Events of one call come in order, but may come in different threads,
+// so start times are volatile.
+class FetchEventListener extends EventListener {
+
+    private final FetchMetrics mFetchMetrics;
+
+    private volatile long mDnsStartNanos;
+    private volatile long mConnectStartNanos;
+    private volatile long mRequestStartNanos;
+    private volatile long mResponseBodyStartNanos;
+
+    FetchEventListener(FetchMetrics fetchMetrics) {
+        mFetchMetrics = fetchMetrics;
+    }
+
+    @Override
+    public void dnsStart(Call call, String domainName) {
+        mDnsStartNanos = System.nanoTime();
+    }
+
+    @Override
+    public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+        recordStage(call, FetchStage.DNS, mDnsStartNanos);
+    }
+
+    @Override
+    public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+        mConnectStartNanos = System.nanoTime();
+    }
+
+    @Override
+    public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+        recordStage(call, FetchStage.CONNECT, mConnectStartNanos);
+    }
+
+    @Override
+    public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy,
+                              Protocol protocol, IOException ioe) {
+        recordStage(call, FetchStage.CONNECT, mConnectStartNanos);
+    }
+
+    @Override
+    public void requestHeadersStart(Call call) {
+        mRequestStartNanos = System.nanoTime();
+    }
+
+    // Time to first byte is time from sending the request to receiving the response headers
+    // (responseHeadersStart comes before OkHttp starts waiting for them, so it can't be used)
+    @Override
+    public void responseHeadersEnd(Call call, Response response) {
+        recordStage(call, FetchStage.TIME_TO_FIRST_BYTE, mRequestStartNanos);
+    }
+
+    @Override
+    public void responseBodyStart(Call call) {
+        mResponseBodyStartNanos = System.nanoTime();
+    }
+
+    @Override
+    public void responseBodyEnd(Call call, long byteCount) {
+        recordStage(call, FetchStage.DOWNLOAD, mResponseBodyStartNanos);
+        mFetchMetrics.recordBytesReceived(getFeedLink(call), byteCount);
+    }
+
+    private void recordStage(Call call, FetchStage stage, long startNanos) {
+        // Start event may be missing (for example, if the call was retried on another connection)
+        if (startNanos != 0) {
+            mFetchMetrics.recordStage(getFeedLink(call), stage, System.nanoTime() - startNanos);
+        }
+    }
+
+    private static String getFeedLink(Call call) {
+        Request request = call.request();
+        return request.url().toString();
+    }
+}
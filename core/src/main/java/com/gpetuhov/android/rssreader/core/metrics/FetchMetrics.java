@@ -0,0 +1,134 @@
+package com.gpetuhov.android.rssreader.core.metrics;
+
+
+import com.gpetuhov.android.rssreader.core.utils.UtilsUrl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+
+// Collects timings and counters of the feed fetches, for every feed and for all feeds together.
+// Network stages are recorded by FetchEventListener (set to OkHttpClient
+// with getEventListenerFactory()), parse and persist stages are recorded by FeedFetcher.
+// Everything is kept in memory since the start of the app (or the last reset).
+// Thread-safe.
+public class FetchMetrics {
+
+    private final FeedMetrics mGlobalMetrics = new FeedMetrics();
+
+    // Metrics of every feed by normalized link (guarded by itself)
+    private final Map<String, FeedMetrics> mFeedMetrics = new HashMap<>();
+
+    // Return factory, that creates listener of OkHttp events for every call
+    public EventListener.Factory getEventListenerFactory() {
+        return new EventListener.Factory() {
+            @Override
+            public EventListener create(Call call) {
+                return new FetchEventListener(FetchMetrics.this);
+            }
+        };
+    }
+
+    // === RECORDING =====
+
+    public void recordStage(String feedLink, FetchStage stage, long durationNanos) {
+        mGlobalMetrics.recordStage(stage, durationNanos);
+        getOrCreateFeedMetrics(feedLink).recordStage(stage, durationNanos);
+    }
+
+    public void recordSuccess(String feedLink, boolean notModified) {
+        mGlobalMetrics.recordSuccess(notModified);
+        getOrCreateFeedMetrics(feedLink).recordSuccess(notModified);
+    }
+
+    public void recordError(String feedLink, FetchErrorType errorType) {
+        mGlobalMetrics.recordError(errorType);
+        getOrCreateFeedMetrics(feedLink).recordError(errorType);
+    }
+
+    public void recordBytesReceived(String feedLink, long byteCount) {
+        mGlobalMetrics.recordBytesReceived(byteCount);
+        getOrCreateFeedMetrics(feedLink).recordBytesReceived(byteCount);
+    }
+
+    public void recordItemsParsed(String feedLink, int itemCount) {
+        mGlobalMetrics.recordItemsParsed(itemCount);
+        getOrCreateFeedMetrics(feedLink).recordItemsParsed(itemCount);
+    }
+
+    public void recordPostBodies(String feedLink, long rawBytes, long storedBytes) {
+        mGlobalMetrics.recordPostBodies(rawBytes, storedBytes);
+        getOrCreateFeedMetrics(feedLink).recordPostBodies(rawBytes, storedBytes);
+    }
+
+    // === GETTERS =====
+
+    public FeedMetrics getGlobalMetrics() {
+        return mGlobalMetrics;
+    }
+
+    // Return metrics of the feed with provided link, or null if it has not been fetched
+    public FeedMetrics getFeedMetrics(String feedLink) {
+        synchronized (mFeedMetrics) {
+            return mFeedMetrics.get(UtilsUrl.normalizeFeedLink(feedLink));
+        }
+    }
+
+    // Forget everything recorded so far
+    public void reset() {
+        synchronized (mFeedMetrics) {
+            mFeedMetrics.clear();
+        }
+        mGlobalMetrics.reset();
+    }
+
+    // === TEXT SNAPSHOT =====
+
+    // Return text snapshot of all metrics: all feeds together, then every feed
+    public String dump() {
+
+        StringBuilder builder = new StringBuilder();
+
+        builder.append("== All feeds ==").append(String.format("%n"));
+        mGlobalMetrics.dump(builder);
+
+        List<String> feedLinks;
+        synchronized (mFeedMetrics) {
+            feedLinks = new ArrayList<>(mFeedMetrics.keySet());
+        }
+        Collections.sort(feedLinks);
+
+        for (String feedLink : feedLinks) {
+            FeedMetrics feedMetrics = getFeedMetrics(feedLink);
+
+            if (feedMetrics != null) {
+                builder.append(String.format("%n== %s ==%n", feedLink));
+                feedMetrics.dump(builder);
+            }
+        }
+
+        return builder.toString();
+    }
+
+    private FeedMetrics getOrCreateFeedMetrics(String feedLink) {
+
+        // Feeds are identified by normalized link (the same as in storage)
+        String normalizedFeedLink = UtilsUrl.normalizeFeedLink(feedLink);
+
+        synchronized (mFeedMetrics) {
+            FeedMetrics feedMetrics = mFeedMetrics.get(normalizedFeedLink);
+
+            if (null == feedMetrics) {
+                feedMetrics = new FeedMetrics();
+                mFeedMetrics.put(normalizedFeedLink, feedMetrics);
+            }
+
+            return feedMetrics;
+        }
+    }
+}
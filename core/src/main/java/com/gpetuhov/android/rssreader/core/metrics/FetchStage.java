@@ -0,0 +1,41 @@
+package com.gpetuhov.android.rssreader.core.metrics;
+
+
+// Stages of the feed fetch, that are timed separately
+public enum FetchStage {
+
+    // Resolving host name of the feed
+    DNS("dns"),
+
+    // Opening connection (including TLS handshake)
+    CONNECT("connect"),
+
+    // From sending request till the first byte of the response headers
+    TIME_TO_FIRST_BYTE("ttfb"),
+
+    // Receiving response body
+    DOWNLOAD("download"),
+
+    // Parsing XML of the feed
+    PARSE("parse"),
+
+    // From passing parsed feed to storage till the update is committed
+    // (includes waiting for other updates of the same group commit)
+    PERSIST("persist"),
+
+    // Storage transaction, that wrote the update
+    TRANSACTION("transaction"),
+
+    // Entire fetch from the start of the request till the result is reported
+    TOTAL("total");
+
+    private final String mLabel;
+
+    FetchStage(String label) {
+        mLabel = label;
+    }
+
+    public String getLabel() {
+        return mLabel;
+    }
+}
@@ -0,0 +1,85 @@
+package com.gpetuhov.android.rssreader.core.metrics;
+
+
+// Histogram of durations with fixed exponential buckets from 0.1 ms to 30 s.
+// Keeps only bucket counts, sum and maximum, so memory doesn't grow with number of values.
+// Percentiles are estimated as upper bound of the bucket, that contains them.
+// Thread-safe.
+public class Histogram {
+
+    // Upper bounds of the buckets in microseconds (the last bucket has no upper bound)
+    private static final long[] BUCKET_BOUNDS_MICROS = {
+            100, 200, 500,
+            1000, 2000, 5000,
+            10000, 20000, 50000,
+            100000, 200000, 500000,
+            1000000, 2000000, 5000000,
+            10000000, 30000000
+    };
+
+    private final long[] mBucketCounts = new long[BUCKET_BOUNDS_MICROS.length + 1];
+
+    private long mCount;
+    private long mSumNanos;
+    private long mMaxNanos;
+
+    public synchronized void record(long durationNanos) {
+
+        long durationMicros = durationNanos / 1000;
+
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS_MICROS.length && durationMicros > BUCKET_BOUNDS_MICROS[bucket]) {
+            bucket++;
+        }
+
+        mBucketCounts[bucket]++;
+        mCount++;
+        mSumNanos += durationNanos;
+        mMaxNanos = Math.max(mMaxNanos, durationNanos);
+    }
+
+    public synchronized void reset() {
+        for (int bucket = 0; bucket < mBucketCounts.length; bucket++) {
+            mBucketCounts[bucket] = 0;
+        }
+        mCount = 0;
+        mSumNanos = 0;
+        mMaxNanos = 0;
+    }
+
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+    public synchronized double getMeanMillis() {
+        return mCount > 0 ? mSumNanos / 1000000.0 / mCount : 0;
+    }
+
+    public synchronized double getMaxMillis() {
+        return mMaxNanos / 1000000.0;
+    }
+
+    // Return estimated percentile (0 - 100) in milliseconds, or 0 if there are no values
+    public synchronized double getPercentileMillis(double percent) {
+
+        if (0 == mCount) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percent / 100.0 * mCount));
+
+        long count = 0;
+
+        for (int bucket = 0; bucket < BUCKET_BOUNDS_MICROS.length; bucket++) {
+            count += mBucketCounts[bucket];
+
+            if (count >= rank) {
+                // Bucket bound can't be greater than the largest value
+                return Math.min(BUCKET_BOUNDS_MICROS[bucket] / 1000.0, getMaxMillis());
+            }
+        }
+
+        // Value is in the last bucket, that has no upper bound
+        return getMaxMillis();
+    }
+}
@@ -0,0 +1,354 @@
+package com.gpetuhov.android.rssreader.core.parser;
+
+
+import com.gpetuhov.android.rssreader.core.data.FeedPost;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Single-pass parser of RSS 2.0, RSS 1.0 (RDF) and Atom feeds.
+// Every event of the document is read exactly once:
+// the parser keeps track of the current item and the current field
+// and collects feed title and all post fields in one traversal.
+// Expects parser with namespace processing turned off
+// (namespaced tags are matched by their prefixed names, like "dc:date").
+// Refresh hint of the feed is collected from RSS <ttl> and Syndication module
+// <sy:updatePeriod> and <sy:updateFrequency>.
+// Parser has no state between calls and can be shared between threads.
+public class FeedParser {
+
+    // Priority of the tags, that can hold post description.
+    // Tag with higher priority wins, if item has several of them.
+    private static final int PRIORITY_NONE = 0;
+    private static final int PRIORITY_CONTENT_ENCODED = 1;
+    private static final int PRIORITY_SUMMARY = 2;
+    private static final int PRIORITY_DESCRIPTION = 3;
+
+    // Fields of the post, collected from text of the tags
+    private static final int FIELD_NONE = 0;
+    private static final int FIELD_FEED_TITLE = 1;
+    private static final int FIELD_TITLE = 2;
+    private static final int FIELD_DESCRIPTION = 3;
+    private static final int FIELD_LINK = 4;
+    private static final int FIELD_GUID = 5;
+    private static final int FIELD_PUB_DATE = 6;
+    private static final int FIELD_TTL = 7;
+    private static final int FIELD_UPDATE_PERIOD = 8;
+    private static final int FIELD_UPDATE_FREQUENCY = 9;
+
+    private static final long MINUTE_MILLIS = 60 * 1000;
+    private static final long HOUR_MILLIS = 60 * MINUTE_MILLIS;
+    private static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+
+    // Parse entire document
+    public ParsedFeed parse(XmlPullParser parser) throws XmlPullParserException, IOException {
+
+        String feedTitle = null;
+        List<FeedPost> posts = new ArrayList<>();
+
+        // Refresh hints of the feed (raw values of the tags)
+        String ttl = null;
+        String updatePeriod = null;
+        String updateFrequency = null;
+
+        // Post being collected (null outside of item) and depth of its item tag
+        FeedPost post = null;
+        int itemDepth = 0;
+        int descriptionPriority = PRIORITY_NONE;
+
+        // Field being collected, its depth and text
+        int field = FIELD_NONE;
+        int fieldDepth = 0;
+        int fieldPriority = PRIORITY_NONE;
+        StringBuilder text = new StringBuilder();
+
+        int event = parser.getEventType();
+
+        while (event != XmlPullParser.END_DOCUMENT) {
+
+            if (event == XmlPullParser.START_TAG) {
+
+                // Tags nested inside of a field (like XHTML in Atom content) are skipped,
+                // only their text is collected.
+                if (field == FIELD_NONE) {
+                    String name = parser.getName();
+
+                    if (null == post && isItemTag(name)) {
+                        // Start of the new post.
+                        // RSS 1.0 items keep their identity in rdf:about attribute.
+                        post = new FeedPost();
+                        post.setGuid(parser.getAttributeValue(null, "rdf:about"));
+                        itemDepth = parser.getDepth();
+                        descriptionPriority = PRIORITY_NONE;
+
+                    } else if (post != null) {
+                        // Only direct children of the item are post fields
+                        // (Atom <source> and <author> have their own titles, links and ids).
+                        if (parser.getDepth() == itemDepth + 1) {
+                            String href = parser.getAttributeValue(null, "href");
+
+                            if ("link".equals(name) && href != null) {
+                                // Atom link keeps URL in attribute.
+                                // Only alternate link (the default one) points to the post.
+                                String rel = parser.getAttributeValue(null, "rel");
+                                if (null == rel || "alternate".equals(rel)) {
+                                    post.setLink(href.trim());
+                                }
+                            } else {
+                                field = getPostField(name);
+                                fieldPriority = getDescriptionPriority(name);
+                            }
+                        }
+
+                    } else if (null == feedTitle && "title".equals(name)) {
+                        field = FIELD_FEED_TITLE;
+                    } else {
+                        field = getFeedField(name);
+                    }
+
+                    if (field != FIELD_NONE) {
+                        fieldDepth = parser.getDepth();
+                        text.setLength(0);
+                    }
+                }
+
+            } else if (event == XmlPullParser.TEXT) {
+                if (field != FIELD_NONE) {
+                    text.append(parser.getText());
+                }
+
+            } else if (event == XmlPullParser.END_TAG) {
+
+                if (field != FIELD_NONE) {
+                    // End of the field is the end tag at the same depth as its start tag
+                    if (parser.getDepth() == fieldDepth) {
+                        String value = text.toString().trim();
+
+                        if (field == FIELD_FEED_TITLE) {
+                            feedTitle = value;
+                        } else if (field == FIELD_TTL) {
+                            ttl = value;
+                        } else if (field == FIELD_UPDATE_PERIOD) {
+                            updatePeriod = value;
+                        } else if (field == FIELD_UPDATE_FREQUENCY) {
+                            updateFrequency = value;
+                        } else if (field == FIELD_DESCRIPTION) {
+                            if (fieldPriority > descriptionPriority && !value.equals("")) {
+                                post.setDescription(value);
+                                descriptionPriority = fieldPriority;
+                            }
+                        } else {
+                            setPostField(post, field, value);
+                        }
+
+                        field = FIELD_NONE;
+                    }
+
+                } else if (post != null && parser.getDepth() == itemDepth) {
+                    // End of the post.
+                    // Post is valid, if it has at least title or description.
+                    if (post.getTitle() != null || post.getDescription() != null) {
+                        if (null == post.getTitle()) {
+                            post.setTitle("");
+                        }
+                        if (null == post.getDescription()) {
+                            post.setDescription("");
+                        }
+                        posts.add(post);
+                    }
+                    post = null;
+                }
+            }
+
+            event = parser.next();
+        }
+
+        return new ParsedFeed(feedTitle != null ? feedTitle : "", posts,
+                getRefreshHintMillis(ttl, updatePeriod, updateFrequency));
+    }
+
+    // Parse document only until feed title is found.
+    // Return empty string if there is no feed title.
+    public String parseTitle(XmlPullParser parser) throws XmlPullParserException, IOException {
+
+        int event = parser.getEventType();
+
+        while (event != XmlPullParser.END_DOCUMENT) {
+
+            if (event == XmlPullParser.START_TAG) {
+                String name = parser.getName();
+
+                if ("title".equals(name)) {
+                    return readText(parser);
+                } else if (isItemTag(name)) {
+                    // Items go after feed title, so there is no title in this feed
+                    return "";
+                }
+            }
+
+            event = parser.next();
+        }
+
+        return "";
+    }
+
+    // Read text of the current tag including text of the nested tags
+    private String readText(XmlPullParser parser) throws XmlPullParserException, IOException {
+
+        int depth = parser.getDepth();
+        StringBuilder text = new StringBuilder();
+
+        int event = parser.next();
+
+        while (event != XmlPullParser.END_DOCUMENT
+                && !(event == XmlPullParser.END_TAG && parser.getDepth() == depth)) {
+
+            if (event == XmlPullParser.TEXT) {
+                text.append(parser.getText());
+            }
+
+            event = parser.next();
+        }
+
+        return text.toString().trim();
+    }
+
+    // RSS uses <item>, Atom uses <entry>
+    private static boolean isItemTag(String name) {
+        return "item".equals(name) || "entry".equals(name);
+    }
+
+    // Return field of the feed (outside of items), that is kept in the tag with provided name
+    private static int getFeedField(String name) {
+        switch (name) {
+            case "ttl":
+                return FIELD_TTL;
+            case "sy:updatePeriod":
+                return FIELD_UPDATE_PERIOD;
+            case "sy:updateFrequency":
+                return FIELD_UPDATE_FREQUENCY;
+            default:
+                return FIELD_NONE;
+        }
+    }
+
+    // Return minimum refresh interval requested by the feed, or 0 if there is no valid hint.
+    // <ttl> is in minutes. <sy:updatePeriod> is the period, during which the feed
+    // is updated <sy:updateFrequency> times (once, if frequency is missing).
+    // If both are present, the longer interval wins.
+    private static long getRefreshHintMillis(String ttl, String updatePeriod, String updateFrequency) {
+
+        long ttlMillis = parsePositiveLong(ttl) * MINUTE_MILLIS;
+
+        long periodMillis = 0;
+
+        if (updatePeriod != null) {
+            switch (updatePeriod) {
+                case "hourly":
+                    periodMillis = HOUR_MILLIS;
+                    break;
+                case "daily":
+                    periodMillis = DAY_MILLIS;
+                    break;
+                case "weekly":
+                    periodMillis = 7 * DAY_MILLIS;
+                    break;
+                case "monthly":
+                    periodMillis = 30 * DAY_MILLIS;
+                    break;
+                case "yearly":
+                    periodMillis = 365 * DAY_MILLIS;
+                    break;
+            }
+        }
+
+        long frequency = updateFrequency != null ? parsePositiveLong(updateFrequency) : 1;
+
+        long updatePeriodMillis = frequency > 0 ? periodMillis / frequency : 0;
+
+        return Math.max(ttlMillis, updatePeriodMillis);
+    }
+
+    // Return value of the positive number, or 0 if it is not a positive number
+    private static long parsePositiveLong(String value) {
+
+        if (null == value) {
+            return 0;
+        }
+
+        try {
+            return Math.max(0, Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // Return field of the post, that is kept in the tag with provided name
+    private static int getPostField(String name) {
+        switch (name) {
+            case "title":
+                return FIELD_TITLE;
+            case "description":
+            case "summary":
+            case "content":
+            case "content:encoded":
+                return FIELD_DESCRIPTION;
+            case "link":
+                return FIELD_LINK;
+            case "guid":
+            case "id":
+                return FIELD_GUID;
+            case "pubDate":
+            case "published":
+            case "updated":
+            case "dc:date":
+                return FIELD_PUB_DATE;
+            default:
+                return FIELD_NONE;
+        }
+    }
+
+    private static int getDescriptionPriority(String name) {
+        switch (name) {
+            case "description":
+            case "content":
+                return PRIORITY_DESCRIPTION;
+            case "summary":
+                return PRIORITY_SUMMARY;
+            case "content:encoded":
+                return PRIORITY_CONTENT_ENCODED;
+            default:
+                return PRIORITY_NONE;
+        }
+    }
+
+    private static void setPostField(FeedPost post, int field, String value) {
+
+        // Empty tags do not override values
+        if (value.equals("")) {
+            return;
+        }
+
+        switch (field) {
+            case FIELD_TITLE:
+                post.setTitle(value);
+                break;
+            case FIELD_LINK:
+                post.setLink(value);
+                break;
+            case FIELD_GUID:
+                post.setGuid(value);
+                break;
+            case FIELD_PUB_DATE:
+                // The first date in the item wins
+                if (null == post.getPubDate()) {
+                    post.setPubDate(value);
+                }
+                break;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.gpetuhov.android.rssreader.core.parser;
+
+
+import com.gpetuhov.android.rssreader.core.data.FeedPost;
+
+import java.util.List;
+
+// Result of parsing of one feed XML document
+public class ParsedFeed {
+
+    private String mTitle;
+    private List<FeedPost> mPosts;
+
+    // Minimum refresh interval requested by the feed (0 if none)
+    private long mRefreshHintMillis;
+
+    public ParsedFeed(String title, List<FeedPost> posts, long refreshHintMillis) {
+        mTitle = title;
+        mPosts = posts;
+        mRefreshHintMillis = refreshHintMillis;
+    }
+
+    public String getTitle() {
+        return mTitle;
+    }
+
+    public List<FeedPost> getPosts() {
+        return mPosts;
+    }
+
+    public long getRefreshHintMillis() {
+        return mRefreshHintMillis;
+    }
+}
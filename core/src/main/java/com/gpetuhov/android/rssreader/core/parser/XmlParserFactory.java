@@ -0,0 +1,12 @@
+package com.gpetuhov.android.rssreader.core.parser;
+
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+// Creates XML pull parsers for the fetched feeds.
+// Android provides its own parser implementation,
+// while on JVM any XmlPullParser implementation (for example, kXML) can be used.
+public interface XmlParserFactory {
+    XmlPullParser newPullParser() throws XmlPullParserException;
+}
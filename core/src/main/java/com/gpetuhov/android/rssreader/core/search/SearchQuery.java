@@ -0,0 +1,65 @@
+package com.gpetuhov.android.rssreader.core.search;
+
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+// Search query typed by the user, split into terms of the search index.
+// Post matches the query, if it has all of its terms.
+// While the user is typing, the last word may be incomplete,
+// so if the query doesn't end with a separator, its last term is a prefix
+// (post matches, if it has any term starting with it).
+// Prefix shorter than MIN_PREFIX_LENGTH would match too many terms,
+// so such word must be present exactly.
+public class SearchQuery {
+
+    public static final int MIN_PREFIX_LENGTH = 3;
+
+    // Terms, that must be present exactly
+    private final List<String> mTerms;
+
+    // Beginning of the last term (null if the last word is complete)
+    private final String mPrefix;
+
+    private SearchQuery(List<String> terms, String prefix) {
+        mTerms = terms;
+        mPrefix = prefix;
+    }
+
+    public static SearchQuery parse(String query) {
+
+        Set<String> terms = new LinkedHashSet<>();
+        SearchTokenizer.addTerms(query, terms);
+
+        List<String> termList = new ArrayList<>(terms);
+        String prefix = null;
+
+        if (!termList.isEmpty() && query.length() > 0
+                && Character.isLetterOrDigit(query.charAt(query.length() - 1))) {
+            String lastTerm = termList.get(termList.size() - 1);
+
+            // Last word may be too short or too long to be a term
+            if (SearchTokenizer.normalize(query).endsWith(lastTerm)
+                    && lastTerm.length() >= MIN_PREFIX_LENGTH) {
+                prefix = termList.remove(termList.size() - 1);
+            }
+        }
+
+        return new SearchQuery(termList, prefix);
+    }
+
+    public List<String> getTerms() {
+        return mTerms;
+    }
+
+    public String getPrefix() {
+        return mPrefix;
+    }
+
+    // Return true if the query has nothing to search for
+    public boolean isEmpty() {
+        return mTerms.isEmpty() && null == mPrefix;
+    }
+}
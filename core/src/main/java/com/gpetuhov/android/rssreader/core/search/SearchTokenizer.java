@@ -0,0 +1,82 @@
+package com.gpetuhov.android.rssreader.core.search;
+
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+// Splits text of the post into terms of the search index.
+// Term is a lower case run of letters and digits. HTML tags and entities
+// of the description are skipped, so markup is not indexed.
+// Very short and very long tokens (like hashes in links) are not indexed,
+// and number of terms of one post is limited, so that a huge post can't bloat the index.
+// Queries are split the same way (see SearchQuery), so they match indexed terms.
+public class SearchTokenizer {
+
+    public static final int MIN_TERM_LENGTH = 2;
+    public static final int MAX_TERM_LENGTH = 32;
+
+    // Maximum number of distinct terms of one post
+    public static final int MAX_TERMS = 1000;
+
+    // Return distinct terms of the post title and description in the order of appearance
+    public static Set<String> getTerms(String title, String description) {
+        Set<String> terms = new LinkedHashSet<>();
+        addTerms(title, terms);
+        addTerms(description, terms);
+        return terms;
+    }
+
+    // Add terms of the text to the set (until it has MAX_TERMS terms)
+    public static void addTerms(String text, Set<String> terms) {
+
+        if (null == text) {
+            return;
+        }
+
+        int length = text.length();
+        int tokenStart = -1;
+        int i = 0;
+
+        while (i <= length && terms.size() < MAX_TERMS) {
+            char c = i < length ? text.charAt(i) : ' ';
+
+            if (Character.isLetterOrDigit(c)) {
+                if (tokenStart < 0) {
+                    tokenStart = i;
+                }
+                i++;
+                continue;
+            }
+
+            // Token ends at any other character
+            if (tokenStart >= 0) {
+                addTerm(text.substring(tokenStart, i), terms);
+                tokenStart = -1;
+            }
+
+            if ('<' == c) {
+                // Skip HTML tag with its attributes
+                int tagEnd = text.indexOf('>', i);
+                i = tagEnd >= 0 ? tagEnd + 1 : length + 1;
+            } else if ('&' == c) {
+                // Skip HTML entity (like &amp; or &#8212;), if it is one
+                int entityEnd = text.indexOf(';', i);
+                i = entityEnd >= 0 && entityEnd - i <= 10 ? entityEnd + 1 : i + 1;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    // Return text in the form of the index term
+    static String normalize(String token) {
+        return token.toLowerCase(Locale.ROOT);
+    }
+
+    private static void addTerm(String token, Set<String> terms) {
+        if (token.length() >= MIN_TERM_LENGTH && token.length() <= MAX_TERM_LENGTH) {
+            terms.add(normalize(token));
+        }
+    }
+}
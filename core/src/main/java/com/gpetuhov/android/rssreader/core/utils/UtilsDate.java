@@ -0,0 +1,238 @@
+package com.gpetuhov.android.rssreader.core.utils;
+
+
+import java.util.Locale;
+
+// Date utilities.
+// Dates of the posts are parsed by hand, because SimpleDateFormat is slow,
+// is not thread-safe and accepts only one of the many variants, that are found in feeds.
+public class UtilsDate {
+
+    private static final String[] MONTHS = {
+            "jan", "feb", "mar", "apr", "may", "jun", "jul", "aug", "sep", "oct", "nov", "dec"
+    };
+
+    private static final long MINUTE_MILLIS = 60 * 1000;
+    private static final long DAY_MILLIS = 24 * 60 * MINUTE_MILLIS;
+
+    // Return time of the date written in RSS (RFC 822, like "Tue, 21 Mar 2017 11:17:55 GMT")
+    // or Atom (RFC 3339, like "2017-03-21T11:17:55.123+03:00") format in milliseconds since epoch,
+    // or 0 if the date can't be parsed.
+    // Date without time zone is treated as UTC.
+    public static long parseDate(String date) {
+
+        if (null == date) {
+            return 0;
+        }
+
+        String trimmedDate = date.trim();
+
+        if (trimmedDate.length() >= 10 && trimmedDate.charAt(4) == '-') {
+            return parseIsoDate(trimmedDate);
+        } else {
+            return parseRfc822Date(trimmedDate);
+        }
+    }
+
+    // "2017-03-21T11:17:55.123+03:00" (time, seconds, fraction and zone are optional)
+    private static long parseIsoDate(String date) {
+
+        int year = parseNumber(date, 0, 4);
+        int month = parseNumber(date, 5, 7);
+        int day = parseNumber(date, 8, 10);
+
+        if (date.charAt(7) != '-') {
+            return 0;
+        }
+
+        int hour = 0;
+        int minute = 0;
+        int second = 0;
+        int position = 10;
+
+        if (position < date.length() && (date.charAt(position) == 'T' || date.charAt(position) == ' ')) {
+            hour = parseNumber(date, position + 1, position + 3);
+            minute = parseNumber(date, position + 4, position + 6);
+            if (position + 3 >= date.length() || date.charAt(position + 3) != ':') {
+                return 0;
+            }
+            position += 6;
+
+            if (position < date.length() && date.charAt(position) == ':') {
+                second = parseNumber(date, position + 1, position + 3);
+                position += 3;
+
+                // Fraction of the second is ignored
+                if (position < date.length() && date.charAt(position) == '.') {
+                    position++;
+                    while (position < date.length() && Character.isDigit(date.charAt(position))) {
+                        position++;
+                    }
+                }
+            }
+        }
+
+        long offsetMillis = parseZoneOffset(date.substring(Math.min(position, date.length())).trim());
+
+        return toEpochMillis(year, month, day, hour, minute, second, offsetMillis);
+    }
+
+    // "Tue, 21 Mar 2017 11:17:55 GMT" (day of week, seconds and zone are optional)
+    private static long parseRfc822Date(String date) {
+
+        String[] tokens = date.split("[\\s,]+");
+
+        int index = 0;
+
+        // Skip day of week
+        if (index < tokens.length && !tokens[index].isEmpty()
+                && Character.isLetter(tokens[index].charAt(0))) {
+            index++;
+        }
+
+        if (tokens.length < index + 4) {
+            return 0;
+        }
+
+        int day = parseNumber(tokens[index], 0, tokens[index].length());
+        int month = parseMonth(tokens[index + 1]);
+        int year = parseNumber(tokens[index + 2], 0, tokens[index + 2].length());
+
+        // Two-digit years are from RFC 822 times
+        if (year >= 0 && year < 100) {
+            year += year < 50 ? 2000 : 1900;
+        }
+
+        String[] time = tokens[index + 3].split(":");
+
+        if (time.length < 2 || time.length > 3) {
+            return 0;
+        }
+
+        int hour = parseNumber(time[0], 0, time[0].length());
+        int minute = parseNumber(time[1], 0, time[1].length());
+        int second = time.length == 3 ? parseNumber(time[2], 0, time[2].length()) : 0;
+
+        long offsetMillis = tokens.length > index + 4 ? parseZoneOffset(tokens[index + 4]) : 0;
+
+        return toEpochMillis(year, month, day, hour, minute, second, offsetMillis);
+    }
+
+    // Return offset of the zone from UTC ("Z", "+03:00", "-0500", "GMT", "EST"...),
+    // 0 for empty or unknown zone, or Long.MIN_VALUE if the zone is malformed.
+    private static long parseZoneOffset(String zone) {
+
+        if (zone.isEmpty()) {
+            return 0;
+        }
+
+        char sign = zone.charAt(0);
+
+        if (sign == '+' || sign == '-') {
+            String digits = zone.substring(1).replace(":", "");
+
+            if (digits.length() != 4 && digits.length() != 2) {
+                return Long.MIN_VALUE;
+            }
+
+            int hours = parseNumber(digits, 0, 2);
+            int minutes = digits.length() == 4 ? parseNumber(digits, 2, 4) : 0;
+
+            if (hours < 0 || minutes < 0) {
+                return Long.MIN_VALUE;
+            }
+
+            long offsetMillis = (hours * 60 + minutes) * MINUTE_MILLIS;
+            return sign == '+' ? offsetMillis : -offsetMillis;
+        }
+
+        switch (zone.toUpperCase(Locale.ROOT)) {
+            case "EDT":
+                return -4 * 60 * MINUTE_MILLIS;
+            case "EST":
+            case "CDT":
+                return -5 * 60 * MINUTE_MILLIS;
+            case "CST":
+            case "MDT":
+                return -6 * 60 * MINUTE_MILLIS;
+            case "MST":
+            case "PDT":
+                return -7 * 60 * MINUTE_MILLIS;
+            case "PST":
+                return -8 * 60 * MINUTE_MILLIS;
+            default:
+                // GMT, UT, UTC, Z, military zones and anything else
+                return 0;
+        }
+    }
+
+    // Return number of the month by its name (1 for January), or -1 if unknown
+    private static int parseMonth(String name) {
+
+        if (name.length() < 3) {
+            return -1;
+        }
+
+        String prefix = name.substring(0, 3).toLowerCase(Locale.ROOT);
+
+        for (int i = 0; i < MONTHS.length; i++) {
+            if (MONTHS[i].equals(prefix)) {
+                return i + 1;
+            }
+        }
+
+        return -1;
+    }
+
+    // Return non-negative number written in the text from start to end, or -1 if there is none
+    private static int parseNumber(String text, int start, int end) {
+
+        if (start >= end || end > text.length()) {
+            return -1;
+        }
+
+        int number = 0;
+
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+
+            if (c < '0' || c > '9' || number > 100000) {
+                return -1;
+            }
+
+            number = number * 10 + (c - '0');
+        }
+
+        return number;
+    }
+
+    // Return time in milliseconds since epoch, or 0 if any field is out of range
+    private static long toEpochMillis(int year, int month, int day,
+                                      int hour, int minute, int second, long offsetMillis) {
+
+        if (year < 1970 || month < 1 || month > 12 || day < 1 || day > 31
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 60
+                || offsetMillis == Long.MIN_VALUE) {
+            return 0;
+        }
+
+        long millis = daysFromEpoch(year, month, day) * DAY_MILLIS
+                + ((hour * 60 + minute) * 60 + second) * 1000L
+                - offsetMillis;
+
+        return Math.max(millis, 0);
+    }
+
+    // Number of days from 1970-01-01 to the date of proleptic Gregorian calendar
+    private static long daysFromEpoch(int year, int month, int day) {
+
+        // Year starts in March, so that leap day is the last day of the year
+        long y = month <= 2 ? year - 1 : year;
+        long era = y / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+
+        return era * 146097 + dayOfEra - 719468;
+    }
+}
@@ -0,0 +1,27 @@
+package com.gpetuhov.android.rssreader.core.utils;
+
+import okhttp3.HttpUrl;
+
+// URL utilities
+public class UtilsUrl {
+    // Return canonical form of the feed link,
+    // so that the same feed written differently is stored only once
+    // (scheme and host in lower case, no default port, empty path replaced with "/").
+    // Links, that are not valid HTTP URLs, are only trimmed.
+    public static String normalizeFeedLink(String feedLink) {
+
+        if (null == feedLink) {
+            return null;
+        }
+
+        String trimmedLink = feedLink.trim();
+
+        HttpUrl url = HttpUrl.parse(trimmedLink);
+
+        if (url != null) {
+            return url.toString();
+        } else {
+            return trimmedLink;
+        }
+    }
+}
@@ -0,0 +1,741 @@
+package com.gpetuhov.android.rssreader.core;
+
+
+import com.gpetuhov.android.rssreader.core.data.FeedPost;
+import com.gpetuhov.android.rssreader.core.data.FeedUpdateSummary;
+import com.gpetuhov.android.rssreader.core.data.MemoryFeedStore;
+import com.gpetuhov.android.rssreader.core.data.PostBodyCodec;
+import com.gpetuhov.android.rssreader.core.data.PostKey;
+import com.gpetuhov.android.rssreader.core.data.RefreshSchedule;
+import com.gpetuhov.android.rssreader.core.data.RetentionPolicy;
+import com.gpetuhov.android.rssreader.core.events.FeedFetchErrorEvent;
+import com.gpetuhov.android.rssreader.core.events.FeedFetchSuccessEvent;
+import com.gpetuhov.android.rssreader.core.metrics.FeedMetrics;
+import com.gpetuhov.android.rssreader.core.parser.FeedParser;
+import com.gpetuhov.android.rssreader.core.parser.ParsedFeed;
+import com.gpetuhov.android.rssreader.core.parser.XmlParserFactory;
+import com.gpetuhov.android.rssreader.core.search.SearchQuery;
+import com.gpetuhov.android.rssreader.core.search.SearchTokenizer;
+import com.gpetuhov.android.rssreader.core.utils.UtilsDate;
+import com.gpetuhov.android.rssreader.core.utils.UtilsUrl;
+
+import org.greenrobot.eventbus.EventBus;
+import org.greenrobot.eventbus.Subscribe;
+import org.junit.Before;
+import org.junit.Test;
+import org.kxml2.io.KXmlParser;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+// Tests of the core logic, that doesn't need Android device
+public class CoreUnitTest {
+
+    // Creates kXML parsers
+    private static final XmlParserFactory XML_PARSER_FACTORY = new XmlParserFactory() {
+        @Override
+        public XmlPullParser newPullParser() {
+            return new KXmlParser();
+        }
+    };
+
+    // Records fetch results posted to EventBus
+    // (EventBus calls subscribers with reflection, so the class must be public).
+    public static class FetchEventRecorder {
+
+        final List<Object> mEvents = new ArrayList<>();
+
+        @Subscribe
+        public void onFetchSuccess(FeedFetchSuccessEvent event) {
+            mEvents.add(event);
+        }
+
+        @Subscribe
+        public void onFetchError(FeedFetchErrorEvent event) {
+            mEvents.add(event);
+        }
+    }
+
+    private FeedFetcher mFeedFetcher;
+
+    private XmlPullParser mXmlPullParser;
+
+    @Before
+    public void initTest() {
+        // Parsing doesn't need network, storage and event bus
+        mFeedFetcher = new FeedFetcher(null, null, XML_PARSER_FACTORY, null);
+    }
+
+    @Test
+    public void checkExtractFeedTitleFromXML() throws Exception {
+
+        String expectedFeedTitle = "Awesome feed title";
+
+        // Sample XML response
+        String xmlString =
+                "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<rss version=\"2.0\" xmlns:dc=\"http://purl.org/dc/elements/1.1/\"  >\n" +
+                "<channel>\n" +
+                "\t<title>" + expectedFeedTitle + "</title>\n" +
+                "\t<link>https://server.com/</link>\n" +
+                "</channel>\n" +
+                "</rss>";
+
+        // Create InputStream from String
+        InputStream inputStream = new ByteArrayInputStream(xmlString.getBytes());
+
+        createParser(inputStream);
+
+        // Extract feed title from sample XML
+        String feedTitle = mFeedFetcher.extractFeedTitle(mXmlPullParser);
+
+        // Check if extracted title is the same as in sample XML
+        assertEquals(expectedFeedTitle, feedTitle);
+    }
+
+    // Create XML parser for provided input stream
+    private void createParser(InputStream input) throws XmlPullParserException {
+        // Create new XML parser (kXML is used on JVM)
+        mXmlPullParser = XML_PARSER_FACTORY.newPullParser();
+
+        // Do not process namespaces
+        mXmlPullParser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
+
+        // Set input for the parser
+        mXmlPullParser.setInput(input, null);
+    }
+
+    @Test
+    public void checkExtractFeedPostsFromXML() throws Exception {
+        // Sample XML response
+        String xmlString = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<rss version=\"2.0\" xmlns:dc=\"http://purl.org/dc/elements/1.1/\"  >\n" +
+                "<channel>\n" +
+                "\t<title>Feed title</title>\n" +
+                "\t<link>https://server.com/</link>\n" +
+                "\t<item>\n" +
+                "\t\t<title>Post title 0</title>\n" +
+                "\t\t<link>Post link 0</link>\n" +
+                "\t\t<description>Post description 0</description>   \n" +
+                "\t\t<pubDate>Tue, 21 Mar 2017 11:17:55 GMT</pubDate>\n" +
+                "\t</item>\n" +
+                "\t<item>\n" +
+                "\t\t<title>Post title 1</title>\n" +
+                "\t\t<link>Post link 1</link>\n" +
+                "\t\t<description>Post description 1</description>   \n" +
+                "\t\t<pubDate>Tue, 21 Mar 2017 11:17:57 GMT</pubDate>\n" +
+                "\t</item>\n" +
+                "</channel>\n" +
+                "</rss>";
+
+        // Create InputStream from String
+        InputStream inputStream = new ByteArrayInputStream(xmlString.getBytes());
+
+        createParser(inputStream);
+
+        // Extract feed posts from sample XML
+        List<FeedPost> rssPosts = mFeedFetcher.extractFeedPosts(mXmlPullParser);
+
+        // Check if extracted are the same as in sample XML
+        for (int i = 0; i < 2; i++) {
+            FeedPost rssPost = rssPosts.get(i);
+            assertEquals("Post title " + i, rssPost.getTitle());
+            assertEquals("Post description " + i, rssPost.getDescription());
+        }
+    }
+
+    @Test
+    public void checkExtractFeedPostsWithMissingFieldsFromXML() throws Exception {
+        // Sample XML response, first item has no description, second has no title
+        String xmlString = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<rss version=\"2.0\">\n" +
+                "<channel>\n" +
+                "\t<title>Feed title</title>\n" +
+                "\t<item>\n" +
+                "\t\t<title>Post title 0</title>\n" +
+                "\t\t<guid>Post guid 0</guid>\n" +
+                "\t</item>\n" +
+                "\t<item>\n" +
+                "\t\t<description>Post description 1</description>\n" +
+                "\t\t<link>Post link 1</link>\n" +
+                "\t</item>\n" +
+                "</channel>\n" +
+                "</rss>";
+
+        InputStream inputStream = new ByteArrayInputStream(xmlString.getBytes());
+
+        createParser(inputStream);
+
+        List<FeedPost> rssPosts = mFeedFetcher.extractFeedPosts(mXmlPullParser);
+
+        // Item without description must not swallow the next item
+        assertEquals(2, rssPosts.size());
+        assertEquals("Post title 0", rssPosts.get(0).getTitle());
+        assertEquals("", rssPosts.get(0).getDescription());
+        assertEquals("Post guid 0", rssPosts.get(0).getGuid());
+        assertEquals("", rssPosts.get(1).getTitle());
+        assertEquals("Post description 1", rssPosts.get(1).getDescription());
+        assertEquals("Post link 1", rssPosts.get(1).getLink());
+    }
+
+    @Test
+    public void checkExtractAtomFeedFromXML() throws Exception {
+        // Sample Atom response
+        String xmlString = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<feed xmlns=\"http://www.w3.org/2005/Atom\">\n" +
+                "\t<title>Atom feed title</title>\n" +
+                "\t<entry>\n" +
+                "\t\t<title>Entry title</title>\n" +
+                "\t\t<link rel=\"self\" href=\"Self link\"/>\n" +
+                "\t\t<link href=\"Entry link\"/>\n" +
+                "\t\t<id>Entry id</id>\n" +
+                "\t\t<updated>2017-03-21T11:17:55Z</updated>\n" +
+                "\t\t<summary>Entry summary</summary>\n" +
+                "\t</entry>\n" +
+                "</feed>";
+
+        InputStream inputStream = new ByteArrayInputStream(xmlString.getBytes());
+
+        createParser(inputStream);
+
+        ParsedFeed parsedFeed = new FeedParser().parse(mXmlPullParser);
+
+        assertEquals("Atom feed title", parsedFeed.getTitle());
+        assertEquals(1, parsedFeed.getPosts().size());
+
+        FeedPost rssPost = parsedFeed.getPosts().get(0);
+        assertEquals("Entry title", rssPost.getTitle());
+        assertEquals("Entry summary", rssPost.getDescription());
+        assertEquals("Entry link", rssPost.getLink());
+        assertEquals("Entry id", rssPost.getGuid());
+        assertEquals("2017-03-21T11:17:55Z", rssPost.getPubDate());
+    }
+
+    @Test
+    public void checkExtractRefreshHintFromXML() throws Exception {
+        // Sample XML response with both <ttl> (2 hours) and Syndication module (4 times a day)
+        String xmlString = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<rss version=\"2.0\" xmlns:sy=\"http://purl.org/rss/1.0/modules/syndication/\">\n" +
+                "<channel>\n" +
+                "\t<title>Feed title</title>\n" +
+                "\t<ttl>120</ttl>\n" +
+                "\t<sy:updatePeriod>daily</sy:updatePeriod>\n" +
+                "\t<sy:updateFrequency>4</sy:updateFrequency>\n" +
+                "\t<item>\n" +
+                "\t\t<title>Post title</title>\n" +
+                "\t\t<ttl>1</ttl>\n" +
+                "\t</item>\n" +
+                "</channel>\n" +
+                "</rss>";
+
+        createParser(new ByteArrayInputStream(xmlString.getBytes()));
+
+        ParsedFeed parsedFeed = new FeedParser().parse(mXmlPullParser);
+
+        // The longer interval wins, tags inside of items are ignored
+        assertEquals(6 * 60 * 60 * 1000, parsedFeed.getRefreshHintMillis());
+        assertEquals(1, parsedFeed.getPosts().size());
+    }
+
+
+    @Test
+    public void checkNormalizeFeedLink() throws Exception {
+        assertEquals("https://server.com/rss/", UtilsUrl.normalizeFeedLink(" HTTPS://Server.com:443/rss/ "));
+        assertEquals("http://server.com/", UtilsUrl.normalizeFeedLink("http://server.com"));
+        assertEquals("Feed link", UtilsUrl.normalizeFeedLink("Feed link "));
+    }
+
+    @Test
+    public void checkParseDate() throws Exception {
+        long expected = 1490095075000L;
+
+        // RSS dates
+        assertEquals(expected, UtilsDate.parseDate("Tue, 21 Mar 2017 11:17:55 GMT"));
+        assertEquals(expected, UtilsDate.parseDate("21 Mar 2017 14:17:55 +0300"));
+        assertEquals(expected, UtilsDate.parseDate("Tue, 21 Mar 17 07:17:55 EDT"));
+        assertEquals(expected - 55000, UtilsDate.parseDate("Tue, 21 March 2017 11:17 UT"));
+
+        // Atom dates
+        assertEquals(expected, UtilsDate.parseDate("2017-03-21T11:17:55Z"));
+        assertEquals(expected, UtilsDate.parseDate("2017-03-21T14:17:55.123+03:00"));
+        assertEquals(expected, UtilsDate.parseDate(" 2017-03-21T06:17:55-05:00 "));
+        assertEquals(expected - (11 * 3600 + 17 * 60 + 55) * 1000L, UtilsDate.parseDate("2017-03-21"));
+
+        // Leap day
+        assertEquals(951782400000L, UtilsDate.parseDate("2000-02-29T00:00:00Z"));
+
+        // Dates, that can't be parsed
+        assertEquals(0, UtilsDate.parseDate(null));
+        assertEquals(0, UtilsDate.parseDate(""));
+        assertEquals(0, UtilsDate.parseDate("yesterday"));
+        assertEquals(0, UtilsDate.parseDate("Tue, 32 Mar 2017 11:17:55 GMT"));
+        assertEquals(0, UtilsDate.parseDate("2017-13-21T11:17:55Z"));
+    }
+
+    @Test
+    public void checkPostKey() throws Exception {
+        assertEquals("guid:Guid", PostKey.of("Guid", "Link", "Title", "Description"));
+        assertEquals("link:Link", PostKey.of("", "Link", "Title", "Description"));
+        assertEquals(PostKey.of(null, null, "Title", "Description"),
+                PostKey.of(null, null, "Title", "Description"));
+    }
+
+    @Test
+    public void checkMemoryFeedStoreUpsertsPosts() throws Exception {
+
+        String feedLink = "https://server.com/rss/";
+
+        List<FeedPost> rssPosts = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            FeedPost rssPost = new FeedPost();
+            rssPost.setTitle("Title " + i);
+            rssPost.setGuid("Guid " + i);
+            rssPosts.add(rssPost);
+        }
+
+        MemoryFeedStore feedStore = new MemoryFeedStore();
+        feedStore.updateFeed(feedLink, "Feed title", rssPosts, null, null, 0);
+
+        // Next fetch: one new post on top, one changed post, one unchanged post
+        List<FeedPost> newRssPosts = new ArrayList<>();
+        FeedPost newPost = new FeedPost();
+        newPost.setTitle("New title");
+        newPost.setGuid("New guid");
+        newRssPosts.add(newPost);
+        rssPosts.get(0).setTitle("Changed title");
+        newRssPosts.add(rssPosts.get(0));
+        newRssPosts.add(rssPosts.get(1));
+
+        FeedUpdateSummary summary =
+                feedStore.updateFeed("HTTPS://Server.com/rss/", "Feed title", newRssPosts, "\"tag\"", null, 0);
+
+        assertFalse(summary.isFeedChanged());
+        assertEquals(1, summary.getNewPostCount());
+        assertEquals(1, summary.getUpdatedPostCount());
+
+        List<FeedPost> resultRssPosts = feedStore.getPosts(feedLink);
+        assertEquals(4, resultRssPosts.size());
+        assertEquals("New title", resultRssPosts.get(0).getTitle());
+        assertEquals("Changed title", resultRssPosts.get(1).getTitle());
+        assertEquals("Title 2", resultRssPosts.get(3).getTitle());
+        assertEquals("\"tag\"", feedStore.getFeedInfo(feedLink).getETag());
+    }
+
+    @Test
+    public void checkRetentionPolicyEvictsOldestPosts() throws Exception {
+
+        String feedLink = "https://server.com/rss/";
+
+        List<FeedPost> rssPosts = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            FeedPost rssPost = new FeedPost();
+            rssPost.setTitle("Title " + i);
+            rssPost.setGuid("Guid " + i);
+            rssPosts.add(rssPost);
+        }
+
+        MemoryFeedStore feedStore = new MemoryFeedStore();
+        feedStore.setRetentionPolicy(new RetentionPolicy(3, 0, 0));
+
+        // Document has more posts than the limit, all of them are kept
+        feedStore.updateFeed(feedLink, "Feed title", rssPosts.subList(2, 6), null, null, 0);
+        assertEquals(4, feedStore.getPosts(feedLink).size());
+
+        // Posts, that left the document, are evicted from the oldest one
+        FeedUpdateSummary summary =
+                feedStore.updateFeed(feedLink, "Feed title", rssPosts.subList(0, 2), null, null, 0);
+        assertEquals(3, summary.getRemovedPostCount());
+        assertTrue(summary.hasChanges());
+        List<FeedPost> resultRssPosts = feedStore.getPosts(feedLink);
+        assertEquals(3, resultRssPosts.size());
+        assertEquals("Title 0", resultRssPosts.get(0).getTitle());
+        assertEquals("Title 2", resultRssPosts.get(2).getTitle());
+
+        // Age and total limits
+        long now = 1000000;
+        RetentionPolicy retentionPolicy = new RetentionPolicy(0, 1000, 10);
+        assertFalse(retentionPolicy.isEvicted(100, now - 1000, now));
+        assertTrue(retentionPolicy.isEvicted(0, now - 1001, now));
+        assertEquals(0, retentionPolicy.getExcessPostCount(10));
+        assertEquals(5, retentionPolicy.getExcessPostCount(15));
+    }
+
+    @Test
+    public void checkSearchTokenizerAndQuery() throws Exception {
+
+        // Markup is skipped, terms are lower case and distinct, single characters are not indexed
+        String cyrillicWord = "\u041d\u043e\u0432\u043e\u0441\u0442\u0438";
+        assertEquals(
+                Arrays.asList("java", "news", "retrofit", "21", "released", cyrillicWord.toLowerCase()),
+                new ArrayList<>(SearchTokenizer.getTerms("Java News",
+                        "<p><a href=\"http://x.com/\">Retrofit</a> 21&nbsp;released, java "
+                                + cyrillicWord + "! a</p>")));
+
+        // Last word is a prefix, while it is being typed
+        SearchQuery searchQuery = SearchQuery.parse("Java retro");
+        assertEquals(Arrays.asList("java"), searchQuery.getTerms());
+        assertEquals("retro", searchQuery.getPrefix());
+
+        // Too short prefix must be present exactly
+        searchQuery = SearchQuery.parse("Java re");
+        assertEquals(Arrays.asList("java", "re"), searchQuery.getTerms());
+        assertEquals(null, searchQuery.getPrefix());
+
+        searchQuery = SearchQuery.parse("Java retrofit ");
+        assertEquals(Arrays.asList("java", "retrofit"), searchQuery.getTerms());
+        assertEquals(null, searchQuery.getPrefix());
+
+        assertTrue(SearchQuery.parse(" <b> ").isEmpty());
+    }
+
+    @Test
+    public void checkRefreshScheduleAdaptsToPostRate() throws Exception {
+
+        long hour = 60 * 60 * 1000;
+        long now = 1000 * hour;
+
+        RefreshSchedule schedule = new RefreshSchedule();
+
+        // Never fetched feed is due right away, the first fetch gets default interval
+        assertTrue(schedule.isDue(now));
+        schedule.onFetched(now, 10, 0);
+        assertEquals(now + RefreshSchedule.DEFAULT_REFRESH_INTERVAL_MILLIS, schedule.getNextRefreshAt());
+        assertFalse(schedule.isDue(now + hour / 2));
+
+        // Feed publishes one post every 4 hours
+        for (int i = 1; i <= 5; i++) {
+            schedule.onFetched(now + i * 4 * hour, 1, 0);
+        }
+        now += 20 * hour;
+        assertEquals(4 * hour, schedule.getPostIntervalMillis());
+        assertEquals(now + 4 * hour, schedule.getNextRefreshAt());
+
+        // Long silence makes polling less frequent
+        schedule.onFetched(now + 12 * hour, 0, 0);
+        assertEquals(now + 18 * hour, schedule.getNextRefreshAt());
+
+        // Refresh hint is the minimum interval, interval never exceeds the maximum
+        schedule.onFetched(now + 13 * hour, 0, 10 * 24 * hour);
+        assertEquals(now + 13 * hour + RefreshSchedule.MAX_REFRESH_INTERVAL_MILLIS,
+                schedule.getNextRefreshAt());
+    }
+
+    @Test
+    public void checkBackoffAndCircuitBreaker() throws Exception {
+
+        long minute = 60 * 1000;
+        long now = 100000 * minute;
+
+        RefreshSchedule schedule = new RefreshSchedule();
+        schedule.onFetched(now, 10, 0);
+
+        // Backoff doubles after every failure
+        schedule.onFailed(now, 0);
+        assertEquals(now + RefreshSchedule.MIN_BACKOFF_MILLIS, schedule.getNextRefreshAt());
+        assertTrue(schedule.isBackingOff(now + minute));
+        schedule.onFailed(now, 0);
+        assertEquals(now + 2 * RefreshSchedule.MIN_BACKOFF_MILLIS, schedule.getNextRefreshAt());
+
+        // ...up to the maximum
+        for (int i = 0; i < 100; i++) {
+            schedule.onFailed(now, 0);
+        }
+        assertEquals(now + RefreshSchedule.MAX_BACKOFF_MILLIS, schedule.getNextRefreshAt());
+
+        // Longer Retry-After is honored
+        schedule.onFailed(now, 2 * RefreshSchedule.MAX_BACKOFF_MILLIS);
+        assertEquals(now + 2 * RefreshSchedule.MAX_BACKOFF_MILLIS, schedule.getNextRefreshAt());
+
+        // Successful fetch resets backoff
+        schedule.onFetched(now, 0, 0);
+        assertEquals(0, schedule.getFailureCount());
+        assertFalse(schedule.isBackingOff(now));
+
+        // Circuit opens after several failures of the host in a row
+        HostCircuitBreaker circuitBreaker = new HostCircuitBreaker();
+        String host = "example.com";
+
+        for (int i = 0; i < HostCircuitBreaker.FAILURE_THRESHOLD; i++) {
+            assertTrue(circuitBreaker.allowRequest(host, now));
+            circuitBreaker.recordFailure(host, now, 0);
+        }
+        assertFalse(circuitBreaker.allowRequest(host, now));
+        assertTrue(circuitBreaker.allowRequest("other.com", now));
+
+        // Requests, that were in flight, when the circuit opened, don't extend open time
+        for (int i = 0; i < 10; i++) {
+            circuitBreaker.recordFailure(host, now, 0);
+        }
+        assertFalse(circuitBreaker.isOpen(host, now + HostCircuitBreaker.MIN_OPEN_MILLIS));
+
+        // After open time only one trial request is allowed
+        now += HostCircuitBreaker.MIN_OPEN_MILLIS;
+        assertTrue(circuitBreaker.allowRequest(host, now));
+        assertFalse(circuitBreaker.allowRequest(host, now));
+
+        // Failed trial opens the circuit for twice as long
+        circuitBreaker.recordFailure(host, now, 0);
+        assertTrue(circuitBreaker.isOpen(host, now + 2 * HostCircuitBreaker.MIN_OPEN_MILLIS - 1));
+        assertFalse(circuitBreaker.isOpen(host, now + 2 * HostCircuitBreaker.MIN_OPEN_MILLIS));
+
+        // Successful trial closes it
+        now += 2 * HostCircuitBreaker.MIN_OPEN_MILLIS;
+        assertTrue(circuitBreaker.allowRequest(host, now));
+        circuitBreaker.recordSuccess(host);
+        assertTrue(circuitBreaker.allowRequest(host, now));
+        assertTrue(circuitBreaker.allowRequest(host, now));
+    }
+
+    @Test
+    public void checkRefresherDrainsSkippedFeedsAndUpgradesToForceRefresh() throws Exception {
+
+        EventBus eventBus = EventBus.builder()
+                .logNoSubscriberMessages(false)
+                .sendNoSubscriberEvent(false)
+                .build();
+
+        final List<String> fetchedLinks = new ArrayList<>();
+        final List<Boolean> forceRefreshes = new ArrayList<>();
+        final boolean[] skipFeeds = {true};
+
+        // Skips feeds in the calling thread (as fresh feeds are skipped) or just records the calls
+        FeedFetcher feedFetcher = new FeedFetcher(null, null, XML_PARSER_FACTORY, null) {
+            @Override
+            public void fetchFeed(String feedLink, boolean forceRefresh, OnFeedFetchListener listener) {
+                fetchedLinks.add(feedLink);
+                forceRefreshes.add(forceRefresh);
+                if (skipFeeds[0]) {
+                    listener.onFeedFetched(feedLink, true);
+                }
+            }
+        };
+
+        final List<String> feedLinks = new ArrayList<>();
+
+        // Refresher needs only links of the feeds, only the first feed is due
+        MemoryFeedStore feedStore = new MemoryFeedStore() {
+            @Override
+            public synchronized List<String> getFeedLinks() {
+                return new ArrayList<>(feedLinks);
+            }
+
+            @Override
+            public synchronized List<String> getDueFeedLinks(long now) {
+                return new ArrayList<>(feedLinks.subList(0, 1));
+            }
+        };
+
+        for (int i = 0; i < 20000; i++) {
+            feedLinks.add("https://server" + i + ".com/rss/");
+        }
+
+        final int[] finishedCounts = {-1, -1};
+
+        FeedRefresher.OnRefreshFinishedListener listener = new FeedRefresher.OnRefreshFinishedListener() {
+            @Override
+            public void onRefreshFinished(int totalCount, int failedCount) {
+                finishedCounts[0] = totalCount;
+                finishedCounts[1] = failedCount;
+            }
+        };
+
+        // Feeds skipped in the calling thread don't grow the stack
+        FeedRefresher feedRefresher = new FeedRefresher(feedFetcher, feedStore, eventBus);
+        feedRefresher.refreshAll(true, listener);
+
+        assertEquals(20000, finishedCounts[0]);
+        assertEquals(0, finishedCounts[1]);
+        assertEquals(20000, fetchedLinks.size());
+        assertFalse(feedRefresher.isRefreshing());
+
+        // Forced refresh joining not forced one fetches the rest of the feeds too
+        skipFeeds[0] = false;
+        fetchedLinks.clear();
+        forceRefreshes.clear();
+        finishedCounts[0] = -1;
+        feedLinks.subList(3, feedLinks.size()).clear();
+
+        feedRefresher = new FeedRefresher(feedFetcher, feedStore, eventBus);
+        feedRefresher.refreshAll(false);
+        assertEquals(Arrays.asList(feedLinks.get(0)), fetchedLinks);
+        assertEquals(Arrays.asList(false), forceRefreshes);
+
+        feedRefresher.refreshAll(true, listener);
+        assertEquals(feedLinks, fetchedLinks);
+        assertEquals(Arrays.asList(false, true, true), forceRefreshes);
+
+        for (String feedLink : feedLinks) {
+            assertEquals(-1, finishedCounts[0]);
+            feedRefresher.onFeedFetched(feedLink, true);
+        }
+        assertEquals(3, finishedCounts[0]);
+    }
+
+    @Test
+    public void checkFetcherReportsSkippedFeedsWithoutListener() throws Exception {
+
+        EventBus eventBus = EventBus.builder()
+                .logNoSubscriberMessages(false)
+                .sendNoSubscriberEvent(false)
+                .build();
+
+        FetchEventRecorder recorder = new FetchEventRecorder();
+        eventBus.register(recorder);
+        List<Object> events = recorder.mEvents;
+
+        String freshFeedLink = "https://server.com/fresh/";
+        String failedFeedLink = "https://server.com/failed/";
+
+        MemoryFeedStore feedStore = new MemoryFeedStore();
+        feedStore.updateFeed(freshFeedLink, "Feed title", new ArrayList<FeedPost>(), null, null, 0);
+        feedStore.updateFeed(failedFeedLink, "Feed title", new ArrayList<FeedPost>(), null, null, 0);
+        feedStore.markFeedFailedAsync(failedFeedLink, 0, null);
+
+        // Skipped feeds are not fetched, so no network is needed
+        FeedFetcher feedFetcher = new FeedFetcher(null, feedStore, XML_PARSER_FACTORY, eventBus);
+
+        // Fresh feed is displayed as refreshed
+        feedFetcher.fetchFeed(freshFeedLink);
+        assertEquals(1, events.size());
+        assertTrue(events.get(0) instanceof FeedFetchSuccessEvent);
+
+        // Feed, that is backing off, is not
+        feedFetcher.fetchFeed(failedFeedLink);
+        assertEquals(2, events.size());
+        assertTrue(events.get(1) instanceof FeedFetchErrorEvent);
+    }
+
+    @Test
+    public void checkFetcherRevalidatesCachedFeed() throws Exception {
+
+        String xmlString = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<rss version=\"2.0\">\n" +
+                "<channel>\n" +
+                "\t<title>Feed title</title>\n" +
+                "\t<item>\n" +
+                "\t\t<title>Post title 0</title>\n" +
+                "\t\t<guid>Guid 0</guid>\n" +
+                "\t</item>\n" +
+                "</channel>\n" +
+                "</rss>";
+
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setHeader("ETag", "\"v1\"").setBody(xmlString));
+        server.enqueue(new MockResponse().setResponseCode(304));
+        server.enqueue(new MockResponse().setResponseCode(304));
+        server.start();
+
+        File cacheDirectory = Files.createTempDirectory("http-cache").toFile();
+        OkHttpClient client = FeedHttpClient.newBuilder(cacheDirectory).build();
+
+        EventBus eventBus = EventBus.builder()
+                .logNoSubscriberMessages(false)
+                .sendNoSubscriberEvent(false)
+                .build();
+
+        MemoryFeedStore feedStore = new MemoryFeedStore();
+        FeedFetcher feedFetcher = new FeedFetcher(client, feedStore, XML_PARSER_FACTORY, eventBus);
+        feedFetcher.setFreshnessTtl(0);
+
+        String feedLink = server.url("/rss/").toString();
+
+        try {
+            assertTrue(fetchFeedAndWait(feedFetcher, feedLink, false));
+            assertNull(server.takeRequest().getHeader("If-None-Match"));
+
+            // Cache revalidates the feed with validators of the cached response,
+            // and 304 is not parsed
+            assertTrue(fetchFeedAndWait(feedFetcher, feedLink, false));
+            assertEquals("\"v1\"", server.takeRequest().getHeader("If-None-Match"));
+
+            // Forced refresh reaches the server too
+            assertTrue(fetchFeedAndWait(feedFetcher, feedLink, true));
+            RecordedRequest request = server.takeRequest();
+            assertEquals("max-age=0", request.getHeader("Cache-Control"));
+            assertEquals("\"v1\"", request.getHeader("If-None-Match"));
+
+            // Both revalidated responses are served from cache
+            assertEquals(2, client.cache().hitCount());
+
+            FeedMetrics feedMetrics = feedFetcher.getFetchMetrics().getFeedMetrics(feedLink);
+            assertEquals(3, feedMetrics.getSuccessCount());
+            assertEquals(2, feedMetrics.getNotModifiedCount());
+            assertEquals(1, feedMetrics.getItemsParsed());
+            assertEquals(1, feedStore.getPosts(feedLink).size());
+        } finally {
+            server.shutdown();
+            client.cache().delete();
+        }
+    }
+
+    // Fetch feed and wait for the result
+    private boolean fetchFeedAndWait(FeedFetcher feedFetcher, String feedLink, boolean forceRefresh)
+            throws InterruptedException {
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final boolean[] result = new boolean[1];
+
+        feedFetcher.fetchFeed(feedLink, forceRefresh, new FeedFetcher.OnFeedFetchListener() {
+            @Override
+            public void onFeedFetched(String feedLink, boolean success) {
+                result[0] = success;
+                latch.countDown();
+            }
+        });
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        return result[0];
+    }
+
+    @Test
+    public void checkPostBodyCodec() throws Exception {
+
+        String description = "<p>The new version of the library is released. "
+                + "Read the <a href=\"https://example.com/blog/release-notes/\">release notes</a> "
+                + "and the <a href=\"https://example.com/blog/migration-guide/\">migration guide</a>."
+                + "</p><p><img src=\"https://example.com/images/release.png\" alt=\"\" /></p>"
+                + "<p>The post appeared first on <a href=\"https://example.com/blog/\">Blog</a>.</p>";
+
+        // Markup shrinks severalfold
+        byte[] encoded = PostBodyCodec.encode(description);
+        assertEquals(PostBodyCodec.FORMAT_DEFLATE, encoded[0]);
+        assertTrue(encoded.length * 2 < PostBodyCodec.getRawSize(description));
+        assertEquals(description, PostBodyCodec.decode(encoded));
+
+        // Body, that doesn't shrink, is kept as it is
+        String shortDescription = "Ok";
+        encoded = PostBodyCodec.encode(shortDescription);
+        assertEquals(PostBodyCodec.FORMAT_UTF8, encoded[0]);
+        assertEquals(shortDescription.length() + 1, encoded.length);
+        assertEquals(shortDescription, PostBodyCodec.decode(encoded));
+
+        // Size of non-ASCII text is counted in UTF-8 bytes
+        String cyrillicDescription = "<p>\u041d\u043e\u0432\u043e\u0441\u0442\u0438 \ud83d\ude00</p>";
+        assertEquals(cyrillicDescription.getBytes("UTF-8").length,
+                PostBodyCodec.getRawSize(cyrillicDescription));
+        assertEquals(cyrillicDescription, PostBodyCodec.decode(PostBodyCodec.encode(cyrillicDescription)));
+
+        assertNull(PostBodyCodec.encode(null));
+        assertNull(PostBodyCodec.decode(null));
+        assertEquals(0, PostBodyCodec.getRawSize(null));
+    }
+}